@@ -0,0 +1,59 @@
+package benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// BitwiseBdd queries on a mask over many variables: an OR of vars / 2 random
+// three-literal products, split into byte masks and ORed with a high-bit term.
+// equivalent compares it with its unsplit form (they differ in the high bits),
+// and minimize merges the byte masks back into one. Truth tables would need
+// 2^(32 * vars) rows.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BddBenchmark {
+
+    static final String LETTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ";
+
+    @Param({ "12", "24", "52" })
+    public int vars;
+
+    private String mask;
+    private String split;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(3);
+        StringBuilder sum = new StringBuilder();
+        for (int product = 0; product < vars / 2; product++) {
+            if (product > 0) sum.append(" | ");
+            for (int literal = 0; literal < 3; literal++) {
+                if (literal > 0) sum.append(" & ");
+                if (random.nextInt(3) == 0) sum.append('~');
+                sum.append(LETTERS.charAt(random.nextInt(vars)));
+            }
+        }
+        mask = sum.toString();
+        split = "(" + mask + ") & 255 | (" + mask + ") & 65280 | a & ~65535";
+    }
+
+    @Benchmark
+    public boolean equivalent() throws Throwable {
+        return (boolean) Core.BDD_EQUIVALENT.invokeExact(split, mask);
+    }
+
+    @Benchmark
+    public boolean satisfiable() throws Throwable {
+        return (boolean) Core.BDD_SATISFIABLE.invokeExact(split);
+    }
+
+    @Benchmark
+    public String minimize() throws Throwable {
+        return (String) Core.BDD_MINIMIZE.invokeExact(split);
+    }
+}
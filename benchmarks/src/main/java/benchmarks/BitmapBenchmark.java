@@ -0,0 +1,100 @@
+package benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// BitwiseEvaluator over ten 100M-bit sets bound as CompressedBitmaps, against the
+// same expression on plain long[] bitsets, one word at a time. Sets are generated
+// chunk by chunk (65536 values): "sparse" chunks hold up to 200 random ids,
+// "clustered" mixes those with chunks of a few long runs, and "dense" adds chunks
+// where every bit is random. Setup prints each side's total size in bytes.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+@State(Scope.Benchmark)
+public class BitmapBenchmark {
+
+    static final String EXPRESSION = "a & b | c & ~d ^ e | f & (g | ~h) & i ^ j";
+    static final int BITS = 100_000_000;
+    static final int SETS = 10;
+
+    @Param({ "sparse", "clustered", "dense" })
+    public String density;
+
+    private long[][] words;
+    private Map<Character, Object> sets;
+    private Object universe;
+
+    @Setup
+    public void setup() throws Throwable {
+        SplittableRandom random = new SplittableRandom(42);
+        words = new long[SETS][];
+        sets = new HashMap<>();
+        long raw = 0, compressed = 0;
+        for (int k = 0; k < SETS; k++) {
+            words[k] = generate(random);
+            Object set = (Object) Core.BITMAP_FROM_WORDS.invokeExact(words[k]);
+            sets.put((char) ('a' + k), set);
+            raw += words[k].length * 8L;
+            compressed += (long) Core.BITMAP_BYTES.invokeExact(set);
+        }
+        universe = (Object) Core.BITMAP_RANGE.invokeExact(0L, (long) BITS);
+        System.out.println("\nlong[] bitsets: " + raw + " bytes, compressed: " + compressed + " bytes");
+    }
+
+    private long[] generate(SplittableRandom random) {
+        long[] bits = new long[(BITS + 63) >>> 6];
+        for (int base = 0; base < BITS; base += 1 << 16) {
+            int end = Math.min(BITS, base + (1 << 16));
+            int kind = switch (density) {
+                case "sparse" -> 0;
+                case "clustered" -> random.nextInt(2);
+                default -> random.nextInt(3);
+            };
+            switch (kind) {
+                case 0 -> { // sparse ids
+                    for (int i = random.nextInt(200); i > 0; i--)
+                        set(bits, random.nextInt(base, end), 1);
+                }
+                case 1 -> { // a few long runs
+                    for (int i = random.nextInt(8); i > 0; i--)
+                        set(bits, random.nextInt(base, end), random.nextInt(1, 8192));
+                }
+                default -> { // random half
+                    for (int w = base >>> 6; w < end >>> 6; w++)
+                        bits[w] = random.nextLong();
+                }
+            }
+        }
+        return bits;
+    }
+
+    private static void set(long[] bits, int from, int length) {
+        for (int v = from; v < Math.min(BITS, from + length); v++)
+            bits[v >>> 6] |= 1L << v;
+    }
+
+    @Benchmark
+    public Object compressed() throws Throwable {
+        return (Object) Core.BITMAP_EVALUATE.invokeExact(EXPRESSION, sets, universe);
+    }
+
+    @Benchmark
+    public long[] bitsets() {
+        long[] a = words[0], b = words[1], c = words[2], d = words[3], e = words[4];
+        long[] f = words[5], g = words[6], h = words[7], i = words[8], j = words[9];
+        long[] out = new long[a.length];
+        long last = -1L >>> -BITS; // universe ends at BITS
+        for (int w = 0; w < out.length; w++) {
+            long value = a[w] & b[w] | c[w] & ~d[w] ^ e[w] | f[w] & (g[w] | ~h[w]) & i[w] ^ j[w];
+            out[w] = w == out.length - 1 ? value & last : value;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// BitwiseEvaluator: compiled program, the cached map-based entry point, and parsing
+// + optimizing without the cache.
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BitwiseBenchmark {
+
+    @Param({ "balanced", "skewed" })
+    public String shape;
+
+    @Param({ "15", "255", "4095" })
+    public int size;
+
+    private String expression;
+    private Map<Character, Integer> vars;
+    private Object program;
+    private int[] bindings;
+
+    @State(Scope.Thread)
+    public static class Stack {
+        int[] values;
+
+        @Setup
+        public void setup(BitwiseBenchmark benchmark) throws Throwable {
+            values = (int[]) Core.NEW_STACK.invokeExact(benchmark.program);
+        }
+    }
+
+    @Setup
+    public void setup() throws Throwable {
+        expression = Expressions.generate("infix", shape, size, "&|^", false, false);
+        vars = Expressions.bindings();
+        program = (Object) Core.BITWISE_COMPILE.invokeExact(expression);
+        bindings = (int[]) Core.BIND.invokeExact(program, vars);
+    }
+
+    @Benchmark
+    public int evaluate(Stack stack) throws Throwable {
+        return (int) Core.EVALUATE.invokeExact(program, bindings, stack.values);
+    }
+
+    @Benchmark
+    public int evaluateWithMap() throws Throwable {
+        return (int) Core.BITWISE_EVALUATE.invokeExact(expression, vars);
+    }
+
+    @Benchmark
+    public Object compileUncached() throws Throwable {
+        return (Object) Core.OPTIMIZE.invokeExact((Object) Core.BITWISE_PARSE.invokeExact(expression));
+    }
+}
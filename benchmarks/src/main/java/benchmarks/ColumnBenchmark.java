@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// ExpressionEvaluator.evaluateColumns: one expression over column arrays, one
+// column per variable a..h. Large batches are split across the common pool.
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ColumnBenchmark {
+
+    @Param({ "15", "255" })
+    public int size;
+
+    @Param({ "1024", "65536", "1048576" })
+    public int rows;
+
+    private String expression;
+    private int[][] columns;
+    private int[] result;
+    private long[] errors;
+
+    @Setup
+    public void setup() {
+        expression = Expressions.generate("infix", "balanced", size, "+-*", false, false);
+        columns = new int[Expressions.VARIABLES.length()][rows];
+        for (int slot = 0; slot < columns.length; slot++) {
+            for (int row = 0; row < rows; row++)
+                columns[slot][row] = (row * 31 + slot * 17) % 1000 + 1;
+        }
+        result = new int[rows];
+        errors = new long[(rows + 63) >>> 6];
+    }
+
+    @Benchmark
+    public int evaluateColumns() throws Throwable {
+        return (int) Core.EVALUATE_COLUMNS.invokeExact(expression, 1, columns, result, errors);
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Converter: every direction, through the public (cached) methods, straight
+// through the conversion code, and streamed from a Reader to a Writer.
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConverterBenchmark {
+
+    @Param({ "infix>postfix", "infix>prefix", "postfix>infix", "postfix>prefix", "prefix>infix", "prefix>postfix" })
+    public String conversion;
+
+    @Param({ "balanced", "skewed" })
+    public String shape;
+
+    @Param({ "15", "255", "4095" })
+    public int size;
+
+    private String expression;
+    private MethodHandle cached;
+    private MethodHandle uncached;
+
+    @Setup
+    public void setup() {
+        String from = conversion.substring(0, conversion.indexOf('>'));
+        expression = Expressions.generate(from, shape, size, "+-*/^", false, false);
+        cached = Core.CONVERT.get(conversion);
+        uncached = Core.CONVERT_UNCACHED.get(conversion);
+    }
+
+    @Benchmark
+    public String convert() throws Throwable {
+        return (String) cached.invokeExact(expression);
+    }
+
+    @Benchmark
+    public String convertUncached() throws Throwable {
+        return (String) uncached.invokeExact(expression);
+    }
+
+    @Benchmark
+    public void stream() throws Throwable {
+        Core.CONVERT_STREAM.invokeExact(conversion, (Reader) new StringReader(expression), Writer.nullWriter());
+    }
+}
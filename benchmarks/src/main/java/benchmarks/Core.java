@@ -0,0 +1,216 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.SocketAddress;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static java.lang.invoke.MethodType.methodType;
+
+// Entry points of the calculator, bound once as method handles.
+//
+// The application classes live in the default package, which code in a named
+// package cannot refer to, and JMH does not accept benchmarks in the default
+// package. Held in static finals the handles are constants to the JIT and inline
+// like direct calls; default-package types are erased to Object and primitive
+// results stay primitive, so the bridge adds no allocation of its own.
+final class Core {
+
+    // ExpressionEvaluator / CompiledExpression
+    static final MethodHandle COMPILE;          // (String expr, int choice) -> program, cached
+    static final MethodHandle PARSE;            // (String expr, int choice) -> program, uncached and unoptimized
+    static final MethodHandle OPTIMIZE;         // (program) -> program
+    static final MethodHandle BIND;             // (program, Map) -> int[]
+    static final MethodHandle NEW_STACK;        // (program) -> int[]
+    static final MethodHandle EVALUATE;         // (program, int[] bindings, int[] stack) -> int
+    static final MethodHandle EVALUATE_INFIX;   // (String, Map) -> int
+    static final MethodHandle EVALUATE_PREFIX;  // (String, Map) -> int
+    static final MethodHandle EVALUATE_POSTFIX; // (String, Map) -> int
+    static final MethodHandle EVALUATE_COLUMNS; // (String, int choice, int[][], int[], long[]) -> int
+    static final MethodHandle PARALLEL;         // (program) -> ParallelTreeEvaluator
+    static final MethodHandle PARALLEL_EVALUATE;// (evaluator, int[], ForkJoinPool) -> int
+    static final MethodHandle INCREMENTAL;      // (program, int[] bindings) -> IncrementalEvaluator
+    static final MethodHandle INCREMENTAL_SET;  // (evaluator, String variable, int value) -> int
+    static final MethodHandle STREAM_EVALUATE;  // (InputStream, int choice, Map) -> int
+
+    // AdaptiveEvaluator
+    static final MethodHandle COMPILE_EXACT;    // (String expr, int choice) -> evaluator, cached
+    static final MethodHandle EXACT_BIND;       // (evaluator, Map) -> long[]
+    static final MethodHandle EXACT_NEW_STACK;  // (evaluator) -> long[]
+    static final MethodHandle EXACT_EVALUATE;   // (evaluator, long[] bindings, long[] stack) -> Number
+
+    // BitwiseEvaluator
+    static final MethodHandle BITWISE_COMPILE;  // (String) -> program, cached
+    static final MethodHandle BITWISE_PARSE;    // (String) -> program, uncached and unoptimized
+    static final MethodHandle BITWISE_EVALUATE; // (String, Map) -> int
+    static final MethodHandle BITMAP_EVALUATE;  // (String, Map, CompressedBitmap universe) -> CompressedBitmap
+    static final MethodHandle BITMAP_FROM_WORDS;// (long[]) -> CompressedBitmap
+    static final MethodHandle BITMAP_RANGE;     // (long from, long to) -> CompressedBitmap
+    static final MethodHandle BITMAP_BYTES;     // (CompressedBitmap) -> long
+
+    // BitwiseBdd
+    static final MethodHandle BDD_EQUIVALENT;   // (String, String) -> boolean
+    static final MethodHandle BDD_SATISFIABLE;  // (String) -> boolean
+    static final MethodHandle BDD_MINIMIZE;     // (String) -> String
+
+    // CalculatorServer
+    static final MethodHandle SERVER_START;     // (SocketAddress) -> CalculatorServer
+    static final MethodHandle SERVER_ADDRESS;   // (CalculatorServer) -> SocketAddress
+    static final MethodHandle SERVER_CLOSE;     // (CalculatorServer) -> void
+
+    // Converter: cached public conversions and the uncached implementations, by "from>to"
+    static final Map<String, MethodHandle> CONVERT;
+    static final Map<String, MethodHandle> CONVERT_UNCACHED;
+    static final MethodHandle CONVERT_STREAM;   // (String conversion, Reader, Writer) -> void
+
+    // ExpressionTreeVisualizer, step-by-step evaluators and the shared cache
+    static final MethodHandle TREE_RENDER;      // (String expr, String type) -> String
+    static final MethodHandle TREE_PARSE;       // (String expr, String type) -> ExpressionTree
+    static final MethodHandle TREE_EXPORT;      // (tree, String format, WritableByteChannel) -> void
+    static final MethodHandle NUMERIC_STEPS;    // (String type, String expr) -> String
+    static final MethodHandle NUMERIC_POSTFIX;  // (String expr, BufferedWriter, level) -> double
+    static final MethodHandle NUMERIC_INFIX;    // (String expr, BufferedWriter, level) -> double
+    static final MethodHandle TRACE_LEVEL;      // (String name) -> StepTrace.Level
+    static final MethodHandle STRING_CONVERT;   // (String expr, String conversionType) -> String
+    static final MethodHandle CACHE_CLEAR;      // () -> void
+
+    static {
+        try {
+            Class<?> evaluator = Class.forName("ExpressionEvaluator");
+            Class<?> program = Class.forName("CompiledExpression");
+            Class<?> optimizer = Class.forName("ExpressionOptimizer");
+            Class<?> parallel = Class.forName("ParallelTreeEvaluator");
+            Class<?> incremental = Class.forName("IncrementalEvaluator");
+            Class<?> streaming = Class.forName("StreamingEvaluator");
+            Class<?> adaptive = Class.forName("AdaptiveEvaluator");
+            Class<?> bitwise = Class.forName("BitwiseEvaluator");
+            Class<?> bitmap = Class.forName("CompressedBitmap");
+            Class<?> bdd = Class.forName("BitwiseBdd");
+            Class<?> server = Class.forName("CalculatorServer");
+            Class<?> converter = Class.forName("Converter");
+            Class<?> tree = Class.forName("ExpressionTreeVisualizer");
+            Class<?> treeArrays = Class.forName("ExpressionTree");
+            Class<?> exporter = Class.forName("ExpressionTreeExporter");
+            Class<?> numeric = Class.forName("StepByStepEvaluatorNumeric");
+            Class<?> string = Class.forName("StepByStepEvaluatorString");
+            Class<?> level = Class.forName("StepTrace$Level");
+            Class<?> cache = Class.forName("ExpressionCache");
+
+            COMPILE = erase(lookup(evaluator).findStatic(evaluator, "compile", methodType(program, String.class, int.class)));
+            PARSE = erase(lookup(program).findStatic(program, "compile", methodType(program, String.class, int.class)));
+            OPTIMIZE = erase(lookup(optimizer).findStatic(optimizer, "optimize", methodType(program, program)));
+            BIND = erase(lookup(program).findVirtual(program, "bind", methodType(int[].class, Map.class)));
+            NEW_STACK = erase(lookup(program).findVirtual(program, "newStack", methodType(int[].class)));
+            EVALUATE = erase(lookup(program).findVirtual(program, "evaluate",
+                    methodType(int.class, int[].class, int[].class)));
+            MethodType mapEvaluate = methodType(int.class, String.class, Map.class);
+            EVALUATE_INFIX = lookup(evaluator).findStatic(evaluator, "evaluateInfix", mapEvaluate);
+            EVALUATE_PREFIX = lookup(evaluator).findStatic(evaluator, "evaluatePrefix", mapEvaluate);
+            EVALUATE_POSTFIX = lookup(evaluator).findStatic(evaluator, "evaluatePostfix", mapEvaluate);
+            EVALUATE_COLUMNS = lookup(evaluator).findStatic(evaluator, "evaluateColumns",
+                    methodType(int.class, String.class, int.class, int[][].class, int[].class, long[].class));
+            PARALLEL = erase(lookup(parallel).findConstructor(parallel, methodType(void.class, program)));
+            PARALLEL_EVALUATE = erase(lookup(parallel).findVirtual(parallel, "evaluate",
+                    methodType(int.class, int[].class, ForkJoinPool.class)));
+            INCREMENTAL = erase(lookup(incremental).findConstructor(incremental,
+                    methodType(void.class, program, int[].class)));
+            INCREMENTAL_SET = erase(lookup(incremental).findVirtual(incremental, "set",
+                    methodType(int.class, String.class, int.class)));
+            STREAM_EVALUATE = lookup(streaming).findStatic(streaming, "evaluate",
+                    methodType(int.class, InputStream.class, int.class, Map.class));
+
+            COMPILE_EXACT = erase(lookup(evaluator).findStatic(evaluator, "compileExact",
+                    methodType(adaptive, String.class, int.class)));
+            EXACT_BIND = erase(lookup(adaptive).findVirtual(adaptive, "bind", methodType(long[].class, Map.class)));
+            EXACT_NEW_STACK = erase(lookup(adaptive).findVirtual(adaptive, "newStack", methodType(long[].class)));
+            EXACT_EVALUATE = erase(lookup(adaptive).findVirtual(adaptive, "evaluate",
+                    methodType(Number.class, long[].class, long[].class)));
+
+            BITWISE_COMPILE = erase(lookup(bitwise).findStatic(bitwise, "compile", methodType(program, String.class)));
+            BITWISE_PARSE = erase(lookup(bitwise).findStatic(bitwise, "parse", methodType(program, String.class)));
+            BITWISE_EVALUATE = lookup(bitwise).findStatic(bitwise, "evaluate", mapEvaluate);
+            BITMAP_EVALUATE = erase(lookup(bitwise).findStatic(bitwise, "evaluate",
+                    methodType(bitmap, String.class, Map.class, bitmap)));
+            BITMAP_FROM_WORDS = erase(lookup(bitmap).findStatic(bitmap, "fromWords", methodType(bitmap, long[].class)));
+            BITMAP_RANGE = erase(lookup(bitmap).findStatic(bitmap, "range", methodType(bitmap, long.class, long.class)));
+            BITMAP_BYTES = erase(lookup(bitmap).findVirtual(bitmap, "sizeInBytes", methodType(long.class)));
+            BDD_EQUIVALENT = lookup(bdd).findStatic(bdd, "equivalent",
+                    methodType(boolean.class, String.class, String.class));
+            BDD_SATISFIABLE = lookup(bdd).findStatic(bdd, "satisfiable", methodType(boolean.class, String.class));
+            BDD_MINIMIZE = lookup(bdd).findStatic(bdd, "minimize", methodType(String.class, String.class));
+
+            SERVER_START = erase(lookup(server).findStatic(server, "start",
+                    methodType(server, SocketAddress.class)));
+            SERVER_ADDRESS = erase(lookup(server).findVirtual(server, "address",
+                    methodType(SocketAddress.class)));
+            SERVER_CLOSE = erase(lookup(server).findVirtual(server, "close", methodType(void.class)));
+
+            MethodType conversion = methodType(String.class, String.class);
+            CONVERT = Map.of(
+                    "infix>postfix", lookup(converter).findStatic(converter, "infixToPostfix", conversion),
+                    "postfix>infix", lookup(converter).findStatic(converter, "postfixToInfix", conversion),
+                    "infix>prefix", lookup(converter).findStatic(converter, "infixToPrefix", conversion),
+                    "prefix>infix", lookup(converter).findStatic(converter, "prefixToInfix", conversion),
+                    "postfix>prefix", lookup(converter).findStatic(converter, "postfixToPrefix", conversion),
+                    "prefix>postfix", lookup(converter).findStatic(converter, "prefixToPostfix", conversion));
+            CONVERT_UNCACHED = Map.of(
+                    "infix>postfix", lookup(converter).findStatic(converter, "convertInfixToPostfix", conversion),
+                    "postfix>infix", lookup(converter).findStatic(converter, "convertPostfixToInfix", conversion),
+                    "infix>prefix", lookup(converter).findStatic(converter, "convertInfixToPrefix", conversion),
+                    "prefix>infix", lookup(converter).findStatic(converter, "convertPrefixToInfix", conversion),
+                    "postfix>prefix", lookup(converter).findStatic(converter, "convertPostfixToPrefix", conversion),
+                    "prefix>postfix", lookup(converter).findStatic(converter, "convertPrefixToPostfix", conversion));
+            CONVERT_STREAM = lookup(converter).findStatic(converter, "convert",
+                    methodType(void.class, String.class, Reader.class, Writer.class));
+
+            MethodType text = methodType(String.class, String.class, String.class);
+            TREE_RENDER = lookup(tree).findStatic(tree, "render", text);
+            TREE_PARSE = erase(lookup(treeArrays).findStatic(treeArrays, "parse",
+                    methodType(treeArrays, String.class, String.class)));
+            TREE_EXPORT = erase(lookup(exporter).findStatic(exporter, "export",
+                    methodType(void.class, treeArrays, String.class, WritableByteChannel.class)));
+            NUMERIC_STEPS = lookup(numeric).findStatic(numeric, "run", text);
+            MethodType traced = methodType(double.class, String.class, BufferedWriter.class, level);
+            NUMERIC_POSTFIX = erase(lookup(numeric).findStatic(numeric, "evaluatePostfix", traced));
+            NUMERIC_INFIX = erase(lookup(numeric).findStatic(numeric, "evaluateInfix", traced));
+            TRACE_LEVEL = erase(lookup(level).findStatic(level, "valueOf", methodType(level, String.class)));
+            STRING_CONVERT = lookup(string).findStatic(string, "convert", text);
+            MethodHandle shared = lookup(cache).findStatic(cache, "shared", methodType(cache));
+            CACHE_CLEAR = MethodHandles.filterReturnValue(shared,
+                    lookup(cache).findVirtual(cache, "clear", methodType(void.class)));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Core() {
+    }
+
+    // Both sides live in the unnamed module, so package-private and private members are reachable
+    private static MethodHandles.Lookup lookup(Class<?> target) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(target, MethodHandles.lookup());
+    }
+
+    // Replace every default-package type in the signature with Object
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (isCoreType(type.parameterType(i)))
+                type = type.changeParameterType(i, Object.class);
+        }
+        if (isCoreType(type.returnType()))
+            type = type.changeReturnType(Object.class);
+        return handle.asType(type);
+    }
+
+    private static boolean isCoreType(Class<?> type) {
+        return !type.isPrimitive() && !type.isArray() && type.getPackageName().isEmpty();
+    }
+}
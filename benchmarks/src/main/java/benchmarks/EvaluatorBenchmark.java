@@ -0,0 +1,87 @@
+package benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// ExpressionEvaluator: the compiled program on its own, the cached map-based entry
+// points, and lexing + compiling + optimizing without the cache. After 10k calls a
+// program is compiled to bytecode, so evaluate measures the JIT tier in steady state
+// (run with -jvmArgs -Ddsa.jit.threshold=-1 to compare against the interpreter).
+// evaluateExact is the same expression, unoptimized, on AdaptiveEvaluator's checked
+// long path; its B/op shows whether any value had to be promoted to BigInteger.
+// Thread count is the JMH -t option; each thread evaluates with its own stack.
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EvaluatorBenchmark {
+
+    @Param({ "infix", "prefix", "postfix" })
+    public String notation;
+
+    @Param({ "balanced", "skewed" })
+    public String shape;
+
+    @Param({ "15", "255", "4095" })
+    public int size;
+
+    private String expression;
+    private int choice;
+    private Map<Character, Integer> vars;
+    private Object program;
+    private int[] bindings;
+
+    private Object exact;
+    private long[] exactBindings;
+
+    @State(Scope.Thread)
+    public static class Stack {
+        int[] values;
+        long[] exactValues;
+
+        @Setup
+        public void setup(EvaluatorBenchmark benchmark) throws Throwable {
+            values = (int[]) Core.NEW_STACK.invokeExact(benchmark.program);
+            exactValues = (long[]) Core.EXACT_NEW_STACK.invokeExact(benchmark.exact);
+        }
+    }
+
+    @Setup
+    public void setup() throws Throwable {
+        expression = Expressions.generate(notation, shape, size, "+-*", false, false);
+        choice = Expressions.choice(notation);
+        vars = Expressions.bindings();
+        program = (Object) Core.COMPILE.invokeExact(expression, choice);
+        bindings = (int[]) Core.BIND.invokeExact(program, vars);
+        exact = (Object) Core.COMPILE_EXACT.invokeExact(expression, choice);
+        exactBindings = (long[]) Core.EXACT_BIND.invokeExact(exact, vars);
+    }
+
+    @Benchmark
+    public int evaluate(Stack stack) throws Throwable {
+        return (int) Core.EVALUATE.invokeExact(program, bindings, stack.values);
+    }
+
+    @Benchmark
+    public Number evaluateExact(Stack stack) throws Throwable {
+        return (Number) Core.EXACT_EVALUATE.invokeExact(exact, exactBindings, stack.exactValues);
+    }
+
+    @Benchmark
+    public int evaluateWithMap() throws Throwable {
+        return switch (choice) {
+            case 1 -> (int) Core.EVALUATE_INFIX.invokeExact(expression, vars);
+            case 2 -> (int) Core.EVALUATE_PREFIX.invokeExact(expression, vars);
+            default -> (int) Core.EVALUATE_POSTFIX.invokeExact(expression, vars);
+        };
+    }
+
+    @Benchmark
+    public Object compileUncached() throws Throwable {
+        return (Object) Core.OPTIMIZE.invokeExact((Object) Core.PARSE.invokeExact(expression, choice));
+    }
+}
@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// ExpressionTreeExporter writing a large tree to a channel that discards its bytes,
+// so only encoding and buffering are measured.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExportBenchmark {
+
+    @Param({ "dot", "json", "binary" })
+    public String format;
+
+    @Param({ "65535", "1048575" })
+    public int size;
+
+    private Object tree;
+    private long written;
+
+    private final WritableByteChannel discard = new WritableByteChannel() {
+        @Override
+        public int write(ByteBuffer source) {
+            int n = source.remaining();
+            source.position(source.limit());
+            written += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Setup
+    public void setup() throws Throwable {
+        String expression = Expressions.generate("postfix", "balanced", size, "+-*/^", false, true);
+        tree = (Object) Core.TREE_PARSE.invokeExact(expression, "postfix");
+    }
+
+    @Benchmark
+    public long export() throws Throwable {
+        Core.TREE_EXPORT.invokeExact(tree, format, discard);
+        return written;
+    }
+}
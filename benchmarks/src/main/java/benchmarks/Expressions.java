@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Synthetic expressions for the benchmarks.
+//
+// A tree with the given number of operators is written in infix (fully
+// parenthesized), prefix or postfix. "balanced" trees split the operators evenly
+// (depth ~ log2 n); "skewed" trees put every operator on the left spine
+// (depth n). Operands cycle through the variables a..h, or the digits 1..9 for
+// the numeric dialects; operators cycle through the given set.
+final class Expressions {
+
+    static final String VARIABLES = "abcdefgh";
+
+    private Expressions() {
+    }
+
+    static String generate(String notation, String shape, int operators, String ops, boolean digits,
+            boolean spaced) {
+        StringBuilder out = new StringBuilder(operators * (spaced ? 8 : 4) + 1);
+        int[] counter = new int[2]; // operators emitted, operands emitted
+        emit(out, notation, shape.equals("skewed"), operators, ops, digits, spaced, counter);
+        return out.toString();
+    }
+
+    // Depth of the recursion is the depth of the tree; keep skewed trees to a few thousand nodes
+    private static void emit(StringBuilder out, String notation, boolean skewed, int operators, String ops,
+            boolean digits, boolean spaced, int[] counter) {
+        if (operators == 0) {
+            int k = counter[1]++;
+            token(out, digits ? (char) ('1' + k % 9) : VARIABLES.charAt(k % VARIABLES.length()), spaced);
+            return;
+        }
+        char op = ops.charAt(counter[0]++ % ops.length());
+        int left = skewed ? operators - 1 : (operators - 1) / 2;
+        int right = operators - 1 - left;
+        switch (notation) {
+            case "prefix" -> {
+                token(out, op, spaced);
+                emit(out, notation, skewed, left, ops, digits, spaced, counter);
+                emit(out, notation, skewed, right, ops, digits, spaced, counter);
+            }
+            case "postfix" -> {
+                emit(out, notation, skewed, left, ops, digits, spaced, counter);
+                emit(out, notation, skewed, right, ops, digits, spaced, counter);
+                token(out, op, spaced);
+            }
+            default -> {
+                token(out, '(', spaced);
+                emit(out, notation, skewed, left, ops, digits, spaced, counter);
+                token(out, op, spaced);
+                emit(out, notation, skewed, right, ops, digits, spaced, counter);
+                token(out, ')', spaced);
+            }
+        }
+    }
+
+    private static void token(StringBuilder out, char c, boolean spaced) {
+        if (spaced && out.length() > 0)
+            out.append(' ');
+        out.append(c);
+    }
+
+    // Non-zero values for every variable, so generated expressions never divide by zero
+    static Map<Character, Integer> bindings() {
+        Map<Character, Integer> vars = new HashMap<>();
+        for (int i = 0; i < VARIABLES.length(); i++)
+            vars.put(VARIABLES.charAt(i), i + 2);
+        return vars;
+    }
+
+    static int choice(String notation) {
+        return switch (notation) {
+            case "infix" -> 1;
+            case "prefix" -> 2;
+            case "postfix" -> 3;
+            default -> throw new IllegalArgumentException("Unknown notation: " + notation);
+        };
+    }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// IncrementalEvaluator on a large balanced tree: changing a variable that occurs
+// once ("z", which replaces the first "a"), changing one that occurs in every
+// eighth leaf ("b"), and a full evaluation of the same unoptimized program.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IncrementalBenchmark {
+
+    @Param({ "1023", "131071" })
+    public int size;
+
+    private Object program;
+    private Object evaluator;
+    private int[] bindings;
+    private int[] stack;
+    private int value;
+
+    @Setup
+    public void setup() throws Throwable {
+        String expression = Expressions.generate("postfix", "balanced", size, "+-*", false, false)
+                .replaceFirst("a", "z");
+        program = (Object) Core.PARSE.invokeExact(expression, 3);
+        Map<Character, Integer> vars = Expressions.bindings();
+        vars.put('z', 1);
+        bindings = (int[]) Core.BIND.invokeExact(program, vars);
+        evaluator = (Object) Core.INCREMENTAL.invokeExact(program, bindings);
+        stack = (int[]) Core.NEW_STACK.invokeExact(program);
+    }
+
+    @Benchmark
+    public int setSingleOccurrence() throws Throwable {
+        return (int) Core.INCREMENTAL_SET.invokeExact(evaluator, "z", ++value);
+    }
+
+    @Benchmark
+    public int setEveryEighthLeaf() throws Throwable {
+        return (int) Core.INCREMENTAL_SET.invokeExact(evaluator, "b", ++value);
+    }
+
+    @Benchmark
+    public int fullEvaluation() throws Throwable {
+        return (int) Core.EVALUATE.invokeExact(program, bindings, stack);
+    }
+}
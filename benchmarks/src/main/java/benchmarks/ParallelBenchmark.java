@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// ParallelTreeEvaluator on very large balanced trees, by fork/join pool size,
+// against a sequential evaluation of the same (unoptimized) program.
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelBenchmark {
+
+    @Param({ "65535", "1048575" })
+    public int size;
+
+    @Param({ "1", "2", "4" })
+    public int threads;
+
+    private ForkJoinPool pool;
+    private Object program;
+    private Object evaluator;
+    private int[] bindings;
+    private int[] stack;
+
+    @Setup
+    public void setup() throws Throwable {
+        String expression = Expressions.generate("postfix", "balanced", size, "+-*", false, false);
+        program = (Object) Core.PARSE.invokeExact(expression, 3);
+        evaluator = (Object) Core.PARALLEL.invokeExact(program);
+        bindings = (int[]) Core.BIND.invokeExact(program, Expressions.bindings());
+        stack = (int[]) Core.NEW_STACK.invokeExact(program);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int parallel() throws Throwable {
+        return (int) Core.PARALLEL_EVALUATE.invokeExact(evaluator, bindings, pool);
+    }
+
+    @Benchmark
+    public int sequential() throws Throwable {
+        return (int) Core.EVALUATE.invokeExact(program, bindings, stack);
+    }
+}
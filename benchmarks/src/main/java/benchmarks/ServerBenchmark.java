@@ -0,0 +1,96 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// Round trip of one line-protocol request through CalculatorServer, sampled so
+// JMH reports p50/p99/p99.9 latency. Each JMH thread is one client connection;
+// idle connections are opened first and held for the whole run, so their cost
+// to the server shows up in the active clients' latency. Use -t for more clients.
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServerBenchmark {
+
+    static final byte[] REQUEST = "infix\t(a+b)*c-d\ta=1,b=2,c=3,d=4\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    @Param({ "tcp", "unix" })
+    public String transport;
+
+    @Param({ "0", "1000" })
+    public int idle;
+
+    private Object server;
+    private SocketAddress address;
+    private Path socket;
+    private final List<SocketChannel> idleClients = new ArrayList<>();
+
+    @Setup
+    public void start() throws Throwable {
+        SocketAddress bind = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        if (transport.equals("unix")) {
+            socket = Files.createTempDirectory("calculator").resolve("calculator.sock");
+            bind = UnixDomainSocketAddress.of(socket);
+        }
+        server = (Object) Core.SERVER_START.invokeExact(bind);
+        address = (SocketAddress) Core.SERVER_ADDRESS.invokeExact(server);
+        for (int i = 0; i < idle; i++)
+            idleClients.add(SocketChannel.open(address));
+    }
+
+    @TearDown
+    public void stop() throws Throwable {
+        for (SocketChannel client : idleClients)
+            client.close();
+        Core.SERVER_CLOSE.invokeExact(server);
+        if (socket != null)
+            Files.deleteIfExists(socket.getParent());
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        SocketChannel channel;
+        final ByteBuffer request = ByteBuffer.wrap(REQUEST);
+        final ByteBuffer response = ByteBuffer.allocate(64);
+
+        @Setup
+        public void connect(ServerBenchmark benchmark) throws IOException {
+            channel = SocketChannel.open(benchmark.address);
+        }
+
+        @TearDown
+        public void disconnect() throws IOException {
+            channel.close();
+        }
+    }
+
+    @Benchmark
+    public int roundTrip(Client client) throws IOException {
+        client.request.clear();
+        while (client.request.hasRemaining())
+            client.channel.write(client.request);
+        ByteBuffer response = client.response;
+        response.clear();
+        do {
+            if (client.channel.read(response) < 0)
+                throw new IOException("Server closed the connection");
+        } while (response.get(response.position() - 1) != '\n');
+        return response.position();
+    }
+}
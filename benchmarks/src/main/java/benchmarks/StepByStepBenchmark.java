@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// StepByStepEvaluatorNumeric including rendering its step log, and
+// StepByStepEvaluatorString as used for replay, which discards its steps. Any
+// console output is discarded while the benchmark runs.
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StepByStepBenchmark {
+
+    @Param({ "infix", "prefix", "postfix" })
+    public String notation;
+
+    @Param({ "balanced", "skewed" })
+    public String shape;
+
+    @Param({ "15", "255" })
+    public int size;
+
+    private String numeric;
+    private String symbolic;
+    private String conversionType;
+    private PrintStream console;
+
+    @Setup
+    public void setup() {
+        numeric = Expressions.generate(notation, shape, size, "+-*/", true, true);
+        symbolic = Expressions.generate(notation, shape, size, "+-*/^", false, false);
+        conversionType = switch (notation) {
+            case "infix" -> "Infix to Postfix";
+            case "prefix" -> "Prefix to Infix";
+            default -> "Postfix to Infix";
+        };
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public String numericSteps() throws Throwable {
+        return (String) Core.NUMERIC_STEPS.invokeExact(notation, numeric);
+    }
+
+    @Benchmark
+    public String stringSteps() throws Throwable {
+        return (String) Core.STRING_CONVERT.invokeExact(symbolic, conversionType);
+    }
+}
@@ -0,0 +1,51 @@
+package benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// StreamingEvaluator reading a large expression from an InputStream, against
+// lexing + compiling the same expression from a String and evaluating the program.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamingBenchmark {
+
+    @Param({ "infix", "prefix", "postfix" })
+    public String notation;
+
+    @Param({ "65535", "1048575" })
+    public int size;
+
+    private String expression;
+    private byte[] bytes;
+    private int choice;
+    private Map<Character, Integer> vars;
+
+    @Setup
+    public void setup() {
+        expression = Expressions.generate(notation, "balanced", size, "+-*", false, false);
+        bytes = expression.getBytes(StandardCharsets.ISO_8859_1);
+        choice = Expressions.choice(notation);
+        vars = Expressions.bindings();
+    }
+
+    @Benchmark
+    public int stream() throws Throwable {
+        return (int) Core.STREAM_EVALUATE.invokeExact((InputStream) new ByteArrayInputStream(bytes), choice, vars);
+    }
+
+    @Benchmark
+    public int compileAndEvaluate() throws Throwable {
+        Object program = (Object) Core.PARSE.invokeExact(expression, choice);
+        int[] bindings = (int[]) Core.BIND.invokeExact(program, vars);
+        return (int) Core.EVALUATE.invokeExact(program, bindings, (int[]) Core.NEW_STACK.invokeExact(program));
+    }
+}
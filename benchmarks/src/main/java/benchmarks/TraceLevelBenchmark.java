@@ -0,0 +1,121 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.Writer;
+import java.util.Stack;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// StepByStepEvaluatorNumeric.evaluatePostfix / evaluateInfix at each trace level,
+// writing to a discarding writer, against plain: a textbook evaluation written here
+// rather than taken from the evaluator, the Stack<Double> loops the step-by-step
+// evaluators were built on. Sharing no code with traced, it shows what tracing and
+// the evaluator's own loops cost together; at "off" traced should be no slower than
+// plain. plain does not depend on level.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TraceLevelBenchmark {
+
+    @Param({ "postfix", "infix" })
+    public String notation;
+
+    @Param({ "off", "summary", "full" })
+    public String level;
+
+    @Param({ "balanced", "skewed" })
+    public String shape;
+
+    @Param({ "15", "255" })
+    public int size;
+
+    private String expression;
+    private Object traceLevel;
+    private BufferedWriter writer;
+
+    @Setup
+    public void setup() throws Throwable {
+        expression = Expressions.generate(notation, shape, size, "+-*/", true, true);
+        traceLevel = (Object) Core.TRACE_LEVEL.invokeExact(level.toUpperCase());
+        writer = new BufferedWriter(Writer.nullWriter());
+    }
+
+    @Benchmark
+    public double traced() throws Throwable {
+        if (notation.equals("postfix"))
+            return (double) Core.NUMERIC_POSTFIX.invokeExact(expression, writer, traceLevel);
+        return (double) Core.NUMERIC_INFIX.invokeExact(expression, writer, traceLevel);
+    }
+
+    @Benchmark
+    public double plain() {
+        return notation.equals("postfix") ? postfix(expression) : infix(expression);
+    }
+
+    // The generated expressions have single-character tokens separated by spaces
+    private static double postfix(String expression) {
+        Stack<Double> stack = new Stack<>();
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (Character.isDigit(c)) {
+                stack.push((double) (c - '0'));
+            } else if (c != ' ') {
+                double b = stack.pop();
+                double a = stack.pop();
+                stack.push(apply(c, a, b));
+            }
+        }
+        return stack.pop();
+    }
+
+    private static double infix(String expression) {
+        Stack<Double> values = new Stack<>();
+        Stack<Character> operators = new Stack<>();
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (Character.isDigit(c)) {
+                values.push((double) (c - '0'));
+            } else if (c == '(') {
+                operators.push(c);
+            } else if (c == ')') {
+                while (operators.peek() != '(')
+                    reduce(values, operators.pop());
+                operators.pop();
+            } else if (c != ' ') {
+                while (!operators.isEmpty() && precedence(operators.peek()) >= precedence(c))
+                    reduce(values, operators.pop());
+                operators.push(c);
+            }
+        }
+        while (!operators.isEmpty())
+            reduce(values, operators.pop());
+        return values.pop();
+    }
+
+    private static void reduce(Stack<Double> values, char operator) {
+        double b = values.pop();
+        double a = values.pop();
+        values.push(apply(operator, a, b));
+    }
+
+    private static double apply(char operator, double a, double b) {
+        return switch (operator) {
+            case '+' -> a + b;
+            case '-' -> a - b;
+            case '*' -> a * b;
+            default -> a / b;
+        };
+    }
+
+    private static int precedence(char operator) {
+        return switch (operator) {
+            case '+', '-' -> 1;
+            case '*', '/' -> 2;
+            default -> 0;
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+// ExpressionTreeVisualizer: drawing a cached tree, and building + drawing it with
+// the cache cleared first; parse builds the ExpressionTree arrays alone.
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TreeBenchmark {
+
+    @Param({ "infix", "prefix", "postfix" })
+    public String notation;
+
+    @Param({ "balanced", "skewed" })
+    public String shape;
+
+    @Param({ "15", "255", "4095" })
+    public int size;
+
+    private String expression;
+
+    @Setup
+    public void setup() {
+        expression = Expressions.generate(notation, shape, size, "+-*/^", false, true);
+    }
+
+    @Benchmark
+    public String render() throws Throwable {
+        return (String) Core.TREE_RENDER.invokeExact(expression, notation);
+    }
+
+    @Benchmark
+    public Object parse() throws Throwable {
+        return (Object) Core.TREE_PARSE.invokeExact(expression, notation);
+    }
+
+    @Benchmark
+    public String buildAndRender() throws Throwable {
+        Core.CACHE_CLEAR.invokeExact();
+        return (String) Core.TREE_RENDER.invokeExact(expression, notation);
+    }
+}
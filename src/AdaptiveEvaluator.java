@@ -0,0 +1,171 @@
+import java.math.BigInteger;
+import java.util.*;
+
+// Exact integer evaluation of a CompiledExpression.
+//
+// Values live on a long[] stack and every instruction that can overflow goes
+// through Math.addExact / subtractExact / multiplyExact (or an equivalent check
+// for division and shifts), so the common case pays one overflow test per
+// instruction. When one overflows, only that value is promoted: it moves to a
+// parallel BigInteger[] (allocated on first overflow) and instructions that touch
+// it run on BigIntegers. Every BigInteger result that fits in 64 bits again is
+// demoted back to the long stack, and instructions whose operands are both
+// primitive take the primitive path again even while other values are promoted.
+//
+// The semantics are those of unbounded integers: division truncates toward zero
+// and throws on zero as the interpreter does, bitwise operators act on the two's
+// complement value, and a << b is a * 2^b rather than a shift masked to the width
+// of an int. Constants are folded by ExpressionOptimizer in int arithmetic, so
+// programs should come straight from the parser (see ExpressionEvaluator.compileExact).
+public final class AdaptiveEvaluator {
+
+    private final CompiledExpression program;
+    private final int maxDepth;
+
+    public AdaptiveEvaluator(CompiledExpression program) {
+        this.program = program;
+        this.maxDepth = program.maxStackDepth();
+    }
+
+    public CompiledExpression program() {
+        return program;
+    }
+
+    // Operand stack followed by the temporaries, laid out as in CompiledExpression
+    public long[] newStack() {
+        return new long[maxDepth + program.temporaryCount()];
+    }
+
+    // Turn a variable map into a bindings array ordered by slot
+    public long[] bind(Map<Character, ? extends Number> vars) {
+        long[] bindings = new long[program.variableCount()];
+        for (int slot = 0; slot < bindings.length; slot++) {
+            Number value = vars.get(program.variable(slot).charAt(0));
+            if (value == null)
+                throw new IllegalArgumentException("Undefined variable: '" + program.variable(slot) + "'");
+            bindings[slot] = value.longValue();
+        }
+        return bindings;
+    }
+
+    // Exact value: a Long when it fits in 64 bits, a BigInteger otherwise
+    public Number evaluate(long[] bindings) {
+        return evaluate(bindings, newStack());
+    }
+
+    // Evaluate without allocating on the primitive path; stack must come from newStack()
+    public Number evaluate(long[] bindings, long[] stack) {
+        BigInteger[] big = null;
+        int promoted = 0; // non-null entries of big
+        int sp = 0;
+        int n = program.size();
+
+        for (int pc = 0; pc < n; pc++) {
+            byte opcode = program.opcode(pc);
+            switch (opcode) {
+                case CompiledExpression.LOAD -> stack[sp++] = bindings[program.operand(pc)];
+                case CompiledExpression.CONST -> stack[sp++] = program.operand(pc);
+                case CompiledExpression.NOT -> {
+                    if (promoted > 0 && big[sp - 1] != null) big[sp - 1] = big[sp - 1].not();
+                    else stack[sp - 1] = ~stack[sp - 1];
+                }
+                case CompiledExpression.TEE -> {
+                    int t = maxDepth + program.operand(pc);
+                    stack[t] = stack[sp - 1];
+                    if (big != null) {
+                        promoted += (big[sp - 1] != null ? 1 : 0) - (big[t] != null ? 1 : 0);
+                        big[t] = big[sp - 1];
+                    }
+                }
+                case CompiledExpression.LOADT -> {
+                    int t = maxDepth + program.operand(pc);
+                    stack[sp] = stack[t];
+                    if (big != null && big[t] != null) {
+                        big[sp] = big[t];
+                        promoted++;
+                    }
+                    sp++;
+                }
+                default -> {
+                    sp--;
+                    boolean primitive = promoted == 0 || (big[sp - 1] == null && big[sp] == null);
+                    if (primitive && opcode == CompiledExpression.DIV && stack[sp] == 0)
+                        throw new ArithmeticException("Division by zero");
+                    if (primitive) {
+                        try {
+                            stack[sp - 1] = exact(opcode, stack[sp - 1], stack[sp]);
+                            continue;
+                        } catch (ArithmeticException overflow) {
+                            // promote below
+                        }
+                    }
+                    if (big == null) big = new BigInteger[stack.length];
+                    BigInteger result = apply(opcode, value(stack, big, sp - 1), value(stack, big, sp));
+                    promoted -= (big[sp - 1] != null ? 1 : 0) + (big[sp] != null ? 1 : 0);
+                    big[sp] = null;
+                    if (result.bitLength() < Long.SIZE) {
+                        stack[sp - 1] = result.longValue();
+                        big[sp - 1] = null;
+                    } else {
+                        big[sp - 1] = result;
+                        promoted++;
+                    }
+                }
+            }
+        }
+        return promoted > 0 && big[0] != null ? big[0] : Long.valueOf(stack[0]);
+    }
+
+    // Result of a binary opcode on longs; throws ArithmeticException when it does not fit
+    private static long exact(byte opcode, long a, long b) {
+        return switch (opcode) {
+            case CompiledExpression.ADD -> Math.addExact(a, b);
+            case CompiledExpression.SUB -> Math.subtractExact(a, b);
+            case CompiledExpression.MUL -> Math.multiplyExact(a, b);
+            case CompiledExpression.DIV -> {
+                if (a == Long.MIN_VALUE && b == -1) throw new ArithmeticException("long overflow");
+                yield a / b;
+            }
+            case CompiledExpression.AND -> a & b;
+            case CompiledExpression.OR -> a | b;
+            case CompiledExpression.XOR -> a ^ b;
+            case CompiledExpression.SHL -> {
+                if (b < 0 || b >= Long.SIZE - 1 || (a << b) >> b != a) throw new ArithmeticException("long overflow");
+                yield a << b;
+            }
+            case CompiledExpression.SHR -> {
+                if (b < 0) throw new ArithmeticException("negative shift"); // a left shift; done exactly
+                yield a >> Math.min(b, Long.SIZE - 1);
+            }
+            default -> throw new IllegalStateException("Not a binary opcode: " + opcode);
+        };
+    }
+
+    private static BigInteger apply(byte opcode, BigInteger a, BigInteger b) {
+        return switch (opcode) {
+            case CompiledExpression.ADD -> a.add(b);
+            case CompiledExpression.SUB -> a.subtract(b);
+            case CompiledExpression.MUL -> a.multiply(b);
+            case CompiledExpression.DIV -> {
+                if (b.signum() == 0) throw new ArithmeticException("Division by zero");
+                yield a.divide(b);
+            }
+            case CompiledExpression.AND -> a.and(b);
+            case CompiledExpression.OR -> a.or(b);
+            case CompiledExpression.XOR -> a.xor(b);
+            case CompiledExpression.SHL -> a.shiftLeft(shiftCount(b));
+            case CompiledExpression.SHR -> a.shiftRight(shiftCount(b));
+            default -> throw new IllegalStateException("Not a binary opcode: " + opcode);
+        };
+    }
+
+    private static int shiftCount(BigInteger count) {
+        if (count.bitLength() >= Integer.SIZE)
+            throw new ArithmeticException("Shift count out of range: " + count);
+        return count.intValue();
+    }
+
+    private static BigInteger value(long[] stack, BigInteger[] big, int i) {
+        return big[i] != null ? big[i] : BigInteger.valueOf(stack[i]);
+    }
+}
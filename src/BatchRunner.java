@@ -0,0 +1,256 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Headless batch mode: evaluates or converts every line of a file without prompting.
+//
+// Input lines are  notation<TAB>expression[<TAB>bindings]  where notation is one of
+// infix, prefix, postfix, bitwise, exact:infix, exact:prefix, exact:postfix (long
+// inputs, BigInteger instead of wrapping on overflow) or a conversion such as
+// infix>postfix, and bindings look like a=1,b=2. Output has exactly one line per input line, in input order: the
+// result, the converted expression, or "Error: <message>".
+//
+// The input is memory-mapped and cut into line-aligned chunks that worker threads
+// process independently; finished chunks are written in order through one large
+// direct buffer, so a slow chunk only holds back the writer, never the workers.
+//
+// Usage: java Main --batch <input> <output> [threads]
+public final class BatchRunner {
+
+    // Bytes per chunk handed to a worker
+    private static final int CHUNK_SIZE = 8 << 20;
+    // Output buffer size
+    private static final int WRITE_BUFFER = 4 << 20;
+    // Chunks allowed in flight per worker before the reader waits for the writer
+    private static final int CHUNKS_AHEAD = 4;
+
+    private final int threads;
+
+    public BatchRunner(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Threads must be at least 1.");
+        this.threads = threads;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java Main --batch <input> <output> [threads]");
+            return;
+        }
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long start = System.nanoTime();
+        long lines = new BatchRunner(threads).run(Paths.get(args[0]), Paths.get(args[1]));
+        System.err.printf("Processed %d lines in %.1f ms%n", lines, (System.nanoTime() - start) / 1e6);
+    }
+
+    // Process every line of input into output; returns the number of lines processed
+    public long run(Path input, Path output) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long lines = 0;
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER);
+            Deque<Future<Chunk>> pending = new ArrayDeque<>();
+
+            long position = 0;
+            while (position < size || !pending.isEmpty()) {
+                // Keep the workers busy, but bound how much finished output can pile up
+                while (position < size && pending.size() < threads * CHUNKS_AHEAD) {
+                    long end = lineBoundary(in, Math.min(position + CHUNK_SIZE, size), size);
+                    MappedByteBuffer region = in.map(FileChannel.MapMode.READ_ONLY, position, end - position);
+                    pending.add(workers.submit(() -> process(region)));
+                    position = end;
+                }
+                Chunk chunk = await(pending.poll());
+                lines += chunk.lines;
+                write(out, buffer, chunk.bytes);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) out.write(buffer);
+            return lines;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    // First offset after the newline at or following from (or size if there is none)
+    private static long lineBoundary(FileChannel in, long from, long size) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long position = from;
+        while (position < size) {
+            probe.clear();
+            int read = in.read(probe, position);
+            if (read <= 0) break;
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') return position + i + 1;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Batch interrupted.");
+        } catch (ExecutionException e) {
+            throw new IOException("Batch worker failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static void write(FileChannel out, ByteBuffer buffer, byte[] bytes) throws IOException {
+        int offset = 0;
+        while (offset < bytes.length) {
+            if (!buffer.hasRemaining()) {
+                buffer.flip();
+                while (buffer.hasRemaining()) out.write(buffer);
+                buffer.clear();
+            }
+            int length = Math.min(buffer.remaining(), bytes.length - offset);
+            buffer.put(bytes, offset, length);
+            offset += length;
+        }
+    }
+
+    private static final class Chunk {
+        final byte[] bytes;
+        final long lines;
+
+        Chunk(byte[] bytes, long lines) {
+            this.bytes = bytes;
+            this.lines = lines;
+        }
+    }
+
+    // Evaluate every line of one chunk; the chunk always ends at a line boundary or end of file
+    private static Chunk process(ByteBuffer region) {
+        StringBuilder results = new StringBuilder(region.remaining() / 2);
+        int[] stack = new int[16];
+        long lines = 0;
+        int limit = region.limit();
+        int start = 0;
+        while (start < limit) {
+            int end = start;
+            while (end < limit && region.get(end) != '\n') end++;
+            int next = end + 1;
+            if (end > start && region.get(end - 1) == '\r') end--;
+
+            String[] fields = fields(region, start, end);
+            try {
+                stack = processLine(fields, stack, results);
+            } catch (RuntimeException e) {
+                results.append("Error: ").append(e.getMessage());
+            }
+            results.append('\n');
+            lines++;
+            start = next;
+        }
+        return new Chunk(results.toString().getBytes(StandardCharsets.ISO_8859_1), lines);
+    }
+
+    // Split [start, end) on tabs into notation, expression and (possibly empty) bindings
+    private static String[] fields(ByteBuffer region, int start, int end) {
+        String[] fields = { "", "", "" };
+        int field = 0;
+        int from = start;
+        for (int i = start; i <= end && field < fields.length; i++) {
+            if (i == end || (region.get(i) == '\t' && field < fields.length - 1)) {
+                fields[field++] = ascii(region, from, i);
+                from = i + 1;
+            }
+        }
+        return fields;
+    }
+
+    private static String ascii(ByteBuffer region, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        region.get(from, bytes);
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    // Result of one batch line; used to replay stored sessions and by Calculator.process.
+    // Conversions are timed by the cache when they miss, everything else as one evaluation.
+    static String evaluate(String notation, String expression, String bindings) {
+        StringBuilder result = new StringBuilder();
+        String[] fields = { notation, expression, bindings };
+        if (notation.indexOf('>') >= 0) {
+            processLine(fields, new int[16], result);
+        } else {
+            Telemetry.time(Telemetry.Operation.EVALUATE, notation.trim(), expression,
+                    () -> processLine(fields, new int[16], result));
+        }
+        return result.toString();
+    }
+
+    // Returns the (possibly grown) evaluation stack so it can be reused for the next line
+    private static int[] processLine(String[] fields, int[] stack, StringBuilder results) {
+        String notation = fields[0].trim();
+        String expression = fields[1];
+        CompiledExpression program;
+        switch (notation) {
+            case "infix" -> program = ExpressionEvaluator.compile(expression, 1);
+            case "prefix" -> program = ExpressionEvaluator.compile(expression, 2);
+            case "postfix" -> program = ExpressionEvaluator.compile(expression, 3);
+            case "bitwise" -> program = BitwiseEvaluator.compile(expression);
+            case "exact:infix", "exact:prefix", "exact:postfix" -> {
+                int choice = notation.equals("exact:infix") ? 1 : notation.equals("exact:prefix") ? 2 : 3;
+                AdaptiveEvaluator evaluator = ExpressionEvaluator.compileExact(expression, choice);
+                results.append(evaluator.evaluate(parseBindings(evaluator.program(), fields[2], true)));
+                return stack;
+            }
+            default -> {
+                results.append(Converter.convert(notation, expression));
+                return stack;
+            }
+        }
+        int needed = program.maxStackDepth() + program.temporaryCount();
+        if (stack.length < needed)
+            stack = new int[Math.max(needed, stack.length * 2)];
+        long[] values = parseBindings(program, fields[2], false);
+        int[] bindings = new int[values.length];
+        for (int slot = 0; slot < values.length; slot++)
+            bindings[slot] = (int) values[slot];
+        results.append(program.evaluate(bindings, stack));
+        return stack;
+    }
+
+    // Parse a=1,b=2 straight into a bindings array ordered by the program's slots. Values
+    // must fit an int unless exact is set, in which case they may use the whole long range.
+    private static long[] parseBindings(CompiledExpression program, String text, boolean exact) {
+        long[] bindings = new long[program.variableCount()];
+        boolean[] bound = new boolean[bindings.length];
+        int from = 0;
+        while (from < text.length()) {
+            int comma = text.indexOf(',', from);
+            if (comma < 0) comma = text.length();
+            int equals = text.indexOf('=', from);
+            if (equals < 0 || equals > comma)
+                throw new IllegalArgumentException("Invalid binding: " + text.substring(from, comma).trim());
+            int slot = program.slotOf(text.substring(from, equals).trim());
+            if (slot >= 0) {
+                String value = text.substring(equals + 1, comma).trim();
+                bindings[slot] = exact ? Long.parseLong(value) : Integer.parseInt(value);
+                bound[slot] = true;
+            }
+            from = comma + 1;
+        }
+        for (int slot = 0; slot < bound.length; slot++) {
+            if (!bound[slot])
+                throw new IllegalArgumentException("Undefined variable: '" + program.variable(slot) + "'");
+        }
+        return bindings;
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.*;
+
+// Evaluates a bitwise expression over sets: every variable is bound to a
+// CompressedBitmap, and &, |, ^ and ~ become intersection, union, symmetric
+// difference and complement. The program comes from BitwiseEvaluator, so the
+// parser and operator precedence are the same as for ints.
+//
+// Complement is taken against an explicit universe, and every variable is first
+// intersected with it, so results never leave the universe. A complement is not
+// built unless it has to be: each stack entry carries a flag meaning "the universe
+// minus this set", operators on flagged entries are rewritten with De Morgan's laws
+// (a & ~b is one ANDNOT, ~a | ~b is ~(a & b)), and only a flagged final result is
+// subtracted from the universe.
+public final class BitmapEvaluator {
+
+    private BitmapEvaluator() {
+    }
+
+    // Turn a variable map into a bindings array ordered by slot
+    public static CompressedBitmap[] bind(CompiledExpression program, Map<Character, CompressedBitmap> vars) {
+        CompressedBitmap[] bindings = new CompressedBitmap[program.variableCount()];
+        for (int slot = 0; slot < bindings.length; slot++) {
+            CompressedBitmap value = vars.get(program.variable(slot).charAt(0));
+            if (value == null)
+                throw new IllegalArgumentException("Undefined variable: '" + program.variable(slot) + "'");
+            bindings[slot] = value;
+        }
+        return bindings;
+    }
+
+    // universe may be null if the program has no ~
+    public static CompressedBitmap evaluate(CompiledExpression program, CompressedBitmap[] bindings,
+            CompressedBitmap universe) {
+        if (universe == null) {
+            for (int pc = 0; pc < program.size(); pc++) {
+                if (program.opcode(pc) == CompiledExpression.NOT)
+                    throw new IllegalArgumentException("~ needs a universe to complement against.");
+            }
+        } else {
+            CompressedBitmap[] clipped = new CompressedBitmap[bindings.length];
+            for (int slot = 0; slot < bindings.length; slot++)
+                clipped[slot] = bindings[slot].and(universe);
+            bindings = clipped;
+        }
+
+        int maxDepth = program.maxStackDepth();
+        CompressedBitmap[] stack = new CompressedBitmap[maxDepth + program.temporaryCount()];
+        boolean[] negated = new boolean[stack.length];
+        int sp = 0;
+        for (int pc = 0; pc < program.size(); pc++) {
+            byte opcode = program.opcode(pc);
+            switch (opcode) {
+                case CompiledExpression.LOAD -> {
+                    stack[sp] = bindings[program.operand(pc)];
+                    negated[sp++] = false;
+                }
+                case CompiledExpression.NOT -> negated[sp - 1] = !negated[sp - 1];
+                case CompiledExpression.TEE -> {
+                    int t = maxDepth + program.operand(pc);
+                    stack[t] = stack[sp - 1];
+                    negated[t] = negated[sp - 1];
+                }
+                case CompiledExpression.LOADT -> {
+                    int t = maxDepth + program.operand(pc);
+                    stack[sp] = stack[t];
+                    negated[sp++] = negated[t];
+                }
+                case CompiledExpression.AND, CompiledExpression.OR, CompiledExpression.XOR -> {
+                    sp--;
+                    CompressedBitmap a = stack[sp - 1], b = stack[sp];
+                    boolean notA = negated[sp - 1], notB = negated[sp];
+                    if (opcode == CompiledExpression.XOR) {
+                        // ~a ^ b == ~(a ^ b) and ~a ^ ~b == a ^ b
+                        stack[sp - 1] = a.xor(b);
+                        negated[sp - 1] = notA != notB;
+                    } else {
+                        // a | b == ~(~a & ~b): OR is AND with every flag flipped, and the result's flipped too
+                        boolean or = opcode == CompiledExpression.OR;
+                        boolean x = notA != or, y = notB != or;
+                        stack[sp - 1] = x && y ? a.or(b) : x ? b.andNot(a) : y ? a.andNot(b) : a.and(b);
+                        negated[sp - 1] = (x && y) != or;
+                    }
+                    stack[sp] = null;
+                }
+                case CompiledExpression.CONST ->
+                    throw new IllegalArgumentException("A set expression takes variables only, not the literal "
+                            + program.operand(pc) + ".");
+                default -> throw new IllegalArgumentException("Only &, |, ^ and ~ apply to sets.");
+            }
+        }
+        return negated[0] ? universe.andNot(stack[0]) : stack[0];
+    }
+}
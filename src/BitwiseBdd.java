@@ -0,0 +1,614 @@
+import java.util.*;
+
+// Reduced ordered binary decision diagrams for BitwiseEvaluator expressions.
+//
+// An expression is bit-blasted into 32 BDDs, one per bit of its value. The boolean
+// variables are named relative to the bit being computed: (a, d) is bit i + d of a
+// in the BDD for bit i. &, | and ^ combine matching bits and ~ negates each, so
+// every bit of a plain bitwise expression is the same function of (x, 0) variables
+// and is built once; only constants make bits differ. A shift by a constant moves
+// the vector and renames the offsets, and a shift by a variable is a five-stage
+// barrel shifter on the low five bits of the count, as Java's int shifts are.
+// Variables are ordered by offset, then by letter.
+//
+// Nodes are hash-consed in a unique table, so two functions are equal exactly when
+// their node ids are, and apply results are memoized in a direct-mapped cache. That
+// makes equivalence an id comparison and satisfiability a test against FALSE, in
+// time that depends on the size of the BDDs rather than on 2^(32 * variables).
+//
+// minimize looks for a cheaper expression with the same value: result bits with
+// the same BDD form one class, each class is written as a factored sum of products
+// (Minato-Morreale ISOP on the BDD, or of its complement) or as an XOR of literals,
+// and classes are masked and ORed together. Every candidate is checked against the
+// original's BDD before it is used. An expression whose BDDs outgrow dsa.bdd.nodes
+// is returned unchanged.
+//
+// Tuning (system properties):
+//   dsa.bdd.nodes  largest number of nodes one query may create (default 4M)
+public final class BitwiseBdd {
+
+    static final int FALSE = 0;
+    static final int TRUE = 1;
+
+    private static final int WIDTH = Integer.SIZE;
+    private static final int SHIFT_BITS = 5; // int shifts use the count's low five bits
+    private static final int MAX_NODES = Integer.getInteger("dsa.bdd.nodes", 1 << 22);
+    // Cubes in one ISOP cover before that form is given up
+    private static final int MAX_CUBES = 256;
+
+    private static final byte AND = 0;
+    private static final byte OR = 1;
+    private static final byte XOR = 2;
+
+    private final String names;  // variable letters; a letter's index is its position
+    private int[] level;
+    private int[] low;
+    private int[] high;
+    private int count;
+    private int[] unique;        // node ids by hash of (level, low, high); 0 is an empty slot
+    private int[] cacheLeft;     // apply cache: left operand, or -1 when empty
+    private int[] cacheRight;    // right operand with the operator in the top two bits
+    private int[] cacheResult;
+
+    private BitwiseBdd(String names) {
+        this.names = names;
+        int capacity = 1 << 12;
+        level = new int[capacity];
+        low = new int[capacity];
+        high = new int[capacity];
+        level[FALSE] = level[TRUE] = Integer.MAX_VALUE;
+        count = 2;
+        unique = new int[capacity * 2];
+        newCache(capacity);
+    }
+
+    // True if both expressions give the same value for every binding
+    public static boolean equivalent(String a, String b) {
+        return counterexample(a, b) == null;
+    }
+
+    // A binding on which the two expressions differ, or null if they are equivalent
+    public static Map<Character, Integer> counterexample(String a, String b) {
+        BitwiseBdd bdd = new BitwiseBdd(letters(a, b));
+        int[] x = bdd.build(a);
+        int[] y = bdd.build(b);
+        for (int bit = 0; bit < WIDTH; bit++) {
+            if (x[bit] != y[bit])
+                return bdd.path(bdd.apply(XOR, x[bit], y[bit]), bit);
+        }
+        return null;
+    }
+
+    // True if some binding makes the expression non-zero
+    public static boolean satisfiable(String expr) {
+        return witness(expr) != null;
+    }
+
+    // A binding that makes the expression non-zero, or null if it is always 0
+    public static Map<Character, Integer> witness(String expr) {
+        BitwiseBdd bdd = new BitwiseBdd(letters(expr));
+        int[] bits = bdd.build(expr);
+        for (int bit = 0; bit < WIDTH; bit++) {
+            if (bits[bit] != FALSE)
+                return bdd.path(bits[bit], bit);
+        }
+        return null;
+    }
+
+    // An equivalent expression that compiles to fewer instructions, or expr itself
+    public static String minimize(String expr) {
+        int size = BitwiseEvaluator.compile(expr).size();
+        BitwiseBdd bdd = new BitwiseBdd(letters(expr));
+        String candidate;
+        try {
+            int[] original = bdd.build(expr);
+            candidate = bdd.synthesize(original);
+            if (candidate == null || !Arrays.equals(bdd.build(candidate), original))
+                return expr;
+        } catch (NodeLimitException e) {
+            return expr;
+        }
+        return BitwiseEvaluator.compile(candidate).size() < size ? candidate : expr;
+    }
+
+    private static String letters(String... exprs) {
+        TreeSet<Character> letters = new TreeSet<>();
+        for (String expr : exprs) {
+            if (expr == null || expr.trim().isEmpty())
+                throw new IllegalArgumentException("Expression is empty.");
+            for (char c : expr.toCharArray()) {
+                if (Character.isLetter(c)) letters.add(c);
+            }
+        }
+        StringBuilder names = new StringBuilder();
+        for (char c : letters) names.append(c);
+        return names.toString();
+    }
+
+    // ---- Building -----------------------------------------------------------
+
+    // One BDD per bit of the expression's value, bit 0 first
+    private int[] build(String expr) {
+        CompiledExpression program = BitwiseEvaluator.compile(expr);
+        int[] slots = new int[program.variableCount()];
+        for (int slot = 0; slot < slots.length; slot++)
+            slots[slot] = names.indexOf(program.variable(slot).charAt(0));
+
+        int maxDepth = program.maxStackDepth();
+        int[][] stack = new int[maxDepth + program.temporaryCount()][];
+        int sp = 0;
+        for (int pc = 0; pc < program.size(); pc++) {
+            byte opcode = program.opcode(pc);
+            switch (opcode) {
+                case CompiledExpression.LOAD -> {
+                    int[] bits = new int[WIDTH];
+                    Arrays.fill(bits, variable(slots[program.operand(pc)], 0));
+                    stack[sp++] = bits;
+                }
+                case CompiledExpression.CONST -> stack[sp++] = constant(program.operand(pc));
+                case CompiledExpression.NOT -> {
+                    int[] bits = stack[sp - 1].clone();
+                    for (int bit = 0; bit < WIDTH; bit++)
+                        bits[bit] = not(bits[bit]);
+                    stack[sp - 1] = bits;
+                }
+                case CompiledExpression.TEE -> stack[maxDepth + program.operand(pc)] = stack[sp - 1];
+                case CompiledExpression.LOADT -> stack[sp++] = stack[maxDepth + program.operand(pc)];
+                case CompiledExpression.SHL, CompiledExpression.SHR -> {
+                    sp--;
+                    stack[sp - 1] = shift(stack[sp - 1], stack[sp], opcode == CompiledExpression.SHL);
+                }
+                default -> {
+                    sp--;
+                    byte op = switch (opcode) {
+                        case CompiledExpression.AND -> AND;
+                        case CompiledExpression.OR -> OR;
+                        case CompiledExpression.XOR -> XOR;
+                        default -> throw new IllegalArgumentException("Not a bitwise opcode: " + opcode);
+                    };
+                    int[] bits = new int[WIDTH];
+                    for (int bit = 0; bit < WIDTH; bit++)
+                        bits[bit] = apply(op, stack[sp - 1][bit], stack[sp][bit]);
+                    stack[sp - 1] = bits;
+                }
+            }
+        }
+        return stack[0];
+    }
+
+    private static int[] constant(int value) {
+        int[] bits = new int[WIDTH];
+        for (int bit = 0; bit < WIDTH; bit++)
+            bits[bit] = (value >>> bit & 1) != 0 ? TRUE : FALSE;
+        return bits;
+    }
+
+    private int[] shift(int[] value, int[] count, boolean left) {
+        for (int stage = 0; stage < SHIFT_BITS; stage++) {
+            if (count[stage] == FALSE)
+                continue;
+            int distance = 1 << stage;
+            int[] shifted = new int[WIDTH];
+            for (int bit = 0; bit < WIDTH; bit++) {
+                int from = Math.min(left ? bit - distance : bit + distance, WIDTH - 1); // >> copies the sign
+                shifted[bit] = from < 0 ? FALSE : translate(value[from], from - bit, new HashMap<>());
+            }
+            if (count[stage] != TRUE) {
+                for (int bit = 0; bit < WIDTH; bit++) {
+                    int selector = translate(count[stage], stage - bit, new HashMap<>());
+                    shifted[bit] = ite(selector, shifted[bit], value[bit]);
+                }
+            }
+            value = shifted;
+        }
+        return value;
+    }
+
+    // u, which is relative to some bit, made relative to a bit delta below it
+    private int translate(int u, int delta, Map<Integer, Integer> memo) {
+        if (u <= TRUE || delta == 0)
+            return u;
+        Integer done = memo.get(u);
+        if (done != null)
+            return done;
+        // The bits named stay the same, so offsets stay within -31..31
+        int result = node(level[u] + delta * names.length(), translate(low[u], delta, memo),
+                translate(high[u], delta, memo));
+        memo.put(u, result);
+        return result;
+    }
+
+    // ---- Nodes and apply ----------------------------------------------------
+
+    private int variable(int lvl) {
+        return node(lvl, FALSE, TRUE);
+    }
+
+    // Bit i + offset of the letter with index v, seen from bit i
+    private int variable(int v, int offset) {
+        return variable((offset + WIDTH) * names.length() + v);
+    }
+
+    private int node(int lvl, int lo, int hi) {
+        if (lo == hi)
+            return lo;
+        int mask = unique.length - 1;
+        for (int i = hash(lvl, lo, hi) & mask; ; i = (i + 1) & mask) {
+            int id = unique[i];
+            if (id == 0) {
+                id = add(lvl, lo, hi);
+                if (count * 2 > unique.length) rehash();
+                else unique[i] = id;
+                return id;
+            }
+            if (level[id] == lvl && low[id] == lo && high[id] == hi)
+                return id;
+        }
+    }
+
+    private int add(int lvl, int lo, int hi) {
+        if (count == MAX_NODES)
+            throw new NodeLimitException();
+        if (count == level.length) {
+            int capacity = Math.min(level.length * 2, MAX_NODES);
+            level = Arrays.copyOf(level, capacity);
+            low = Arrays.copyOf(low, capacity);
+            high = Arrays.copyOf(high, capacity);
+            newCache(capacity);
+        }
+        level[count] = lvl;
+        low[count] = lo;
+        high[count] = hi;
+        return count++;
+    }
+
+    private void rehash() {
+        unique = new int[unique.length * 2];
+        int mask = unique.length - 1;
+        for (int id = 2; id < count; id++) {
+            int i = hash(level[id], low[id], high[id]) & mask;
+            while (unique[i] != 0) i = (i + 1) & mask;
+            unique[i] = id;
+        }
+    }
+
+    private static int hash(int a, int b, int c) {
+        int h = (a * 0x9E3779B1 + b) * 0x85EBCA77 + c;
+        return h ^ (h >>> 15);
+    }
+
+    // The cache grows with the node table and is simply dropped when it does
+    private void newCache(int nodes) {
+        int capacity = Integer.highestOneBit(nodes);
+        cacheLeft = new int[capacity];
+        cacheRight = new int[capacity];
+        cacheResult = new int[capacity];
+        Arrays.fill(cacheLeft, -1);
+    }
+
+    private int not(int u) {
+        return apply(XOR, u, TRUE);
+    }
+
+    private int ite(int c, int x, int y) {
+        return apply(OR, apply(AND, c, x), apply(AND, not(c), y));
+    }
+
+    private int apply(byte op, int a, int b) {
+        switch (op) {
+            case AND -> {
+                if (a == FALSE || b == FALSE) return FALSE;
+                if (a == TRUE || a == b) return b;
+                if (b == TRUE) return a;
+            }
+            case OR -> {
+                if (a == TRUE || b == TRUE) return TRUE;
+                if (a == FALSE || a == b) return b;
+                if (b == FALSE) return a;
+            }
+            default -> {
+                if (a == b) return FALSE;
+                if (a == FALSE) return b;
+                if (b == FALSE) return a;
+            }
+        }
+        if (a > b) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        int key = b | op << 30;
+        int slot = hash(op, a, b) & (cacheLeft.length - 1);
+        if (cacheLeft[slot] == a && cacheRight[slot] == key)
+            return cacheResult[slot];
+
+        int lvl = Math.min(level[a], level[b]);
+        int lo = apply(op, level[a] == lvl ? low[a] : a, level[b] == lvl ? low[b] : b);
+        int hi = apply(op, level[a] == lvl ? high[a] : a, level[b] == lvl ? high[b] : b);
+        int result = node(lvl, lo, hi);
+
+        // The cache may have been replaced while recursing
+        slot = hash(op, a, b) & (cacheLeft.length - 1);
+        cacheLeft[slot] = a;
+        cacheRight[slot] = key;
+        cacheResult[slot] = result;
+        return result;
+    }
+
+    // A binding along one path from u, the BDD of result bit position, to TRUE;
+    // bits not on the path are 0
+    private Map<Character, Integer> path(int u, int position) {
+        int[] values = new int[names.length()];
+        while (u != TRUE) {
+            int v = level[u] % names.length();
+            int bit = position + level[u] / names.length() - WIDTH;
+            if (high[u] != FALSE) {
+                values[v] |= 1 << bit;
+                u = high[u];
+            } else {
+                u = low[u];
+            }
+        }
+        Map<Character, Integer> binding = new TreeMap<>();
+        for (int v = 0; v < values.length; v++)
+            binding.put(names.charAt(v), values[v]);
+        return binding;
+    }
+
+    // ---- Minimal forms ------------------------------------------------------
+
+    // Expression text with the precedence of its top operator (BitwiseEvaluator's:
+    // 4 for an operand or ~, 3 for shifts, 2 for &, 1 for ^, 0 for |) and its operator count
+    private record Text(String text, int precedence, int cost) {
+        String at(int precedence) {
+            return this.precedence < precedence ? "(" + text + ")" : text;
+        }
+    }
+
+    // Candidate expression for the bit vector, or null when there is none
+    private String synthesize(int[] bits) {
+        Map<Integer, Integer> classes = new LinkedHashMap<>(); // node -> mask of the bits it computes
+        for (int bit = 0; bit < WIDTH; bit++)
+            classes.merge(bits[bit], 1 << bit, (x, y) -> x | y);
+
+        if (classes.size() == 1) {
+            int g = classes.keySet().iterator().next();
+            if (g == FALSE || g == TRUE) return g == TRUE ? mask(-1) : "0";
+            Text text = function(g);
+            return text == null ? null : text.text();
+        }
+        if (classes.size() == 2) {
+            // g on some bits and ~g on the rest is g ^ mask
+            Iterator<Map.Entry<Integer, Integer>> it = classes.entrySet().iterator();
+            Map.Entry<Integer, Integer> first = it.next(), second = it.next();
+            if (first.getKey() == not(second.getKey())) {
+                Map.Entry<Integer, Integer> plain = first.getKey() < second.getKey() ? first : second;
+                int flipped = ~plain.getValue();
+                if (plain.getKey() <= TRUE)
+                    return mask(plain.getKey() == TRUE ? plain.getValue() : flipped);
+                Text text = function(plain.getKey());
+                return text == null ? null : text.at(1) + " ^ " + mask(flipped);
+            }
+        }
+
+        // Each class g on bits m becomes g & m, ORed together. Then every mask that
+        // can go without changing the value goes: g may be true on other bits where
+        // the value is true anyway, or where its shifted literals are 0
+        List<String> masked = new ArrayList<>(), bare = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> entry : classes.entrySet()) {
+            int g = entry.getKey();
+            if (g == FALSE)
+                continue;
+            if (g == TRUE) {
+                masked.add(mask(entry.getValue()));
+                bare.add(null);
+                continue;
+            }
+            Text text = function(g);
+            if (text == null)
+                return null;
+            masked.add(text.at(2) + " & " + mask(entry.getValue()));
+            bare.add(text.at(0));
+        }
+        if (masked.isEmpty())
+            return "0";
+        List<String> pieces = new ArrayList<>(masked);
+        for (int i = 0; i < pieces.size(); i++) {
+            if (bare.get(i) == null)
+                continue;
+            pieces.set(i, bare.get(i));
+            if (!Arrays.equals(build(String.join(" | ", pieces)), bits))
+                pieces.set(i, masked.get(i));
+        }
+        return String.join(" | ", pieces);
+    }
+
+    // Literal for a mask; negative masks are written as ~k since literals are unsigned
+    private static String mask(int bits) {
+        return bits >= 0 ? Integer.toString(bits) : "~" + ~bits;
+    }
+
+    // Cheapest of: an XOR of literals, a factored cover of g, the complement of a factored cover of ~g
+    private Text function(int g) {
+        Text best = linear(g);
+        Cover cover = isop(g, g, MAX_CUBES, new HashMap<>());
+        Text sum = cover == null ? null : factor(cover.cubes());
+        if (sum != null && (best == null || sum.cost() < best.cost())) best = sum;
+        // Every cube after the first costs an OR, so a longer complement cannot win
+        int limit = best == null ? MAX_CUBES : Math.min(MAX_CUBES, best.cost() - 1);
+        Cover inverse = isop(not(g), not(g), limit, new HashMap<>());
+        Text complement = inverse == null ? null : factor(inverse.cubes());
+        if (complement != null && (best == null || complement.cost() + 1 < best.cost()))
+            best = new Text("~" + complement.at(4), 4, complement.cost() + 1);
+        return best;
+    }
+
+    // g as c ^ x ^ y ^ ... when it is affine in its variables
+    private Text linear(int g) {
+        SortedSet<Integer> support = new TreeSet<>();
+        support(g, support, new HashSet<>());
+        boolean constant = evaluate(g, -1);
+        int xor = constant ? TRUE : FALSE;
+        List<Integer> terms = new ArrayList<>();
+        for (int lvl : support) {
+            if (evaluate(g, lvl) != constant) {
+                terms.add(lvl);
+                xor = apply(XOR, xor, variable(lvl));
+            }
+        }
+        if (xor != g || terms.isEmpty())
+            return null;
+        List<Text> literals = new ArrayList<>();
+        for (int lvl : terms) literals.add(literal(lvl));
+        Text sum = join(literals, " ^ ", 1);
+        return constant ? new Text("~" + sum.at(4), 4, sum.cost() + 1) : sum;
+    }
+
+    private void support(int u, Set<Integer> levels, Set<Integer> seen) {
+        if (u <= TRUE || !seen.add(u))
+            return;
+        levels.add(level[u]);
+        support(low[u], levels, seen);
+        support(high[u], levels, seen);
+    }
+
+    // g with variable lvl true and every other variable false
+    private boolean evaluate(int g, int lvl) {
+        while (g > TRUE)
+            g = level[g] == lvl ? high[g] : low[g];
+        return g == TRUE;
+    }
+
+    // A sum of products and the function it covers. A cube is an array of literals
+    // lvl * 2 + (1 if positive).
+    private record Cover(List<int[]> cubes, int node) {
+    }
+
+    // Minato-Morreale irredundant sum of products for some f with lower <= f <= upper,
+    // or null when it needs more than limit cubes
+    private Cover isop(int lower, int upper, int limit, Map<Long, Cover> memo) {
+        if (lower == FALSE)
+            return new Cover(List.of(), FALSE);
+        if (upper == TRUE)
+            return new Cover(List.of(new int[0]), TRUE);
+        long key = (long) lower << 32 | upper;
+        Cover done = memo.get(key);
+        if (done != null)
+            return done;
+
+        int lvl = Math.min(level[lower], level[upper]);
+        int l0 = level[lower] == lvl ? low[lower] : lower, l1 = level[lower] == lvl ? high[lower] : lower;
+        int u0 = level[upper] == lvl ? low[upper] : upper, u1 = level[upper] == lvl ? high[upper] : upper;
+
+        Cover result = null;
+        Cover c0 = isop(apply(AND, l0, not(u1)), u0, limit, memo);
+        Cover c1 = c0 == null ? null : isop(apply(AND, l1, not(u0)), u1, limit - c0.cubes().size(), memo);
+        if (c1 != null) {
+            int rest = apply(OR, apply(AND, l0, not(c0.node())), apply(AND, l1, not(c1.node())));
+            int size = c0.cubes().size() + c1.cubes().size();
+            Cover cd = isop(rest, apply(AND, u0, u1), limit - size, memo);
+            if (cd != null && size + cd.cubes().size() <= limit) {
+                List<int[]> cubes = new ArrayList<>(size + cd.cubes().size());
+                for (int[] cube : c0.cubes()) cubes.add(with(cube, lvl * 2));
+                for (int[] cube : c1.cubes()) cubes.add(with(cube, lvl * 2 + 1));
+                cubes.addAll(cd.cubes());
+                result = new Cover(cubes,
+                        node(lvl, apply(OR, c0.node(), cd.node()), apply(OR, c1.node(), cd.node())));
+            }
+        }
+        if (result != null) memo.put(key, result); // a null may only mean the limit was lower then
+        return result;
+    }
+
+    private static int[] with(int[] cube, int literal) {
+        int[] out = Arrays.copyOf(cube, cube.length + 1);
+        out[cube.length] = literal;
+        return out;
+    }
+
+    // Writes a cover as a sum of products, repeatedly pulling out the literal shared by most cubes
+    private Text factor(List<int[]> cubes) {
+        if (cubes == null || cubes.isEmpty())
+            return null;
+        Map<Integer, Integer> uses = new HashMap<>();
+        for (int[] cube : cubes) {
+            for (int literal : cube) uses.merge(literal, 1, Integer::sum);
+        }
+        int shared = -1, most = 1;
+        for (Map.Entry<Integer, Integer> entry : uses.entrySet()) {
+            if (entry.getValue() > most) {
+                shared = entry.getKey();
+                most = entry.getValue();
+            }
+        }
+        if (shared < 0) {
+            List<Text> products = new ArrayList<>();
+            for (int[] cube : cubes) products.add(product(cube));
+            return join(products, " | ", 0);
+        }
+        List<int[]> inner = new ArrayList<>(), outer = new ArrayList<>();
+        for (int[] cube : cubes) {
+            int i = indexOf(cube, shared);
+            if (i < 0) {
+                outer.add(cube);
+            } else {
+                int[] rest = new int[cube.length - 1];
+                System.arraycopy(cube, 0, rest, 0, i);
+                System.arraycopy(cube, i + 1, rest, i, rest.length - i);
+                inner.add(rest);
+            }
+        }
+        Text factored = join(List.of(signed(shared), factor(inner)), " & ", 2);
+        return outer.isEmpty() ? factored : join(List.of(factored, factor(outer)), " | ", 0);
+    }
+
+    private static int indexOf(int[] cube, int literal) {
+        for (int i = 0; i < cube.length; i++) {
+            if (cube[i] == literal) return i;
+        }
+        return -1;
+    }
+
+    private Text product(int[] cube) {
+        List<Text> literals = new ArrayList<>();
+        for (int literal : cube) literals.add(signed(literal));
+        return join(literals, " & ", 2);
+    }
+
+    private static Text join(List<Text> parts, String operator, int precedence) {
+        if (parts.size() == 1)
+            return parts.get(0);
+        StringBuilder text = new StringBuilder();
+        int cost = parts.size() - 1;
+        for (Text part : parts) {
+            if (text.length() > 0) text.append(operator);
+            text.append(part.at(precedence));
+            cost += part.cost();
+        }
+        return new Text(text.toString(), precedence, cost);
+    }
+
+    private Text signed(int literal) {
+        Text x = literal(literal >> 1);
+        return (literal & 1) != 0 ? x : new Text("~" + x.at(4), 4, x.cost() + 1);
+    }
+
+    // A variable: a letter at offset d from the bit being computed
+    private Text literal(int lvl) {
+        int k = names.length();
+        char name = names.charAt(lvl % k);
+        int offset = lvl / k - WIDTH;
+        if (offset == 0) return new Text(String.valueOf(name), 4, 0);
+        if (offset < 0) return new Text(name + " << " + -offset, 3, 1);
+        return new Text(name + " >> " + offset, 3, 1);
+    }
+
+    // Thrown when a query would create more than MAX_NODES nodes
+    private static final class NodeLimitException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        NodeLimitException() {
+            super("Expression too large: more than " + MAX_NODES + " BDD nodes.");
+        }
+    }
+}
@@ -4,122 +4,119 @@ import java.util.*;
 public class BitwiseEvaluator {
 
     public static int evaluate(String expr, Map<Character, Integer> vars) {
-        validateExpression(expr);
-
-        Stack<Integer> values = new Stack<>();
-        Stack<String> ops = new Stack<>();
+        Telemetry.Span span = Telemetry.start(Telemetry.Operation.EVALUATE, "bitwise", expr);
+        try {
+            CompiledExpression program = compile(expr);
+            int result = program.evaluate(program.bind(vars));
+            span.finish();
+            return result;
+        } catch (RuntimeException e) {
+            span.fail(e);
+            throw e;
+        }
+    }
 
-        expr = expr.replaceAll("\\s", "");
+    // The same expression over sets of unsigned ints (see BitmapEvaluator); ~ is taken
+    // against universe, which may be null when the expression has no ~
+    public static CompressedBitmap evaluate(String expr, Map<Character, CompressedBitmap> vars,
+            CompressedBitmap universe) {
+        return Telemetry.time(Telemetry.Operation.EVALUATE, "bitmap", expr, () -> {
+            CompiledExpression program = compile(expr);
+            return BitmapEvaluator.evaluate(program, BitmapEvaluator.bind(program, vars), universe);
+        });
+    }
 
-        for (int i = 0; i < expr.length();) {
-            char c = expr.charAt(i);
+    // Validate and compile once (cached); the program can be re-evaluated against any bindings
+    public static CompiledExpression compile(String expr) {
+        return ExpressionCache.shared().get(expr, "bitwise", e -> ExpressionOptimizer.optimize(parse(e)));
+    }
 
-            if (Character.isLetter(c)) {
-                if (!vars.containsKey(c)) {
-                    throw new IllegalArgumentException("Undefined variable: '" + c + "'");
-                }
-                values.push(vars.get(c));
-                i++;
-            } else if (c == '(') {
-                ops.push("(");
-                i++;
-            } else if (c == ')') {
-                while (!ops.isEmpty() && !ops.peek().equals("(")) {
-                    applyTopOperator(values, ops.pop());
+    // Operators are kept as their TokenStream character ('<' and '>' stand for << and >>)
+    private static CompiledExpression parse(String expr) {
+        if (expr == null || expr.trim().isEmpty()) {
+            throw new IllegalArgumentException("Expression is empty.");
+        }
+        TokenStream tokens = Lexer.BITWISE.tokenize(expr);
+        CompiledExpression.Builder program = new CompiledExpression.Builder(tokens.size());
+        char[] ops = new char[tokens.size()];
+        int top = 0;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            if (program.operand(tokens, i)) {
+                continue;
+            } else if (tokens.kind(i) == TokenStream.LPAREN) {
+                ops[top++] = '(';
+            } else if (tokens.kind(i) == TokenStream.RPAREN) {
+                while (top > 0 && ops[top - 1] != '(') {
+                    applyTopOperator(program, ops[--top]);
                 }
-                if (!ops.isEmpty() && ops.peek().equals("(")) {
-                    ops.pop(); // pop the '('
+                if (top > 0) {
+                    top--; // pop the '('
                 } else {
                     throw new IllegalArgumentException("Mismatched parentheses.");
                 }
-                i++;
             } else {
-                String op;
-                if (i + 1 < expr.length()
-                        && (expr.substring(i, i + 2).equals("<<") || expr.substring(i, i + 2).equals(">>"))) {
-                    op = expr.substring(i, i + 2);
-                    i += 2;
-                } else {
-                    op = String.valueOf(c);
-                    i++;
-                }
-
-                if (!isValidOperator(op)) {
-                    throw new IllegalArgumentException("Unknown operator: " + op);
-                }
+                char op = tokens.operator(i);
 
                 // Special handling for unary ~
-                if (op.equals("~")) {
-                    while (!ops.isEmpty() && precedence(op) < precedence(ops.peek())) {
-                        applyTopOperator(values, ops.pop());
+                if (op == '~') {
+                    while (top > 0 && precedence(op) < precedence(ops[top - 1])) {
+                        applyTopOperator(program, ops[--top]);
                     }
                 } else {
-                    while (!ops.isEmpty() && precedence(op) <= precedence(ops.peek())) {
-                        applyTopOperator(values, ops.pop());
+                    while (top > 0 && precedence(op) <= precedence(ops[top - 1])) {
+                        applyTopOperator(program, ops[--top]);
                     }
                 }
 
-                ops.push(op);
+                ops[top++] = op;
             }
         }
 
-        while (!ops.isEmpty()) {
-            applyTopOperator(values, ops.pop());
+        while (top > 0) {
+            char op = ops[--top];
+            if (op == '(')
+                throw new IllegalArgumentException("Mismatched parentheses.");
+            applyTopOperator(program, op);
         }
 
-        if (values.size() != 1) {
+        if (program.depth() != 1) {
             throw new IllegalStateException("Invalid expression.");
         }
 
-        return values.pop();
+        return program.build();
     }
 
-    private static void applyTopOperator(Stack<Integer> values, String op) {
-        if (op.equals("~")) {
-            if (values.isEmpty())
+    private static void applyTopOperator(CompiledExpression.Builder program, char op) {
+        if (op == '~') {
+            if (program.depth() < 1)
                 throw new IllegalStateException("Missing operand for unary operator.");
-            int val = values.pop();
-            values.push(~val);
+            program.unary(CompiledExpression.NOT);
         } else {
-            if (values.size() < 2)
+            if (program.depth() < 2)
                 throw new IllegalStateException("Missing operands for binary operator.");
-            int b = values.pop();
-            int a = values.pop();
-            values.push(switch (op) {
-                case "&" -> a & b;
-                case "|" -> a | b;
-                case "^" -> a ^ b;
-                case "<<" -> a << b;
-                case ">>" -> a >> b;
+            program.operator(switch (op) {
+                case '&' -> CompiledExpression.AND;
+                case '|' -> CompiledExpression.OR;
+                case '^' -> CompiledExpression.XOR;
+                case '<' -> CompiledExpression.SHL;
+                case '>' -> CompiledExpression.SHR;
                 default -> throw new IllegalArgumentException("Unknown operator: " + op);
             });
         }
     }
 
-    private static int precedence(String op) {
+    private static int precedence(char op) {
         return switch (op) {
-            case "~" -> 4;
-            case "<<", ">>" -> 3;
-            case "&" -> 2;
-            case "^" -> 1;
-            case "|" -> 0;
+            case '~' -> 4;
+            case '<', '>' -> 3;
+            case '&' -> 2;
+            case '^' -> 1;
+            case '|' -> 0;
             default -> -1;
         };
     }
 
-    private static boolean isValidOperator(String op) {
-        return Set.of("~", "&", "|", "^", "<<", ">>", "(", ")").contains(op);
-    }
-
-    private static void validateExpression(String expr) {
-        if (expr == null || expr.trim().isEmpty()) {
-            throw new IllegalArgumentException("Expression is empty.");
-        }
-        if (!expr.matches("[a-zA-Z0-9\\s()~&|^<>]*")) {
-            throw new IllegalArgumentException("Expression contains invalid characters.");
-        }
-    }
-
     public static void handle() {
         Scanner scanner = new Scanner(System.in);
 
@@ -154,13 +151,9 @@ public class BitwiseEvaluator {
         }
 
         // Write to input.txt
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter("input.txt", true))) {
-            bw.write(inputLog.toString());
-            bw.write("---Sesion End ----");
-            bw.write("------------------------------\n\n");
-        } catch (IOException e) {
-            System.out.println("Error writing to input.txt: " + e.getMessage());
-        }
+        inputLog.append("---Sesion End ----");
+        inputLog.append("------------------------------\n\n");
+        SessionJournal.shared().append("input.txt", inputLog.toString());
 
         int result;
         try {
@@ -169,17 +162,16 @@ public class BitwiseEvaluator {
         } catch (Exception e) {
             String errorMsg = "Evaluation error: " + e.getMessage();
             System.out.println(errorMsg);
+            HistoryStore.record("bitwise", "bitwise", expression, HistoryStore.bindings(vars), "Error: " + e.getMessage());
 
             // Also log the error to input.txt
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter("input.txt", true))) {
-                bw.write("Error: " + e.getMessage() + "\n\n");
-            } catch (IOException ioException) {
-                ioException.printStackTrace();
-            }
+            SessionJournal.shared().append("input.txt", "Error: " + e.getMessage() + "\n\n");
 
             return;
         }
 
+        HistoryStore.record("bitwise", "bitwise", expression, HistoryStore.bindings(vars), String.valueOf(result));
+
         StringBuilder outputLog = new StringBuilder();
         outputLog.append("--- Session Start: ").append(new Date()).append(" ---\n");
         outputLog.append("Result: ").append(result).append("\n");
@@ -187,11 +179,7 @@ public class BitwiseEvaluator {
         outputLog.append("------------------------------\n\n");
 
         // Write to output.txt
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter("output.txt", true))) {
-            bw.write(outputLog.toString());
-        } catch (IOException e) {
-            System.out.println("Error writing to output.txt: " + e.getMessage());
-        }
+        SessionJournal.shared().append("output.txt", outputLog.toString());
     }
 
     public static void main(String[] args) {
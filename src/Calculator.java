@@ -0,0 +1,69 @@
+import java.io.*;
+import java.util.*;
+
+// Instance API over the calculator modules: every method returns its result instead
+// of printing it, and nothing is read from the console or written to the session
+// journal or history files.
+//
+// A Calculator holds no state of its own. Compiled programs and trees come from the
+// shared ExpressionCache and are never modified once built, so one instance can be
+// used from any number of threads at once.
+//
+// Notations are "infix", "prefix" and "postfix"; conversions are written "from>to",
+// e.g. "infix>postfix".
+public final class Calculator {
+
+    public int evaluate(String notation, String expression, Map<Character, Integer> vars) {
+        return ExpressionEvaluator.evaluate(expression, choice(notation), vars);
+    }
+
+    // Same as evaluate, but with long inputs and a BigInteger result instead of wrapping on overflow
+    public Number evaluateExact(String notation, String expression, Map<Character, ? extends Number> vars) {
+        return ExpressionEvaluator.evaluateExact(expression, choice(notation), vars);
+    }
+
+    public int evaluateBitwise(String expression, Map<Character, Integer> vars) {
+        return BitwiseEvaluator.evaluate(expression, vars);
+    }
+
+    public String convert(String conversion, String expression) {
+        return Converter.convert(conversion, expression);
+    }
+
+    // Drawing of the expression tree, one line per level; a drawing that could exceed
+    // dsa.tree.maxChars characters (default 4M) is refused with an IllegalArgumentException
+    public String tree(String notation, String expression) {
+        choice(notation);
+        try {
+            return ExpressionTreeVisualizer.render(expression, notation);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // One request in the batch line format,  notation<TAB>expression[<TAB>bindings]  (see
+    // BatchRunner), plus tree:infix, tree:prefix and tree:postfix for a drawing. Never
+    // throws: a request that cannot be answered gives "Error: <message>".
+    public String process(String line) {
+        String[] fields = line.split("\t", 3);
+        if (fields.length < 2)
+            return "Error: Expected notation<TAB>expression[<TAB>bindings]";
+        String notation = fields[0].trim();
+        try {
+            if (notation.startsWith("tree:"))
+                return tree(notation.substring(5), fields[1]);
+            return BatchRunner.evaluate(notation, fields[1], fields.length > 2 ? fields[2] : "");
+        } catch (RuntimeException e) {
+            return "Error: " + e.getMessage();
+        }
+    }
+
+    private static int choice(String notation) {
+        return switch (notation) {
+            case "infix" -> 1;
+            case "prefix" -> 2;
+            case "postfix" -> 3;
+            default -> throw new IllegalArgumentException("Unknown notation: " + notation);
+        };
+    }
+}
@@ -0,0 +1,272 @@
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Serves a Calculator over a loopback TCP port or a Unix-domain socket.
+//
+// Every request is one Calculator.process call: notation<TAB>expression[<TAB>bindings],
+// answered with the result or "Error: <message>". A connection speaks one of two
+// framings, picked by its first byte:
+//   lines   requests and responses end in '\n' (a trailing '\r' is ignored); inside a
+//           response (tree drawings) line breaks are sent as \n and backslashes as \\
+//   frames  a 4-byte big-endian length, then that many bytes; a request's first byte is
+//           always 0 since requests are far below 16 MiB, which is how this mode is told apart
+// Clients may pipeline: every complete request already received is answered, and the
+// answers go out in one write.
+//
+// Each connection is handled by its own thread with blocking I/O. When the JVM has
+// virtual threads (Java 21+) those are used, so idle connections cost a few hundred
+// bytes rather than a platform thread; on older JVMs connections get pooled platform threads.
+//
+// Usage: java Main --serve <port> | --serve unix:<path>
+public final class CalculatorServer implements Closeable {
+
+    // Largest request accepted, in bytes; a longer one closes the connection
+    private static final int MAX_REQUEST = Integer.getInteger("dsa.server.maxRequest", 1 << 20);
+    // Pending connections queued by the OS before accept
+    private static final int BACKLOG = Integer.getInteger("dsa.server.backlog", 4096);
+    // Initial read buffer per connection; grows up to MAX_REQUEST for long requests
+    private static final int BUFFER = 4 << 10;
+
+    private final Calculator calculator = new Calculator();
+    private final ServerSocketChannel server;
+    private final SocketAddress address;
+    private final ExecutorService connections = newConnectionExecutor();
+    private final Set<SocketChannel> open = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    private CalculatorServer(ServerSocketChannel server) throws IOException {
+        this.server = server;
+        this.address = server.getLocalAddress();
+        this.acceptor = new Thread(this::accept, "calculator-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: java Main --serve <port> | --serve unix:<path>");
+            return;
+        }
+        CalculatorServer server = start(address(args[0]));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        System.err.println("Listening on " + server.address());
+        server.acceptor.join();
+    }
+
+    // "unix:<path>" for a Unix-domain socket, otherwise a port on the loopback interface (0 picks a free one)
+    public static SocketAddress address(String spec) {
+        if (spec.startsWith("unix:"))
+            return UnixDomainSocketAddress.of(spec.substring(5));
+        try {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(spec.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a port or unix:<path>, got: " + spec);
+        }
+    }
+
+    public static CalculatorServer start(SocketAddress address) throws IOException {
+        ServerSocketChannel server = address instanceof UnixDomainSocketAddress
+                ? ServerSocketChannel.open(StandardProtocolFamily.UNIX)
+                : ServerSocketChannel.open();
+        try {
+            server.bind(address, BACKLOG);
+            return new CalculatorServer(server);
+        } catch (IOException | RuntimeException e) {
+            server.close();
+            throw e;
+        }
+    }
+
+    // The bound address, with the actual port when started on port 0
+    public SocketAddress address() {
+        return address;
+    }
+
+    // Stop accepting, drop every open connection and remove the socket file, if any
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException ignored) {
+        }
+        for (SocketChannel channel : open) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+        connections.shutdown();
+        if (address instanceof UnixDomainSocketAddress unix) {
+            try {
+                Files.deleteIfExists(unix.getPath());
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // A failing accept (e.g. out of file descriptors) is retried after a pause that doubles
+    // from 10 ms up to 100 ms, and reported at most once a second
+    private void accept() {
+        long pause = 0;
+        long reported = 0;
+        int suppressed = 0;
+        while (!closed) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+                pause = 0;
+            } catch (IOException e) {
+                if (closed)
+                    break;
+                long now = System.nanoTime();
+                if (reported == 0 || now - reported >= TimeUnit.SECONDS.toNanos(1)) {
+                    System.err.println("Accept failed: " + e.getMessage()
+                            + (suppressed > 0 ? " (" + suppressed + " more since the last report)" : ""));
+                    reported = now;
+                    suppressed = 0;
+                } else {
+                    suppressed++;
+                }
+                pause = Math.min(Math.max(pause * 2, 10), 100);
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                continue;
+            }
+            open.add(channel);
+            try {
+                connections.execute(() -> serve(channel));
+            } catch (RejectedExecutionException e) {
+                open.remove(channel);
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            if (channel.getRemoteAddress() instanceof InetSocketAddress)
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            ByteBuffer in = ByteBuffer.allocate(BUFFER);
+            ByteBuffer out = ByteBuffer.allocate(BUFFER);
+            if (channel.read(in) < 0)
+                return;
+            boolean frames = in.get(0) == 0;
+            while (true) {
+                in.flip();
+                out = frames ? answerFrames(in, out) : answerLines(in, out, false);
+                if (out == null)
+                    return;
+                send(channel, out);
+                in.compact();
+                if (!in.hasRemaining()) {
+                    if (in.capacity() >= MAX_REQUEST)
+                        return;
+                    in = grow(in, Math.min(in.capacity() * 2, MAX_REQUEST) + 4);
+                }
+                if (channel.read(in) < 0) {
+                    // A last line need not end in '\n'
+                    in.flip();
+                    if (!frames && in.hasRemaining())
+                        send(channel, answerLines(in, out, true));
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // The client went away; nothing to answer
+        } finally {
+            open.remove(channel);
+        }
+    }
+
+    // Answer every complete line in in, leaving in positioned at the first unanswered byte
+    private ByteBuffer answerLines(ByteBuffer in, ByteBuffer out, boolean last) {
+        byte[] bytes = in.array();
+        int from = in.position();
+        for (int i = from; i < in.limit(); i++) {
+            if (bytes[i] == '\n') {
+                out = answer(bytes, from, i, out, false);
+                from = i + 1;
+            }
+        }
+        if (last && from < in.limit()) {
+            out = answer(bytes, from, in.limit(), out, false);
+            from = in.limit();
+        }
+        in.position(from);
+        return out;
+    }
+
+    // Answer every complete frame in in; null if a frame is larger than MAX_REQUEST
+    private ByteBuffer answerFrames(ByteBuffer in, ByteBuffer out) {
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < 0 || length > MAX_REQUEST)
+                return null;
+            if (in.remaining() - 4 < length)
+                break;
+            int from = in.position() + 4;
+            out = answer(in.array(), from, from + length, out, true);
+            in.position(from + length);
+        }
+        return out;
+    }
+
+    private ByteBuffer answer(byte[] bytes, int from, int to, ByteBuffer out, boolean framed) {
+        if (!framed && to > from && bytes[to - 1] == '\r')
+            to--;
+        String result = calculator.process(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+        if (!framed)
+            result = result.replace("\\", "\\\\").replace("\n", "\\n") + '\n';
+        byte[] response = result.getBytes(StandardCharsets.ISO_8859_1);
+        if (out.remaining() < response.length + 4)
+            out = grow(out, Math.max(out.capacity() * 2, out.position() + response.length + 4));
+        if (framed)
+            out.putInt(response.length);
+        return out.put(response);
+    }
+
+    // Write out in full and leave it empty for the next batch of answers
+    private static void send(SocketChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining())
+            channel.write(out);
+        out.clear();
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer bigger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        return bigger.put(buffer);
+    }
+
+    // Virtual thread per connection where available (looked up reflectively so the
+    // sources still build for Java 17), otherwise a cached pool of platform threads
+    private static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "calculator-connection");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
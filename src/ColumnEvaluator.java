@@ -0,0 +1,155 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+// Evaluates one compiled expression over whole columns: one int[] per variable
+// slot and one int[] for the results. Instead of running the program once per
+// row, each instruction is applied to a block of rows at a time, so every
+// operator becomes a tight counted loop over int arrays that the JIT can
+// vectorize. Large inputs are split into chunks and evaluated in parallel.
+public final class ColumnEvaluator {
+
+    // Rows per block; a multiple of 64 so each block owns whole words of the error bitmap
+    private static final int BLOCK = 1024;
+    // Blocks handed to one worker at a time
+    private static final int BLOCKS_PER_CHUNK = 64;
+    // Below this many rows the columns are evaluated on the calling thread
+    private static final int PARALLEL_THRESHOLD = BLOCK * BLOCKS_PER_CHUNK;
+
+    private ColumnEvaluator() {
+    }
+
+    // Evaluate program for every row. columns[slot] holds the values of variable slot.
+    // Rows that divide by zero get result 0 and their bit set in errors (if errors is non-null).
+    // Returns the number of rows that failed.
+    public static int evaluate(CompiledExpression program, int[][] columns, int[] result, long[] errors) {
+        int rows = result.length;
+        if (columns.length < program.variableCount())
+            throw new IllegalArgumentException("Expected " + program.variableCount() + " columns but got " + columns.length);
+        for (int[] column : columns) {
+            if (column.length < rows)
+                throw new IllegalArgumentException("Column shorter than result: " + column.length + " < " + rows);
+        }
+        if (errors != null && errors.length < errorWords(rows))
+            throw new IllegalArgumentException("Error bitmap too small for " + rows + " rows.");
+
+        long[] bitmap = errors != null ? errors : new long[errorWords(rows)];
+        Arrays.fill(bitmap, 0L);
+
+        if (rows < PARALLEL_THRESHOLD) {
+            evaluateRange(program, columns, result, bitmap, 0, rows);
+        } else {
+            int chunkRows = BLOCK * BLOCKS_PER_CHUNK;
+            int chunks = (rows + chunkRows - 1) / chunkRows;
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                int from = chunk * chunkRows;
+                evaluateRange(program, columns, result, bitmap, from, Math.min(rows, from + chunkRows));
+            });
+        }
+
+        int failed = 0;
+        for (long word : bitmap) {
+            failed += Long.bitCount(word);
+        }
+        return failed;
+    }
+
+    // Number of longs needed for an error bitmap covering rows
+    public static int errorWords(int rows) {
+        return (rows + 63) >>> 6;
+    }
+
+    public static boolean isError(long[] errors, int row) {
+        return (errors[row >>> 6] & (1L << row)) != 0;
+    }
+
+    private static void evaluateRange(CompiledExpression program, int[][] columns, int[] result, long[] errors,
+            int from, int to) {
+        // Operand registers followed by the temporaries of shared subexpressions
+        int[][] registers = new int[Math.max(program.maxStackDepth() + program.temporaryCount(), 1)][BLOCK];
+        for (int start = from; start < to; start += BLOCK) {
+            evaluateBlock(program, columns, result, errors, registers, start, Math.min(BLOCK, to - start));
+        }
+    }
+
+    private static void evaluateBlock(CompiledExpression program, int[][] columns, int[] result, long[] errors,
+            int[][] registers, int start, int len) {
+        boolean failed = false;
+        int sp = 0;
+        for (int pc = 0; pc < program.size(); pc++) {
+            switch (program.opcode(pc)) {
+                case CompiledExpression.LOAD -> System.arraycopy(columns[program.operand(pc)], start, registers[sp++], 0, len);
+                case CompiledExpression.CONST -> Arrays.fill(registers[sp++], 0, len, program.operand(pc));
+                case CompiledExpression.ADD -> {
+                    sp--;
+                    int[] x = registers[sp - 1], y = registers[sp];
+                    for (int i = 0; i < len; i++) x[i] += y[i];
+                }
+                case CompiledExpression.SUB -> {
+                    sp--;
+                    int[] x = registers[sp - 1], y = registers[sp];
+                    for (int i = 0; i < len; i++) x[i] -= y[i];
+                }
+                case CompiledExpression.MUL -> {
+                    sp--;
+                    int[] x = registers[sp - 1], y = registers[sp];
+                    for (int i = 0; i < len; i++) x[i] *= y[i];
+                }
+                case CompiledExpression.DIV -> {
+                    sp--;
+                    int[] x = registers[sp - 1], y = registers[sp];
+                    for (int i = 0; i < len; i++) {
+                        int d = y[i];
+                        if (d == 0) {
+                            errors[(start + i) >>> 6] |= 1L << (start + i);
+                            failed = true;
+                            x[i] = 0;
+                        } else {
+                            x[i] /= d;
+                        }
+                    }
+                }
+                case CompiledExpression.AND -> {
+                    sp--;
+                    int[] x = registers[sp - 1], y = registers[sp];
+                    for (int i = 0; i < len; i++) x[i] &= y[i];
+                }
+                case CompiledExpression.OR -> {
+                    sp--;
+                    int[] x = registers[sp - 1], y = registers[sp];
+                    for (int i = 0; i < len; i++) x[i] |= y[i];
+                }
+                case CompiledExpression.XOR -> {
+                    sp--;
+                    int[] x = registers[sp - 1], y = registers[sp];
+                    for (int i = 0; i < len; i++) x[i] ^= y[i];
+                }
+                case CompiledExpression.SHL -> {
+                    sp--;
+                    int[] x = registers[sp - 1], y = registers[sp];
+                    for (int i = 0; i < len; i++) x[i] <<= y[i];
+                }
+                case CompiledExpression.SHR -> {
+                    sp--;
+                    int[] x = registers[sp - 1], y = registers[sp];
+                    for (int i = 0; i < len; i++) x[i] >>= y[i];
+                }
+                case CompiledExpression.NOT -> {
+                    int[] x = registers[sp - 1];
+                    for (int i = 0; i < len; i++) x[i] = ~x[i];
+                }
+                case CompiledExpression.TEE -> System.arraycopy(registers[sp - 1], 0,
+                        registers[program.maxStackDepth() + program.operand(pc)], 0, len);
+                case CompiledExpression.LOADT -> System.arraycopy(registers[program.maxStackDepth() + program.operand(pc)], 0,
+                        registers[sp++], 0, len);
+                default -> throw new IllegalStateException("Unknown opcode: " + program.opcode(pc));
+            }
+        }
+
+        System.arraycopy(registers[0], 0, result, start, len);
+        if (failed) {
+            for (int i = 0; i < len; i++) {
+                if (isError(errors, start + i)) result[start + i] = 0;
+            }
+        }
+    }
+}
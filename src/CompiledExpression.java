@@ -0,0 +1,466 @@
+import java.util.*;
+
+// A parsed expression stored as a flat postfix program: one opcode per
+// instruction with its operand in a parallel int array. Variables are resolved
+// to slot indices at compile time, so re-evaluating against a new set of
+// bindings is a single pass over two arrays with no parsing, boxing or map
+// lookups.
+public final class CompiledExpression {
+
+    // Opcodes
+    public static final byte LOAD = 0;   // push bindings[operand]
+    public static final byte CONST = 1;  // push operand
+    public static final byte ADD = 2;
+    public static final byte SUB = 3;
+    public static final byte MUL = 4;
+    public static final byte DIV = 5;
+    public static final byte AND = 6;
+    public static final byte OR = 7;
+    public static final byte XOR = 8;
+    public static final byte SHL = 9;
+    public static final byte SHR = 10;
+    public static final byte NOT = 11;   // unary
+    public static final byte TEE = 12;   // copy top of stack into temporary operand (stays on stack)
+    public static final byte LOADT = 13; // push temporary operand
+
+    private final byte[] ops;
+    private final int[] args;
+    private final String[] variables;
+    private final int maxDepth;
+    private final int temporaries;
+
+    // Tiered execution: interpreted until ExpressionJit.threshold() runs, then a generated kernel
+    private volatile Kernel kernel;
+    private int invocations;
+    private boolean jitFailed;
+
+    // Implemented by the hidden classes that ExpressionJit generates
+    public interface Kernel {
+        int evaluate(int[] bindings);
+    }
+
+    private CompiledExpression(byte[] ops, int[] args, String[] variables, int maxDepth, int temporaries) {
+        this.ops = ops;
+        this.args = args;
+        this.variables = variables;
+        this.maxDepth = maxDepth;
+        this.temporaries = temporaries;
+    }
+
+    // Compile an expression; choice follows ExpressionEvaluator (1. Infix 2. Prefix 3. Postfix)
+    public static CompiledExpression compile(String expr, int choice) {
+        return switch (choice) {
+            case 1 -> compileInfix(expr);
+            case 2 -> compilePrefix(expr);
+            case 3 -> compilePostfix(expr);
+            default -> throw new IllegalArgumentException("Invalid choice");
+        };
+    }
+
+    public static CompiledExpression compile(TokenStream tokens, int choice) {
+        return switch (choice) {
+            case 1 -> compileInfix(tokens);
+            case 2 -> compilePrefix(tokens);
+            case 3 -> compilePostfix(tokens);
+            default -> throw new IllegalArgumentException("Invalid choice");
+        };
+    }
+
+    public static CompiledExpression compilePostfix(String expr) {
+        return compilePostfix(Lexer.ARITHMETIC.tokenize(expr));
+    }
+
+    public static CompiledExpression compilePrefix(String expr) {
+        return compilePrefix(Lexer.ARITHMETIC.tokenize(expr));
+    }
+
+    public static CompiledExpression compileInfix(String expr) {
+        return compileInfix(Lexer.ARITHMETIC.tokenize(expr));
+    }
+
+    public static CompiledExpression compilePostfix(TokenStream tokens) {
+        Builder builder = new Builder(tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            if (!builder.operand(tokens, i))
+                builder.operator(opcodeOf(tokens.firstChar(i)));
+        }
+        return builder.build();
+    }
+
+    // Prefix is read left to right; each operator waits on a pending stack until
+    // both of its operands have been emitted, which yields the postfix order directly.
+    public static CompiledExpression compilePrefix(TokenStream tokens) {
+        Builder builder = new Builder(tokens.size());
+        byte[] pendingOps = new byte[tokens.size()];
+        boolean[] leftDone = new boolean[tokens.size()];
+        int pending = 0;
+        boolean complete = false;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            if (complete)
+                throw new IllegalArgumentException("Invalid expression.");
+            if (builder.operand(tokens, i)) {
+                while (pending > 0 && leftDone[pending - 1]) {
+                    builder.operator(pendingOps[--pending]);
+                }
+                if (pending == 0) {
+                    complete = true;
+                } else {
+                    leftDone[pending - 1] = true;
+                }
+            } else {
+                pendingOps[pending] = opcodeOf(tokens.firstChar(i));
+                leftDone[pending] = false;
+                pending++;
+            }
+        }
+        if (pending != 0)
+            throw new IllegalArgumentException("Insufficient operands.");
+        return builder.build();
+    }
+
+    // Shunting Yard straight into the program
+    public static CompiledExpression compileInfix(TokenStream tokens) {
+        Builder builder = new Builder(tokens.size());
+        char[] ops = new char[tokens.size()];
+        int top = 0;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            if (builder.operand(tokens, i))
+                continue;
+
+            char c = tokens.firstChar(i);
+            if (c == '(') {
+                ops[top++] = c;
+            } else if (c == ')') {
+                while (top > 0 && ops[top - 1] != '(') {
+                    builder.operator(opcodeOf(ops[--top]));
+                }
+                if (top == 0) throw new IllegalArgumentException("Mismatched parentheses.");
+                top--; // pop '('
+            } else {
+                byte opcode = opcodeOf(c);
+                while (top > 0 && precedence(opcode) <= precedence(ops[top - 1])) {
+                    builder.operator(opcodeOf(ops[--top]));
+                }
+                ops[top++] = c;
+            }
+        }
+
+        while (top > 0) {
+            char c = ops[--top];
+            if (c == '(') throw new IllegalArgumentException("Mismatched parentheses.");
+            builder.operator(opcodeOf(c));
+        }
+        return builder.build();
+    }
+
+    // Evaluate with a freshly allocated stack
+    public int evaluate(int[] bindings) {
+        return evaluate(bindings, newStack());
+    }
+
+    // Evaluate without allocating; stack must come from newStack() (or be at least as large)
+    public int evaluate(int[] bindings, int[] stack) {
+        Kernel compiled = kernel;
+        if (compiled != null)
+            return compiled.evaluate(bindings);
+        int threshold = ExpressionJit.threshold();
+        if (threshold >= 0 && !jitFailed && ++invocations >= threshold)
+            compileKernel();
+        return interpret(bindings, stack);
+    }
+
+    // Compile to bytecode now instead of waiting for the invocation threshold
+    public synchronized boolean compileKernel() {
+        if (kernel == null && !jitFailed) {
+            kernel = ExpressionJit.compile(this);
+            jitFailed = kernel == null;
+        }
+        return kernel != null;
+    }
+
+    public boolean isCompiled() {
+        return kernel != null;
+    }
+
+    private int interpret(int[] bindings, int[] stack) {
+        execute(0, ops.length, bindings, stack, 0);
+        return stack[0];
+    }
+
+    // Run instructions [from, to) on an operand stack currently holding sp values; returns the new sp
+    int execute(int from, int to, int[] bindings, int[] stack, int sp) {
+        for (int pc = from; pc < to; pc++) {
+            switch (ops[pc]) {
+                case LOAD -> stack[sp++] = bindings[args[pc]];
+                case CONST -> stack[sp++] = args[pc];
+                case ADD -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] + stack[sp];
+                }
+                case SUB -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] - stack[sp];
+                }
+                case MUL -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] * stack[sp];
+                }
+                case DIV -> {
+                    sp--;
+                    stack[sp - 1] = divide(stack[sp - 1], stack[sp]);
+                }
+                case AND -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] & stack[sp];
+                }
+                case OR -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] | stack[sp];
+                }
+                case XOR -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] ^ stack[sp];
+                }
+                case SHL -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] << stack[sp];
+                }
+                case SHR -> {
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] >> stack[sp];
+                }
+                case NOT -> stack[sp - 1] = ~stack[sp - 1];
+                case TEE -> stack[maxDepth + args[pc]] = stack[sp - 1];
+                case LOADT -> {
+                    stack[sp] = stack[maxDepth + args[pc]];
+                    sp++;
+                }
+                default -> throw new IllegalStateException("Unknown opcode: " + ops[pc]);
+            }
+        }
+        return sp;
+    }
+
+    // Operand stack followed by the temporaries shared subexpressions are kept in
+    public int[] newStack() {
+        return new int[maxDepth + temporaries];
+    }
+
+    // Turn a variable map into a bindings array ordered by slot
+    public int[] bind(Map<Character, ? extends Number> vars) {
+        int[] bindings = new int[variables.length];
+        for (int slot = 0; slot < variables.length; slot++) {
+            Number value = vars.get(variables[slot].charAt(0));
+            if (value == null)
+                throw new IllegalArgumentException("Undefined variable: '" + variables[slot] + "'");
+            bindings[slot] = value.intValue();
+        }
+        return bindings;
+    }
+
+    public int slotOf(String variable) {
+        for (int slot = 0; slot < variables.length; slot++) {
+            if (variables[slot].equals(variable))
+                return slot;
+        }
+        return -1;
+    }
+
+    public int variableCount() {
+        return variables.length;
+    }
+
+    public String variable(int slot) {
+        return variables[slot];
+    }
+
+    public int size() {
+        return ops.length;
+    }
+
+    public byte opcode(int pc) {
+        return ops[pc];
+    }
+
+    public int operand(int pc) {
+        return args[pc];
+    }
+
+    public int maxStackDepth() {
+        return maxDepth;
+    }
+
+    // Size of the subtree rooted at each instruction. In a postfix program the subtree of
+    // instruction i occupies [i - size[i] + 1, i]; its right operand ends at i - 1 and its
+    // left operand at i - 1 - size[i - 1]. Only defined for tree programs (no temporaries).
+    public int[] subtreeSizes() {
+        if (temporaries > 0)
+            throw new IllegalStateException("Program shares subexpressions and is not a tree.");
+        int[] size = new int[ops.length];
+        for (int pc = 0; pc < ops.length; pc++) {
+            size[pc] = switch (arity(ops[pc])) {
+                case 0 -> 1;
+                case 1 -> 1 + size[pc - 1];
+                default -> 1 + size[pc - 1] + size[pc - 1 - size[pc - 1]];
+            };
+        }
+        return size;
+    }
+
+    // Number of operands an opcode pops
+    public static int arity(byte opcode) {
+        return switch (opcode) {
+            case LOAD, CONST, LOADT -> 0;
+            case NOT, TEE -> 1;
+            default -> 2;
+        };
+    }
+
+    // Number of temporaries used by TEE/LOADT; zero for programs that are plain trees
+    public int temporaryCount() {
+        return temporaries;
+    }
+
+    // Result of a binary opcode, with the same semantics as the interpreter
+    static int apply(byte opcode, int a, int b) {
+        return switch (opcode) {
+            case ADD -> a + b;
+            case SUB -> a - b;
+            case MUL -> a * b;
+            case DIV -> divide(a, b);
+            case AND -> a & b;
+            case OR -> a | b;
+            case XOR -> a ^ b;
+            case SHL -> a << b;
+            case SHR -> a >> b;
+            default -> throw new IllegalStateException("Not a binary opcode: " + opcode);
+        };
+    }
+
+    static int divide(int a, int b) {
+        if (b == 0) throw new ArithmeticException("Division by zero");
+        return a / b;
+    }
+
+    static byte opcodeOf(char c) {
+        return switch (c) {
+            case '+' -> ADD;
+            case '-' -> SUB;
+            case '*' -> MUL;
+            case '/' -> DIV;
+            default -> throw new IllegalArgumentException("Unsupported operator: " + c);
+        };
+    }
+
+    private static int precedence(byte opcode) {
+        return switch (opcode) {
+            case ADD, SUB -> 1;
+            case MUL, DIV -> 2;
+            default -> -1;
+        };
+    }
+
+    private static int precedence(char op) {
+        return op == '(' ? -1 : precedence(opcodeOf(op));
+    }
+
+    // Accumulates instructions and tracks stack depth so malformed input is rejected at compile time
+    static final class Builder {
+        private byte[] ops;
+        private int[] args;
+        private int size;
+        private final List<String> variables = new ArrayList<>();
+        private final Map<String, Integer> slots = new HashMap<>();
+        private int depth;
+        private int maxDepth;
+        private int temporaries;
+
+        Builder(int capacity) {
+            ops = new byte[Math.max(capacity, 4)];
+            args = new int[ops.length];
+        }
+
+        // Builder for a rewritten program that keeps the slot layout of template
+        Builder(CompiledExpression template) {
+            this(template.size());
+            for (String name : template.variables) {
+                slots.put(name, variables.size());
+                variables.add(name);
+            }
+        }
+
+        // Emit a NAME or NUMBER token; returns false for operators and parentheses
+        boolean operand(TokenStream tokens, int i) {
+            switch (tokens.kind(i)) {
+                case TokenStream.NAME -> variable(tokens.text(i));
+                case TokenStream.NUMBER -> constant(tokens.value(i));
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void variable(String name) {
+            Integer slot = slots.get(name);
+            if (slot == null) {
+                slot = variables.size();
+                slots.put(name, slot);
+                variables.add(name);
+            }
+            emit(LOAD, slot, 1);
+        }
+
+        void constant(int value) {
+            emit(CONST, value, 1);
+        }
+
+        void load(int slot) {
+            emit(LOAD, slot, 1);
+        }
+
+        void tee(int temporary) {
+            temporaries = Math.max(temporaries, temporary + 1);
+            emit(TEE, temporary, 0);
+        }
+
+        void loadTemporary(int temporary) {
+            emit(LOADT, temporary, 1);
+        }
+
+        void operator(byte opcode) {
+            if (depth < 2) throw new IllegalArgumentException("Insufficient operands.");
+            emit(opcode, 0, -1);
+        }
+
+        void unary(byte opcode) {
+            if (depth < 1) throw new IllegalArgumentException("Insufficient operands.");
+            emit(opcode, 0, 0);
+        }
+
+        int depth() {
+            return depth;
+        }
+
+        private void emit(byte opcode, int arg, int stackEffect) {
+            if (size == ops.length) {
+                ops = Arrays.copyOf(ops, size * 2);
+                args = Arrays.copyOf(args, size * 2);
+            }
+            ops[size] = opcode;
+            args[size] = arg;
+            size++;
+            depth += stackEffect;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        CompiledExpression build() {
+            if (size == 0) throw new IllegalArgumentException("Expression is empty.");
+            if (depth != 1) throw new IllegalArgumentException("Invalid expression.");
+            return new CompiledExpression(Arrays.copyOf(ops, size), Arrays.copyOf(args, size),
+                    variables.toArray(new String[0]), maxDepth, temporaries);
+        }
+    }
+}
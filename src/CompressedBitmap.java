@@ -0,0 +1,708 @@
+import java.util.*;
+import java.util.function.IntConsumer;
+
+// An immutable set of unsigned 32-bit integers, compressed the way Roaring
+// bitmaps are.
+//
+// Values are split by their high 16 bits into chunks of 65536, and each
+// non-empty chunk keeps its low 16 bits in whichever container is smallest:
+//   array   sorted char[] of the values; at most 4096 of them, 2 bytes each
+//   bitmap  long[1024] with one bit per possible value, 8 KB
+//   run     char[] of [first, last] pairs, 4 bytes per run of consecutive values
+//
+// Set operations walk the two sorted key lists and combine matching containers
+// directly: sorted merges for two arrays or two run lists, bit tests to filter an
+// array, and a loop over 1024 words otherwise. A chunk that only one side has is
+// shared with the result as it is; containers are never modified, so sets can be
+// combined freely and from any thread.
+public final class CompressedBitmap {
+
+    private static final int ARRAY_MAX = 4096;  // values in the largest array container
+    private static final int CHUNK = 1 << 16;   // values per chunk
+    private static final int WORDS = 1024;      // longs in a bitmap container
+    private static final int BITMAP_BYTES = WORDS * Long.BYTES;
+
+    private static final byte AND = 0;
+    private static final byte OR = 1;
+    private static final byte XOR = 2;
+    private static final byte ANDNOT = 3;
+
+    private static final CompressedBitmap EMPTY = new CompressedBitmap(new char[0], new Container[0], 0);
+
+    private final char[] keys;             // high 16 bits of each chunk, ascending
+    private final Container[] containers;  // low 16 bits of the values in each chunk
+    private final int size;                // chunks in use
+
+    private CompressedBitmap(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    public static CompressedBitmap empty() {
+        return EMPTY;
+    }
+
+    // The given values, in any order and with repeats; negative ints stand for 2^31 and up
+    public static CompressedBitmap of(int... values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        // Signed order puts the values >= 2^31 first; rotate them to the end
+        int negatives = 0;
+        while (negatives < sorted.length && sorted[negatives] < 0) negatives++;
+        int[] ordered = new int[sorted.length];
+        System.arraycopy(sorted, negatives, ordered, 0, sorted.length - negatives);
+        System.arraycopy(sorted, 0, ordered, sorted.length - negatives, negatives);
+
+        int chunks = 0;
+        for (int i = 0; i < ordered.length; i++) {
+            if (i == 0 || ordered[i] >>> 16 != ordered[i - 1] >>> 16) chunks++;
+        }
+        char[] keys = new char[chunks];
+        Container[] containers = new Container[chunks];
+        char[] low = new char[Math.min(ordered.length, 1 << 16)];
+        int size = 0;
+        for (int i = 0; i < ordered.length; ) {
+            int high = ordered[i] >>> 16;
+            int n = 0;
+            for (; i < ordered.length && ordered[i] >>> 16 == high; i++) {
+                char value = (char) ordered[i];
+                if (n == 0 || low[n - 1] != value) low[n++] = value;
+            }
+            keys[size] = (char) high;
+            containers[size++] = sortedContainer(low, n);
+        }
+        return size == 0 ? EMPTY : new CompressedBitmap(keys, containers, size);
+    }
+
+    // Every value in [from, to); both bounds lie in 0..2^32
+    public static CompressedBitmap range(long from, long to) {
+        if (from < 0 || to > 1L << 32 || from > to)
+            throw new IllegalArgumentException("Invalid range: [" + from + ", " + to + ")");
+        if (from == to)
+            return EMPTY;
+        int first = (int) (from >>> 16);
+        int last = (int) ((to - 1) >>> 16);
+        char[] keys = new char[last - first + 1];
+        Container[] containers = new Container[keys.length];
+        for (int high = first; high <= last; high++) {
+            long base = (long) high << 16;
+            int start = (int) (Math.max(from, base) - base);
+            int end = (int) (Math.min(to, base + (1 << 16)) - base); // exclusive
+            keys[high - first] = (char) high;
+            containers[high - first] = new RunContainer(new char[] { (char) start, (char) (end - 1) }, end - start);
+        }
+        return new CompressedBitmap(keys, containers, keys.length);
+    }
+
+    // The set bits of a plain bitset: value v is bit (v & 63) of words[v >>> 6]
+    public static CompressedBitmap fromWords(long[] words) {
+        int chunks = (words.length + WORDS - 1) / WORDS;
+        char[] keys = new char[chunks];
+        Container[] containers = new Container[chunks];
+        int size = 0;
+        for (int high = 0; high < chunks; high++) {
+            int offset = high * WORDS;
+            long[] chunk = Arrays.copyOfRange(words, offset, offset + WORDS);
+            int cardinality = 0;
+            for (long word : chunk)
+                cardinality += Long.bitCount(word);
+            Container container = wordsContainer(chunk, cardinality);
+            if (container != null) {
+                keys[size] = (char) high;
+                containers[size++] = container;
+            }
+        }
+        return size == 0 ? EMPTY : new CompressedBitmap(keys, containers, size);
+    }
+
+    public CompressedBitmap and(CompressedBitmap other) {
+        return combine(AND, other);
+    }
+
+    public CompressedBitmap or(CompressedBitmap other) {
+        return combine(OR, other);
+    }
+
+    public CompressedBitmap xor(CompressedBitmap other) {
+        return combine(XOR, other);
+    }
+
+    // Values in this set but not in other
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        return combine(ANDNOT, other);
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long cardinality() {
+        long cardinality = 0;
+        for (int i = 0; i < size; i++)
+            cardinality += containers[i].cardinality;
+        return cardinality;
+    }
+
+    public boolean contains(int value) {
+        int i = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    // Values in unsigned ascending order
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++)
+            containers[i].forEach(keys[i] << 16, action);
+    }
+
+    // Values in unsigned ascending order
+    public int[] toArray() {
+        long cardinality = cardinality();
+        if (cardinality > Integer.MAX_VALUE - 8)
+            throw new IllegalStateException("Too many values for an array: " + cardinality);
+        int[] values = new int[(int) cardinality];
+        int[] n = new int[1];
+        forEach(value -> values[n[0]++] = value);
+        return values;
+    }
+
+    // Approximate heap footprint: the container payloads plus a fixed cost per chunk
+    public long sizeInBytes() {
+        long bytes = 16 + keys.length * (long) Character.BYTES + containers.length * 4L;
+        for (int i = 0; i < size; i++)
+            bytes += 32 + containers[i].bytes();
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CompressedBitmap other) || size != other.size) return false;
+        for (int i = 0; i < size; i++) {
+            if (keys[i] != other.keys[i] || containers[i].cardinality != other.containers[i].cardinality)
+                return false;
+            if (containers[i] != other.containers[i] && combine(XOR, containers[i], other.containers[i]) != null)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = 0; i < size; i++)
+            hash = 31 * (31 * hash + keys[i]) + containers[i].cardinality;
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        int[] counts = new int[3];
+        for (int i = 0; i < size; i++) {
+            Container container = containers[i];
+            counts[container instanceof ArrayContainer ? 0 : container instanceof BitmapContainer ? 1 : 2]++;
+        }
+        return "CompressedBitmap[cardinality=" + cardinality() + ", arrays=" + counts[0] + ", bitmaps=" + counts[1]
+                + ", runs=" + counts[2] + ", bytes=" + sizeInBytes() + "]";
+    }
+
+    private CompressedBitmap combine(byte op, CompressedBitmap other) {
+        int capacity = switch (op) {
+            case AND -> Math.min(size, other.size);
+            case ANDNOT -> size;
+            default -> size + other.size;
+        };
+        boolean keepLeft = op != AND;
+        boolean keepRight = op == OR || op == XOR;
+        char[] outKeys = new char[capacity];
+        Container[] out = new Container[capacity];
+        int n = 0;
+        int i = 0, j = 0;
+        while (i < size && j < other.size) {
+            char left = keys[i], right = other.keys[j];
+            if (left == right) {
+                Container container = combine(op, containers[i++], other.containers[j++]);
+                if (container != null) {
+                    outKeys[n] = left;
+                    out[n++] = container;
+                }
+            } else if (left < right) {
+                if (keepLeft) {
+                    outKeys[n] = left;
+                    out[n++] = containers[i];
+                }
+                i++;
+            } else {
+                if (keepRight) {
+                    outKeys[n] = right;
+                    out[n++] = other.containers[j];
+                }
+                j++;
+            }
+        }
+        for (; keepLeft && i < size; i++) {
+            outKeys[n] = keys[i];
+            out[n++] = containers[i];
+        }
+        for (; keepRight && j < other.size; j++) {
+            outKeys[n] = other.keys[j];
+            out[n++] = other.containers[j];
+        }
+        return n == 0 ? EMPTY : new CompressedBitmap(outKeys, out, n);
+    }
+
+    // Result of op on two containers of the same chunk, or null when it is empty
+    private static Container combine(byte op, Container a, Container b) {
+        if (a.cardinality == CHUNK || b.cardinality == CHUNK) {
+            // A full chunk, typically from a universe
+            Container full = a.cardinality == CHUNK ? a : b, other = full == a ? b : a;
+            switch (op) {
+                case AND -> { return other; }
+                case OR -> { return full; }
+                case ANDNOT -> {
+                    if (b.cardinality == CHUNK) return null;
+                }
+                default -> {
+                }
+            }
+        }
+        if (a instanceof ArrayContainer x && b instanceof ArrayContainer y
+                && (op == AND || op == ANDNOT || x.values.length + y.values.length <= ARRAY_MAX))
+            return mergeArrays(op, x.values, y.values);
+        if (a instanceof ArrayContainer x && (op == AND || op == ANDNOT))
+            return filter(x.values, b, op == AND);
+        if (b instanceof ArrayContainer y && op == AND)
+            return filter(y.values, a, true);
+        if (!(a instanceof BitmapContainer) && !(b instanceof BitmapContainer))
+            return mergeRuns(op, a.runs(), b.runs()); // runs with runs or arrays
+        // One side is a bitmap; start from it unless the order matters
+        if (a instanceof BitmapContainer || op == ANDNOT)
+            return combineWords(op, a, b);
+        return combineWords(op, b, a);
+    }
+
+    // Branch-free: every step writes the smaller head, keeps it only if op does, and
+    // advances whichever side (or both) held it, so random values cost no mispredictions
+    private static Container mergeArrays(byte op, char[] a, char[] b) {
+        char[] out = new char[op == AND ? Math.min(a.length, b.length) : op == ANDNOT ? a.length : a.length + b.length];
+        int n = 0;
+        int i = 0, j = 0;
+        switch (op) {
+            case AND -> {
+                while (i < a.length && j < b.length) {
+                    int x = a[i], y = b[j];
+                    out[n] = (char) x;
+                    n += x == y ? 1 : 0;
+                    i += x <= y ? 1 : 0;
+                    j += y <= x ? 1 : 0;
+                }
+            }
+            case OR -> {
+                while (i < a.length && j < b.length) {
+                    int x = a[i], y = b[j];
+                    out[n++] = (char) Math.min(x, y);
+                    i += x <= y ? 1 : 0;
+                    j += y <= x ? 1 : 0;
+                }
+            }
+            case XOR -> {
+                while (i < a.length && j < b.length) {
+                    int x = a[i], y = b[j];
+                    out[n] = (char) Math.min(x, y);
+                    n += x != y ? 1 : 0;
+                    i += x <= y ? 1 : 0;
+                    j += y <= x ? 1 : 0;
+                }
+            }
+            default -> {
+                while (i < a.length && j < b.length) {
+                    int x = a[i], y = b[j];
+                    out[n] = (char) x;
+                    n += x < y ? 1 : 0;
+                    i += x <= y ? 1 : 0;
+                    j += y <= x ? 1 : 0;
+                }
+            }
+        }
+        if (op != AND) {
+            System.arraycopy(a, i, out, n, a.length - i);
+            n += a.length - i;
+        }
+        if (op == OR || op == XOR) {
+            System.arraycopy(b, j, out, n, b.length - j);
+            n += b.length - j;
+        }
+        return n == 0 ? null : new ArrayContainer(n == out.length ? out : Arrays.copyOf(out, n));
+    }
+
+    // The values that other contains (keep) or does not contain (!keep)
+    private static Container filter(char[] values, Container other, boolean keep) {
+        char[] out = new char[values.length];
+        int n = 0;
+        for (char value : values) {
+            if (other.contains(value) == keep) out[n++] = value;
+        }
+        if (n == values.length) return new ArrayContainer(values);
+        return n == 0 ? null : new ArrayContainer(Arrays.copyOf(out, n));
+    }
+
+    // Sweeps the run boundaries of both sides in order, tracking whether each side
+    // is inside a run, and emits the runs where op of the two is true
+    private static Container mergeRuns(byte op, char[] a, char[] b) {
+        char[] out = new char[a.length + b.length + 2];
+        int n = 0;
+        int cardinality = 0;
+        boolean inA = false, inB = false, inside = false;
+        int start = 0;
+        int i = 0, j = 0; // even: start of run i / 2; odd: one past its last value
+        while (i < a.length || j < b.length) {
+            int nextA = i < a.length ? boundary(a, i) : Integer.MAX_VALUE;
+            int nextB = j < b.length ? boundary(b, j) : Integer.MAX_VALUE;
+            int position = Math.min(nextA, nextB);
+            // An array's runs can touch, so several boundaries may share a position
+            while (i < a.length && boundary(a, i) == position) inA = (i++ & 1) == 0;
+            while (j < b.length && boundary(b, j) == position) inB = (j++ & 1) == 0;
+            boolean now = switch (op) {
+                case AND -> inA && inB;
+                case OR -> inA || inB;
+                case XOR -> inA != inB;
+                default -> inA && !inB;
+            };
+            if (now == inside) continue;
+            if (now) {
+                start = position;
+            } else {
+                if (n == out.length) out = Arrays.copyOf(out, n * 2);
+                out[n++] = (char) start;
+                out[n++] = (char) (position - 1);
+                cardinality += position - start;
+            }
+            inside = now;
+        }
+        return runsContainer(out, n / 2, cardinality);
+    }
+
+    private static int boundary(char[] runs, int k) {
+        return (k & 1) == 0 ? runs[k] : runs[k] + 1;
+    }
+
+    // Copies a into words and applies b to them in place: word by word for a
+    // bitmap, value by value for an array, range by range for runs
+    private static Container combineWords(byte op, Container a, Container b) {
+        long[] words = a instanceof BitmapContainer bitmap ? bitmap.words.clone() : a.toWords();
+        if (b instanceof BitmapContainer bitmap) {
+            long[] other = bitmap.words;
+            switch (op) {
+                case AND -> {
+                    for (int i = 0; i < WORDS; i++) words[i] &= other[i];
+                }
+                case OR -> {
+                    for (int i = 0; i < WORDS; i++) words[i] |= other[i];
+                }
+                case XOR -> {
+                    for (int i = 0; i < WORDS; i++) words[i] ^= other[i];
+                }
+                default -> {
+                    for (int i = 0; i < WORDS; i++) words[i] &= ~other[i];
+                }
+            }
+        } else if (b instanceof ArrayContainer array) {
+            // AND with an array is a filter and never gets here
+            for (char value : array.values) {
+                long bit = 1L << value;
+                switch (op) {
+                    case OR -> words[value >>> 6] |= bit;
+                    case XOR -> words[value >>> 6] ^= bit;
+                    default -> words[value >>> 6] &= ~bit;
+                }
+            }
+        } else {
+            char[] runs = b.runs();
+            if (op == AND) {
+                // Clear the gaps between the runs
+                int from = 0;
+                for (int k = 0; k < runs.length; k += 2) {
+                    if (runs[k] > from) rangeOp(words, from, runs[k], ANDNOT);
+                    from = runs[k + 1] + 1;
+                }
+                if (from < CHUNK) rangeOp(words, from, CHUNK, ANDNOT);
+            } else {
+                for (int k = 0; k < runs.length; k += 2)
+                    rangeOp(words, runs[k], runs[k + 1] + 1, op);
+            }
+        }
+        int cardinality = 0;
+        for (long word : words)
+            cardinality += Long.bitCount(word);
+        return wordsContainer(words, cardinality);
+    }
+
+    // Smallest container for the first n values of low, which are ascending and distinct
+    private static Container sortedContainer(char[] low, int n) {
+        int runs = 1;
+        for (int i = 1; i < n; i++) {
+            if (low[i] != low[i - 1] + 1) runs++;
+        }
+        if (runs * 4 < Math.min(n * 2, BITMAP_BYTES)) {
+            char[] out = new char[runs * 2];
+            int k = 0;
+            out[k++] = low[0];
+            for (int i = 1; i < n; i++) {
+                if (low[i] != low[i - 1] + 1) {
+                    out[k++] = low[i - 1];
+                    out[k++] = low[i];
+                }
+            }
+            out[k] = low[n - 1];
+            return new RunContainer(out, n);
+        }
+        if (n <= ARRAY_MAX)
+            return new ArrayContainer(Arrays.copyOf(low, n));
+        long[] words = new long[WORDS];
+        for (int i = 0; i < n; i++)
+            words[low[i] >>> 6] |= 1L << low[i];
+        return new BitmapContainer(words, n);
+    }
+
+    // Smallest container for the bits of words, which it may keep; null when empty
+    private static Container wordsContainer(long[] words, int cardinality) {
+        if (cardinality == 0)
+            return null;
+        int runs = runCount(words);
+        if (runs * 4 < Math.min(cardinality * 2, BITMAP_BYTES))
+            return new RunContainer(runsOf(words, runs), cardinality);
+        if (cardinality <= ARRAY_MAX) {
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < WORDS; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1)
+                    values[n++] = (char) (i * 64 + Long.numberOfTrailingZeros(word));
+            }
+            return new ArrayContainer(values);
+        }
+        return new BitmapContainer(words, cardinality);
+    }
+
+    // Smallest container for n runs, given as [first, last] pairs; null when empty
+    private static Container runsContainer(char[] runs, int n, int cardinality) {
+        if (n == 0)
+            return null;
+        if (n * 4 < Math.min(cardinality * 2, BITMAP_BYTES))
+            return new RunContainer(runs.length == n * 2 ? runs : Arrays.copyOf(runs, n * 2), cardinality);
+        long[] words = new long[WORDS];
+        for (int k = 0; k < n * 2; k += 2)
+            rangeOp(words, runs[k], runs[k + 1] + 1, OR);
+        return wordsContainer(words, cardinality);
+    }
+
+    // Runs of consecutive set bits in words: each run starts at a bit whose lower neighbour is clear
+    private static int runCount(long[] words) {
+        int runs = 0;
+        long carry = 0; // top bit of the previous word, shifted into place
+        for (long word : words) {
+            runs += Long.bitCount(word & ~(word << 1 | carry));
+            carry = word >>> 63;
+        }
+        return runs;
+    }
+
+    private static char[] runsOf(long[] words, int runs) {
+        char[] out = new char[runs * 2];
+        int n = 0;
+        int i = 0;
+        long word = words[0];
+        while (true) {
+            while (word == 0) {
+                if (++i == WORDS) return out;
+                word = words[i];
+            }
+            int start = i * 64 + Long.numberOfTrailingZeros(word);
+            word |= word - 1; // fill in the zeros below the run
+            while (word == -1L) {
+                if (++i == WORDS) {
+                    out[n++] = (char) start;
+                    out[n] = (char) 0xFFFF;
+                    return out;
+                }
+                word = words[i];
+            }
+            int end = i * 64 + Long.numberOfTrailingZeros(~word);
+            word &= word + 1; // clear the run
+            out[n++] = (char) start;
+            out[n++] = (char) (end - 1);
+        }
+    }
+
+    // Sets (OR), flips (XOR) or clears (ANDNOT) the bits in [from, to)
+    private static void rangeOp(long[] words, int from, int to, byte op) {
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to;
+        if (first == last) {
+            apply(words, first, firstMask & lastMask, op);
+            return;
+        }
+        apply(words, first, firstMask, op);
+        for (int i = first + 1; i < last; i++)
+            apply(words, i, -1L, op);
+        apply(words, last, lastMask, op);
+    }
+
+    private static void apply(long[] words, int i, long mask, byte op) {
+        switch (op) {
+            case OR -> words[i] |= mask;
+            case XOR -> words[i] ^= mask;
+            default -> words[i] &= ~mask;
+        }
+    }
+
+    private abstract static class Container {
+        final int cardinality;
+
+        Container(int cardinality) {
+            this.cardinality = cardinality;
+        }
+
+        abstract boolean contains(char value);
+
+        // Sets this container's bits in words
+        abstract void orInto(long[] words);
+
+        // Payload size in bytes
+        abstract int bytes();
+
+        abstract void forEach(int high, IntConsumer action);
+
+        // [first, last] pairs; arrays make a run of each value
+        abstract char[] runs();
+
+        long[] toWords() {
+            long[] words = new long[WORDS];
+            orInto(words);
+            return words;
+        }
+    }
+
+    private static final class ArrayContainer extends Container {
+        final char[] values;
+
+        ArrayContainer(char[] values) {
+            super(values.length);
+            this.values = values;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, value) >= 0;
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (char value : values)
+                words[value >>> 6] |= 1L << value;
+        }
+
+        @Override
+        int bytes() {
+            return values.length * Character.BYTES;
+        }
+
+        @Override
+        char[] runs() {
+            char[] runs = new char[values.length * 2];
+            for (int i = 0; i < values.length; i++)
+                runs[2 * i] = runs[2 * i + 1] = values[i];
+            return runs;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (char value : values)
+                action.accept(high | value);
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+        final long[] words;
+
+        BitmapContainer(long[] words, int cardinality) {
+            super(cardinality);
+            this.words = words;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < WORDS; i++)
+                words[i] |= this.words[i];
+        }
+
+        @Override
+        int bytes() {
+            return BITMAP_BYTES;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < WORDS; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1)
+                    action.accept(high | i * 64 + Long.numberOfTrailingZeros(word));
+            }
+        }
+
+        @Override
+        char[] runs() {
+            return runsOf(words, runCount(words));
+        }
+    }
+
+    private static final class RunContainer extends Container {
+        final char[] runs; // [first, last] pairs, ascending, never adjacent
+
+        RunContainer(char[] runs, int cardinality) {
+            super(cardinality);
+            this.runs = runs;
+        }
+
+        @Override
+        boolean contains(char value) {
+            // Last run starting at or before value
+            int lo = 0, hi = runs.length / 2 - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (runs[mid * 2] <= value) lo = mid + 1;
+                else hi = mid - 1;
+            }
+            return hi >= 0 && value <= runs[hi * 2 + 1];
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int k = 0; k < runs.length; k += 2)
+                rangeOp(words, runs[k], runs[k + 1] + 1, OR);
+        }
+
+        @Override
+        int bytes() {
+            return runs.length * Character.BYTES;
+        }
+
+        @Override
+        char[] runs() {
+            return runs;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int k = 0; k < runs.length; k += 2) {
+                for (int value = runs[k]; value <= runs[k + 1]; value++)
+                    action.accept(high | value);
+            }
+        }
+    }
+}
@@ -1,130 +1,542 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.function.Function;
 
 public class Converter {
 
-    // Infix to Postfix conversion
+    // Longest expression the interactive menu accepts, in characters; 0 (the default) means no limit
+    private static final int MAX_LENGTH = Integer.getInteger("dsa.convert.maxLength", 0);
+    // Longest expression whose conversion is cached; results grow with the input, and the
+    // shared cache is bounded by entry count only, so longer ones are converted every time
+    private static final int CACHE_LENGTH = Integer.getInteger("dsa.convert.cacheLength", 4096);
+    // Characters read and written per chunk by the streaming conversions
+    private static final int CHUNK = 1 << 16;
+
+    // Notation names of the menu choices, as used by the cache and the history store
+    private static final String[] CONVERSIONS = { null, "infix>postfix", "postfix>infix", "infix>prefix",
+            "prefix>infix", "postfix>prefix", "prefix>postfix" };
+
+    // Public conversions are cached by (expression, "from>to") up to CACHE_LENGTH characters
     public static String infixToPostfix(String infix) {
-        Stack<Character> stack = new Stack<>();
-        StringBuilder postfix = new StringBuilder();
-
-        for (char c : infix.toCharArray()) {
-            if (Character.isLetterOrDigit(c)) {
-                postfix.append(c);
-            } else if (c == '(') {
-                stack.push(c);
+        return cached(infix, "infix>postfix", Converter::convertInfixToPostfix);
+    }
+
+    public static String postfixToInfix(String postfix) {
+        return cached(postfix, "postfix>infix", Converter::convertPostfixToInfix);
+    }
+
+    public static String infixToPrefix(String infix) {
+        return cached(infix, "infix>prefix", Converter::convertInfixToPrefix);
+    }
+
+    public static String prefixToInfix(String prefix) {
+        return cached(prefix, "prefix>infix", Converter::convertPrefixToInfix);
+    }
+
+    public static String postfixToPrefix(String postfix) {
+        return cached(postfix, "postfix>prefix", Converter::convertPostfixToPrefix);
+    }
+
+    public static String prefixToPostfix(String prefix) {
+        return cached(prefix, "prefix>postfix", Converter::convertPrefixToPostfix);
+    }
+
+    private static String cached(String expression, String conversion, Function<String, String> converter) {
+        if (expression.length() > CACHE_LENGTH)
+            return Telemetry.time(Telemetry.Operation.CONVERT, conversion, expression,
+                    () -> converter.apply(expression));
+        return ExpressionCache.shared().get(expression, conversion, converter);
+    }
+
+    // Conversion named "from>to", e.g. "infix>postfix"
+    public static String convert(String conversion, String expression) {
+        return switch (conversion) {
+            case "infix>postfix" -> infixToPostfix(expression);
+            case "infix>prefix" -> infixToPrefix(expression);
+            case "postfix>infix" -> postfixToInfix(expression);
+            case "postfix>prefix" -> postfixToPrefix(expression);
+            case "prefix>infix" -> prefixToInfix(expression);
+            case "prefix>postfix" -> prefixToPostfix(expression);
+            default -> throw new IllegalArgumentException("Unknown notation: " + conversion);
+        };
+    }
+
+    // Streaming conversion named "from>to" from in to out, for expressions too long to hold
+    // as Strings. infix>postfix, prefix>postfix and prefix>infix are written as the input is
+    // read, keeping only the pending operators (memory grows with nesting depth, not length).
+    // The other conversions have to see the end of the input before their first character,
+    // so they read it whole and convert it in memory. Output is the same as convert(...);
+    // on malformed input an IllegalArgumentException is thrown and out holds a partial result.
+    public static void convert(String conversion, Reader in, Writer out) throws IOException {
+        Output output = new Output() {
+            @Override
+            void write(char[] chars, int n) throws IOException {
+                out.write(chars, 0, n);
+            }
+        };
+        convert(conversion, in, output);
+        out.flush();
+    }
+
+    // Same as convert(conversion, in, Writer), writing ASCII bytes to a channel
+    public static void convert(String conversion, Reader in, WritableByteChannel out) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocateDirect(CHUNK);
+        convert(conversion, in, new Output() {
+            @Override
+            void write(char[] chars, int n) throws IOException {
+                for (int i = 0; i < n; i++)
+                    bytes.put((byte) chars[i]);
+                bytes.flip();
+                while (bytes.hasRemaining())
+                    out.write(bytes);
+                bytes.clear();
+            }
+        });
+    }
+
+    private static void convert(String conversion, Reader in, Output out) throws IOException {
+        Telemetry.Span span = Telemetry.start(Telemetry.Operation.CONVERT, "stream:" + conversion, null);
+        try {
+            switch (conversion) {
+                case "infix>postfix" -> new StreamingInfixToPostfix(out).run(in);
+                case "prefix>postfix" -> new StreamingPrefix(out, false).run(in);
+                case "prefix>infix" -> new StreamingPrefix(out, true).run(in);
+                case "infix>prefix", "postfix>infix", "postfix>prefix" -> {
+                    StringBuilder text = new StringBuilder();
+                    char[] chunk = new char[CHUNK];
+                    int n;
+                    while ((n = in.read(chunk)) >= 0)
+                        text.append(chunk, 0, n);
+                    // Not cached: an expression this long would only crowd out the small ones
+                    String expression = text.toString();
+                    String result = switch (conversion) {
+                        case "infix>prefix" -> convertInfixToPrefix(expression);
+                        case "postfix>infix" -> convertPostfixToInfix(expression);
+                        default -> convertPostfixToPrefix(expression);
+                    };
+                    for (int i = 0; i < result.length(); i++)
+                        out.put(result.charAt(i));
+                }
+                default -> throw new IllegalArgumentException("Unknown notation: " + conversion);
+            }
+            out.flush();
+            span.finish();
+        } catch (IOException | RuntimeException e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    // Buffered output of the streaming conversions
+    private abstract static class Output {
+        private final char[] buffer = new char[CHUNK];
+        private int n;
+
+        void put(char c) throws IOException {
+            if (n == buffer.length)
+                flush();
+            buffer[n++] = c;
+        }
+
+        void flush() throws IOException {
+            if (n > 0)
+                write(buffer, n);
+            n = 0;
+        }
+
+        abstract void write(char[] chars, int n) throws IOException;
+    }
+
+    // Reads the CONVERSION dialect a chunk at a time; every token is one character
+    private abstract static class StreamingConversion {
+        final Output out;
+        private long position;
+
+        StreamingConversion(Output out) {
+            this.out = out;
+        }
+
+        void run(Reader in) throws IOException {
+            char[] chunk = new char[CHUNK];
+            int n;
+            while ((n = in.read(chunk)) >= 0) {
+                for (int i = 0; i < n; i++) {
+                    char c = chunk[i];
+                    position++;
+                    if (Character.isWhitespace(c))
+                        continue;
+                    if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9')
+                        operand(c);
+                    else if (c == '(' || c == ')' || precedence(c) > 0)
+                        operator(c);
+                    else
+                        throw new IllegalArgumentException("Invalid character '" + c + "' at position " + position + ".");
+                }
+            }
+            finish();
+        }
+
+        abstract void operand(char c) throws IOException;
+
+        // An operator or parenthesis
+        abstract void operator(char c) throws IOException;
+
+        abstract void finish() throws IOException;
+    }
+
+    // Shunting Yard as in shuntingYard(tokens, false), writing each token as it is reordered
+    private static final class StreamingInfixToPostfix extends StreamingConversion {
+        private char[] stack = new char[64];
+        private int top;
+
+        StreamingInfixToPostfix(Output out) {
+            super(out);
+        }
+
+        @Override
+        void operand(char c) throws IOException {
+            out.put(c);
+        }
+
+        @Override
+        void operator(char c) throws IOException {
+            if (c == '(') {
+                push(c);
             } else if (c == ')') {
-                while (!stack.isEmpty() && stack.peek() != '(') {
-                    postfix.append(stack.pop());
+                while (top > 0 && stack[top - 1] != '(') {
+                    out.put(stack[--top]);
                 }
-                if (!stack.isEmpty() && stack.peek() == '(') {
-                    stack.pop();
+                if (top > 0) {
+                    top--;
                 }
             } else {
-                while (!stack.isEmpty() && precedence(c) <= precedence(stack.peek()) && stack.peek() != '(') {
-                    postfix.append(stack.pop());
+                while (top > 0 && precedence(c) <= precedence(stack[top - 1]) && stack[top - 1] != '(') {
+                    out.put(stack[--top]);
                 }
-                stack.push(c);
+                push(c);
             }
         }
 
-        while (!stack.isEmpty()) {
-            if (stack.peek() == '(') {
-                return "Invalid Expression";
+        @Override
+        void finish() throws IOException {
+            while (top > 0) {
+                if (stack[top - 1] == '(')
+                    throw new IllegalArgumentException("Mismatched parentheses in infix expression.");
+                out.put(stack[--top]);
             }
-            postfix.append(stack.pop());
         }
 
-        return postfix.toString();
+        private void push(char c) {
+            if (top == stack.length)
+                stack = Arrays.copyOf(stack, top * 2);
+            stack[top++] = c;
+        }
     }
 
-    // Postfix to Infix conversion
-    public static String postfixToInfix(String postfix) {
-        Stack<String> stack = new Stack<>();
+    // Prefix to postfix or fully parenthesized infix, read left to right: each operator waits
+    // on a stack until both its operands have been written
+    private static final class StreamingPrefix extends StreamingConversion {
+        private final boolean infix;
+        private char[] pending = new char[64];
+        private boolean[] leftDone = new boolean[64];
+        private int top;
+        private boolean complete;
+        private boolean empty = true;
+
+        StreamingPrefix(Output out, boolean infix) {
+            super(out);
+            this.infix = infix;
+        }
 
-        for (char c : postfix.toCharArray()) {
-            if (Character.isLetterOrDigit(c)) {
-                stack.push(String.valueOf(c));
+        @Override
+        void operand(char c) throws IOException {
+            start();
+            out.put(c);
+            while (top > 0 && leftDone[top - 1]) {
+                top--;
+                if (!infix)
+                    out.put(pending[top]);
+                else if (top > 0)
+                    out.put(')'); // no parentheses around the whole expression
+            }
+            if (top == 0) {
+                complete = true;
             } else {
-                if (stack.size() < 2) {
-                    return "Invalid Expression";
-                }
-                String op2 = stack.pop();
-                String op1 = stack.pop();
-                stack.push("(" + op1 + c + op2 + ")");
+                leftDone[top - 1] = true;
+                if (infix)
+                    out.put(pending[top - 1]);
+            }
+        }
+
+        @Override
+        void operator(char c) throws IOException {
+            if (c == '(' || c == ')')
+                throw new IllegalArgumentException("Parentheses are not allowed in a prefix expression.");
+            start();
+            if (infix && top > 0)
+                out.put('(');
+            if (top == pending.length) {
+                pending = Arrays.copyOf(pending, top * 2);
+                leftDone = Arrays.copyOf(leftDone, top * 2);
             }
+            pending[top] = c;
+            leftDone[top] = false;
+            top++;
         }
 
-        if (stack.size() != 1) {
-            return "Invalid Expression";
+        @Override
+        void finish() {
+            if (empty)
+                throw new IllegalArgumentException("Expression is empty.");
+            if (!complete)
+                throw new IllegalArgumentException("Invalid prefix expression: insufficient operands.");
         }
 
-        String result = stack.pop();
-        if (result.charAt(0) == '(' && result.charAt(result.length() - 1) == ')') {
-            result = result.substring(1, result.length() - 1);
+        private void start() {
+            if (complete)
+                throw new IllegalArgumentException("Invalid prefix expression: leftover operands or operators.");
+            empty = false;
         }
+    }
 
-        return result;
+    // Infix to Postfix conversion
+    private static String convertInfixToPostfix(String infix) {
+        return shuntingYard(Lexer.CONVERSION.tokenize(infix), false);
     }
 
-    // Infix to Prefix conversion
-    public static String infixToPrefix(String infix) {
-        StringBuilder reversedInfix = new StringBuilder(infix).reverse();
+    // Shunting Yard over the token stream. With reversed set the tokens are read back to front
+    // with the roles of '(' and ')' swapped, which is the first half of infix to prefix.
+    // Tokens are emitted as they are reordered, so this is already a single linear pass.
+    private static String shuntingYard(TokenStream tokens, boolean reversed) {
+        char[] stack = new char[tokens.size()];
+        int top = 0;
+        StringBuilder postfix = new StringBuilder(tokens.source().length());
+
+        for (int k = 0; k < tokens.size(); k++) {
+            int i = reversed ? tokens.size() - 1 - k : k;
+            byte kind = tokens.kind(i);
+            if (reversed && kind == TokenStream.LPAREN) kind = TokenStream.RPAREN;
+            else if (reversed && kind == TokenStream.RPAREN) kind = TokenStream.LPAREN;
+
+            if (tokens.isOperand(i)) {
+                postfix.append(tokens.source(), tokens.offset(i), tokens.offset(i) + tokens.length(i));
+            } else if (kind == TokenStream.LPAREN) {
+                stack[top++] = '(';
+            } else if (kind == TokenStream.RPAREN) {
+                while (top > 0 && stack[top - 1] != '(') {
+                    postfix.append(stack[--top]);
+                }
+                if (top > 0 && stack[top - 1] == '(') {
+                    top--;
+                }
+            } else {
+                char c = tokens.operator(i);
+                while (top > 0 && precedence(c) <= precedence(stack[top - 1]) && stack[top - 1] != '(') {
+                    postfix.append(stack[--top]);
+                }
+                stack[top++] = c;
+            }
+        }
 
-        for (int i = 0; i < reversedInfix.length(); i++) {
-            if (reversedInfix.charAt(i) == '(') {
-                reversedInfix.setCharAt(i, ')');
-            } else if (reversedInfix.charAt(i) == ')') {
-                reversedInfix.setCharAt(i, '(');
+        while (top > 0) {
+            if (stack[top - 1] == '(') {
+                return "Invalid Expression";
             }
+            postfix.append(stack[--top]);
         }
 
-        String postfix = infixToPostfix(reversedInfix.toString());
+        return postfix.toString();
+    }
+
+    // Postfix to Infix conversion
+    private static String convertPostfixToInfix(String postfix) {
+        Tree tree = Tree.fromPostfix(Lexer.CONVERSION.tokenize(postfix));
+        return tree == null ? "Invalid Expression" : tree.toInfix();
+    }
+
+    // Infix to Prefix conversion
+    private static String convertInfixToPrefix(String infix) {
+        String postfix = shuntingYard(Lexer.CONVERSION.tokenize(infix), true);
 
         return new StringBuilder(postfix).reverse().toString();
     }
 
     // Prefix to Infix conversion
-    public static String prefixToInfix(String prefix) {
-        Stack<String> stack = new Stack<>();
+    private static String convertPrefixToInfix(String prefix) {
+        Tree tree = Tree.fromPrefix(Lexer.CONVERSION.tokenize(prefix));
+        return tree == null ? "Invalid Expression" : tree.toInfix();
+    }
 
-        for (int i = prefix.length() - 1; i >= 0; i--) {
-            char c = prefix.charAt(i);
+    // Postfix to Prefix conversion
+    private static String convertPostfixToPrefix(String postfix) {
+        TokenStream tokens = Lexer.CONVERSION.tokenize(postfix);
+        Tree tree = Tree.fromPostfix(tokens);
+        if (tree == null || hasParentheses(tokens)) {
+            // Same result as going through the infix form, including for invalid input
+            return convertInfixToPrefix(convertPostfixToInfix(postfix));
+        }
+        return tree.toPrefix();
+    }
 
-            if (Character.isLetterOrDigit(c)) {
-                stack.push(String.valueOf(c));
-            } else {
-                if (stack.size() < 2) {
-                    return "Invalid Expression";
+    // Prefix to Postfix conversion
+    private static String convertPrefixToPostfix(String prefix) {
+        TokenStream tokens = Lexer.CONVERSION.tokenize(prefix);
+        Tree tree = Tree.fromPrefix(tokens);
+        if (tree == null || hasParentheses(tokens)) {
+            return convertInfixToPostfix(convertPrefixToInfix(prefix));
+        }
+        return tree.toPostfix();
+    }
+
+    private static boolean hasParentheses(TokenStream tokens) {
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.kind(i) == TokenStream.LPAREN || tokens.kind(i) == TokenStream.RPAREN) return true;
+        }
+        return false;
+    }
+
+    // Expression tree over the token stream: node i is token i, and operators record the
+    // token indices of their children. It is parsed once and each notation is emitted with
+    // one iterative walk into a StringBuilder sized for the exact output, so deep
+    // expressions cost linear time and no intermediate strings.
+    private static final class Tree {
+        private static final int CLOSE = -1; // walk action: emit ')'
+
+        private final TokenStream tokens;
+        private final int[] left;
+        private final int[] right;
+        private final int root;
+
+        private Tree(TokenStream tokens, int[] left, int[] right, int root) {
+            this.tokens = tokens;
+            this.left = left;
+            this.right = right;
+            this.root = root;
+        }
+
+        // Every non-operand token is a binary operator; returns null if operands do not match up
+        static Tree fromPostfix(TokenStream tokens) {
+            return parse(tokens, false);
+        }
+
+        static Tree fromPrefix(TokenStream tokens) {
+            return parse(tokens, true);
+        }
+
+        private static Tree parse(TokenStream tokens, boolean prefix) {
+            int n = tokens.size();
+            int[] left = new int[n];
+            int[] right = new int[n];
+            int[] stack = new int[n];
+            int top = 0;
+            for (int k = 0; k < n; k++) {
+                int i = prefix ? n - 1 - k : k;
+                if (!tokens.isOperand(i)) {
+                    if (top < 2) return null;
+                    if (prefix) {
+                        left[i] = stack[--top];
+                        right[i] = stack[--top];
+                    } else {
+                        right[i] = stack[--top];
+                        left[i] = stack[--top];
+                    }
                 }
-                String op1 = stack.pop();
-                String op2 = stack.pop();
-                stack.push("(" + op1 + c + op2 + ")");
+                stack[top++] = i;
             }
+            return top == 1 ? new Tree(tokens, left, right, stack[0]) : null;
         }
 
-        if (stack.size() != 1) {
-            return "Invalid Expression";
+        private boolean isLeaf(int node) {
+            return tokens.isOperand(node);
         }
 
-        String result = stack.pop();
-        if (result.charAt(0) == '(' && result.charAt(result.length() - 1) == ')') {
-            result = result.substring(1, result.length() - 1);
+        private int textLength() {
+            int length = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                length += tokens.isOperand(i) ? tokens.length(i) : 1;
+            }
+            return length;
         }
 
-        return result;
-    }
+        private void appendToken(StringBuilder out, int node) {
+            if (isLeaf(node)) out.append(tokens.source(), tokens.offset(node), tokens.offset(node) + tokens.length(node));
+            else out.append(tokens.firstChar(node));
+        }
 
-    // Postfix to Prefix conversion
-    public static String postfixToPrefix(String postfix) {
-        String infix = postfixToInfix(postfix);
-        return infixToPrefix(infix);
-    }
+        // Fully parenthesized, without parentheses around the whole expression
+        String toInfix() {
+            int operators = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                if (!isLeaf(i)) operators++;
+            }
+            StringBuilder out = new StringBuilder(textLength() + 2 * Math.max(operators - 1, 0));
+
+            // Actions: node >= 0 visits a node, CLOSE emits ')', -2 - node emits the operator of node
+            int[] stack = new int[3 * tokens.size() + 1];
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                int action = stack[--top];
+                if (action == CLOSE) {
+                    out.append(')');
+                } else if (action < CLOSE) {
+                    out.append(tokens.firstChar(-2 - action));
+                } else if (isLeaf(action)) {
+                    appendToken(out, action);
+                } else {
+                    if (action != root) {
+                        out.append('(');
+                        stack[top++] = CLOSE;
+                    }
+                    stack[top++] = right[action];
+                    stack[top++] = -2 - action;
+                    stack[top++] = left[action];
+                }
+            }
+            return out.toString();
+        }
 
-    // Prefix to Postfix conversion
-    public static String prefixToPostfix(String prefix) {
-        String infix = prefixToInfix(prefix);
-        return infixToPostfix(infix);
+        String toPrefix() {
+            StringBuilder out = new StringBuilder(textLength());
+            int[] stack = new int[tokens.size()];
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                int node = stack[--top];
+                appendToken(out, node);
+                if (!isLeaf(node)) {
+                    stack[top++] = right[node];
+                    stack[top++] = left[node];
+                }
+            }
+            return out.toString();
+        }
+
+        // Post-order with an explicit stack; a node is emitted once its right subtree is done
+        String toPostfix() {
+            StringBuilder out = new StringBuilder(textLength());
+            int[] stack = new int[tokens.size()];
+            int top = 0;
+            int node = root;
+            int last = -1;
+            while (top > 0 || node >= 0) {
+                if (node >= 0) {
+                    stack[top++] = node;
+                    node = isLeaf(node) ? -1 : left[node];
+                } else {
+                    int peek = stack[top - 1];
+                    if (!isLeaf(peek) && last != right[peek]) {
+                        node = right[peek];
+                    } else {
+                        appendToken(out, peek);
+                        last = stack[--top];
+                    }
+                }
+            }
+            return out.toString();
+        }
     }
 
     // Helper method to determine operator precedence
@@ -143,44 +555,25 @@ public class Converter {
         }
     }
 
-    private static void writeSession(String session) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("output.txt", true))) {
-            writer.write(session);
-        } catch (IOException e) {
-            System.out.println("Error writing session to output.txt");
-            e.printStackTrace();
-        }
-    }
-
-    // Method to write conversion result to output.txt
+    // Session logs go through the shared journal; writing only queues the text
     private static void writeOutput(String output) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("output.txt", true))) {
-            writer.write(output);
-        } catch (IOException e) {
-            System.out.println("Error writing to output.txt");
-            e.printStackTrace();
-        }
+        SessionJournal.shared().append("output.txt", output);
     }
 
     private static void writeInput(String sessionInput) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("input.txt", true))) {
-            writer.write(sessionInput);
-        } catch (IOException e) {
-            System.out.println("Error writing to input.txt");
-            e.printStackTrace();
-        }
+        SessionJournal.shared().append("input.txt", sessionInput);
     }
 
-    private static boolean areParenthesesBalanced(String expr) {
-        Stack<Character> stack = new Stack<>();
-        for (char c : expr.toCharArray()) {
-            if (c == '(') stack.push(c);
-            else if (c == ')') {
-                if (stack.isEmpty()) return false;
-                stack.pop();
+    private static boolean areParenthesesBalanced(TokenStream tokens) {
+        int depth = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.kind(i) == TokenStream.LPAREN) depth++;
+            else if (tokens.kind(i) == TokenStream.RPAREN) {
+                if (depth == 0) return false;
+                depth--;
             }
         }
-        return stack.isEmpty();
+        return depth == 0;
     }
     
 
@@ -214,35 +607,34 @@ public class Converter {
             String error = "ERROR: Empty input expression at " + timeStamp + "\n---------------------------\n";
             writeInput(error);
             writeOutput(error);
-            writeSession(error);
             System.out.println("Error: Input expression is empty.");
             return;
         }
     
-        if (expr.length() > 1000) {
-            String error = "ERROR: Expression exceeds 1000 characters at " + timeStamp + "\n---------------------------\n";
+        if (MAX_LENGTH > 0 && expr.length() > MAX_LENGTH) {
+            String error = "ERROR: Expression exceeds " + MAX_LENGTH + " characters at " + timeStamp + "\n---------------------------\n";
             writeInput(error);
             writeOutput(error);
-            writeSession(error);
-            System.out.println("Error: Expression too long. Max allowed is 1000 characters.");
+            System.out.println("Error: Expression too long. Max allowed is " + MAX_LENGTH + " characters.");
             return;
         }
     
-        if (!expr.matches("[a-zA-Z0-9+\\-*/^() ]+")) {
+        TokenStream tokens;
+        try {
+            tokens = Lexer.CONVERSION.tokenize(expr);
+        } catch (IllegalArgumentException e) {
             String error = "ERROR: Invalid characters in expression at " + timeStamp + "\n---------------------------\n";
             writeInput(error);
             writeOutput(error);
-            writeSession(error);
-            System.out.println("Error: Expression contains invalid characters.");
+            System.out.println("Error: Expression contains invalid characters. " + e.getMessage());
             return;
         }
     
         // Additional validation for infix expressions (used in 1, 3)
-        if ((choice == 1 || choice == 3) && !areParenthesesBalanced(expr)) {
+        if ((choice == 1 || choice == 3) && !areParenthesesBalanced(tokens)) {
             String error = "ERROR: Unbalanced parentheses in infix expression at " + timeStamp + "\n---------------------------\n";
             writeInput(error);
             writeOutput(error);
-            writeSession(error);
             System.out.println("Error: Parentheses are not balanced.");
             return;
         }
@@ -281,11 +673,13 @@ public class Converter {
             String error = "ERROR during conversion: " + e.getMessage() + " at " + timeStamp + "\n---------------------------\n";
             writeInput(error);
             writeOutput(error);
-            writeSession(error);
+            HistoryStore.record("converter", CONVERSIONS[choice], expr, "", "Error: " + e.getMessage());
             System.out.println("Error: Exception occurred - " + e.getMessage());
             return;
         }
 
+        HistoryStore.record("converter", CONVERSIONS[choice], expr, "", result);
+
         StringBuilder sessionLog = new StringBuilder();
         sessionLog.append("--- Session Start: ").append(timeStamp).append(" ---\n");
         sessionLog.append("Expression Type: ").append(exprType).append("\n");
@@ -296,12 +690,24 @@ public class Converter {
 
         // Write input
         writeInput(sessionLog.toString());
-        writeSession(sessionLog.toString());
+        writeOutput(sessionLog.toString());
 
         System.out.println(sessionLog);
     }
 
-    public static void main(String[] args) {
-        handle();
+    // With arguments, stream one conversion: java Main --convert <from>to> [input [output]]
+    // (standard input and output by default)
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            handle();
+            return;
+        }
+        try (Reader in = args.length > 1 ? new FileReader(args[1]) : new InputStreamReader(System.in);
+                Writer out = args.length > 2 ? new FileWriter(args[2])
+                        : new OutputStreamWriter(new FileOutputStream(FileDescriptor.out))) {
+            convert(args[0], in, out);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
     }
 }
@@ -0,0 +1,133 @@
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Bounded, thread-safe LRU cache of parsed/compiled forms keyed by (expression, notation).
+// The notation doubles as a namespace, so each module uses its own notation names
+// (e.g. "infix", "bitwise", "infix>postfix", "tree:prefix") and always stores the same
+// value type under them. Entries are spread over independently locked segments, each
+// kept in access order and trimmed to its share of the capacity.
+public final class ExpressionCache {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final ExpressionCache SHARED =
+            new ExpressionCache(Integer.getInteger("dsa.cache.size", DEFAULT_CAPACITY));
+
+    private final int capacity;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ExpressionCache(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Cache capacity must be positive.");
+        this.capacity = capacity;
+        int count = capacity >= 256 ? 16 : 1;
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(Math.max(1, capacity / count));
+        }
+    }
+
+    // The cache used by the evaluators, converters and tree builders
+    public static ExpressionCache shared() {
+        return SHARED;
+    }
+
+    // Return the cached value or compute it with loader. The loader runs outside the lock,
+    // so two threads missing on the same key may both compute it; the last one wins.
+    // Exceptions from the loader propagate and nothing is cached. Loads are timed as
+    // conversions for "from>to" notations and as parses otherwise (see Telemetry).
+    @SuppressWarnings("unchecked")
+    public <V> V get(String expression, String notation, Function<String, ? extends V> loader) {
+        Key key = new Key(expression, notation);
+        Segment segment = segmentFor(key);
+
+        Object value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value != null) {
+            hits.increment();
+            return (V) value;
+        }
+
+        misses.increment();
+        Telemetry.Operation operation = notation.indexOf('>') >= 0 ? Telemetry.Operation.CONVERT
+                : Telemetry.Operation.PARSE;
+        V computed = Telemetry.time(operation, notation, expression, () -> loader.apply(expression));
+        synchronized (segment) {
+            segment.put(key, computed);
+        }
+        return computed;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ExpressionCache[size=" + size() + "/" + capacity + ", hits=" + hits() + ", misses=" + misses()
+                + ", evictions=" + evictions() + "]";
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+    private record Key(String expression, String notation) {
+    }
+
+    private final class Segment extends LinkedHashMap<Key, Object> {
+        private static final long serialVersionUID = 1L;
+        private final int limit;
+
+        Segment(int limit) {
+            super(16, 0.75f, true);
+            this.limit = limit;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+            if (size() > limit) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -1,8 +1,13 @@
-import java.io.*;
 import java.util.*;
 
 public class ExpressionEvaluator {
 
+    // Cache notation names, indexed by choice
+    private static final String[] NOTATIONS = { null, "infix", "prefix", "postfix" };
+
+    // Interactive arithmetic: int (wraps like Java ints) or exact (-Ddsa.arithmetic=exact)
+    private static final boolean EXACT = System.getProperty("dsa.arithmetic", "int").equalsIgnoreCase("exact");
+
     public static void handle() {
         Scanner scanner = new Scanner(System.in);
 
@@ -20,14 +25,14 @@ public class ExpressionEvaluator {
             }
         }
 
-        Map<Character, Integer> vars = new HashMap<>();
+        Map<Character, Long> vars = new HashMap<>();
         StringBuilder inputLog = new StringBuilder();
         inputLog.append("--- Session: ").append(new Date()).append(" ---\n");
         inputLog.append("Expression: ").append(expression).append("\n");
 
         for (char var : variablesInExpr) {
             System.out.print("Enter value for " + var + ": ");
-            int value = scanner.nextInt();
+            long value = EXACT ? scanner.nextLong() : scanner.nextInt();
             vars.put(var, value);
             inputLog.append(var).append(" = ").append(value).append("\n");
         }
@@ -35,24 +40,18 @@ public class ExpressionEvaluator {
         inputLog.append("------------------------------\n\n");
 
         // Write to input.txt
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter("input.txt", true))) {
-            bw.write(inputLog.toString());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        SessionJournal.shared().append("input.txt", inputLog.toString());
 
-        int result = 0;
+        Number result = 0;
         boolean errorOccurred = false;
         String errorMessage = "";
 
         try {
-            validateExpression(expression, choice);
-
-            switch (choice) {
-                case 1 -> result = evaluateInfix(expression, vars);
-                case 2 -> result = evaluatePrefix(expression, vars);
-                case 3 -> result = evaluatePostfix(expression, vars);
-                default -> throw new IllegalArgumentException("Invalid choice");
+            if (EXACT) {
+                result = evaluateExact(expression, choice, vars);
+            } else {
+                CompiledExpression program = compile(expression, choice);
+                result = program.evaluate(program.bind(vars));
             }
 
             System.out.println("Result: " + result);
@@ -63,33 +62,37 @@ public class ExpressionEvaluator {
             System.out.println("Error: " + errorMessage);
         }
 
+        String notation = choice >= 1 && choice <= 3 ? NOTATIONS[choice] : String.valueOf(choice);
+        HistoryStore.record("evaluator", EXACT ? "exact:" + notation : notation,
+                expression, HistoryStore.bindings(vars), errorOccurred ? "Error: " + errorMessage : String.valueOf(result));
+
         // Write to output.txt
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter("output.txt", true))) {
-            StringBuilder outputLog = new StringBuilder();
-            outputLog.append("--- Session: ").append(new Date()).append(" ---\n");
-            if (errorOccurred) {
-                outputLog.append("Error: ").append(errorMessage).append("\n");
-            } else {
-                outputLog.append("Result: ").append(result).append("\n");
-            }
-            outputLog.append("------------------------------\n\n");
-            bw.write(outputLog.toString());
-        } catch (IOException e) {
-            e.printStackTrace();
+        StringBuilder outputLog = new StringBuilder();
+        outputLog.append("--- Session: ").append(new Date()).append(" ---\n");
+        if (errorOccurred) {
+            outputLog.append("Error: ").append(errorMessage).append("\n");
+        } else {
+            outputLog.append("Result: ").append(result).append("\n");
         }
+        outputLog.append("------------------------------\n\n");
+        SessionJournal.shared().append("output.txt", outputLog.toString());
     }
 
     // Error detection
     public static void validateExpression(String expr, int choice) {
-        if (!expr.matches("[a-zA-Z0-9+\\-*/() ]+")) {
-            throw new IllegalArgumentException("Invalid characters in expression.");
+        validateTokens(Lexer.ARITHMETIC.tokenize(expr), choice);
+    }
+
+    private static void validateTokens(TokenStream tokens, int choice) {
+        if (tokens.size() == 0) {
+            throw new IllegalArgumentException("Expression is empty.");
         }
 
         if (choice == 1) {
             int balance = 0;
-            for (char c : expr.toCharArray()) {
-                if (c == '(') balance++;
-                else if (c == ')') balance--;
+            for (int i = 0; i < tokens.size(); i++) {
+                if (tokens.kind(i) == TokenStream.LPAREN) balance++;
+                else if (tokens.kind(i) == TokenStream.RPAREN) balance--;
                 if (balance < 0) throw new IllegalArgumentException("Mismatched parentheses.");
             }
             if (balance != 0) throw new IllegalArgumentException("Mismatched parentheses.");
@@ -97,104 +100,108 @@ public class ExpressionEvaluator {
 
         if (choice == 2 || choice == 3) {
             int countVars = 0, countOps = 0;
-            for (char c : expr.toCharArray()) {
-                if (Character.isLetter(c)) countVars++;
-                else if ("+-*/".indexOf(c) != -1) countOps++;
+            for (int i = 0; i < tokens.size(); i++) {
+                if (tokens.isOperand(i)) countVars++;
+                else if (tokens.kind(i) == TokenStream.OPERATOR) countOps++;
             }
-            if ((choice == 2 && countVars - 1 != countOps) || (choice == 3 && countVars - 1 != countOps)) {
+            if (countVars - 1 != countOps) {
                 throw new IllegalArgumentException("Invalid number of operands/operators.");
             }
         }
     }
 
-    public static int evaluatePostfix(String expr, Map<Character, Integer> vars) {
-        Stack<Integer> stack = new Stack<>();
-        for (char c : expr.toCharArray()) {
-            if (Character.isLetter(c)) {
-                stack.push(vars.get(c));
-            } else {
-                if (stack.size() < 2) throw new IllegalArgumentException("Insufficient operands.");
-                int b = stack.pop();
-                int a = stack.pop();
-                stack.push(applyOp(c, a, b));
-            }
-        }
-        return stack.pop();
+    // Validate and compile once (cached); the returned program can be re-evaluated against any bindings.
+    // The expression is lexed once and the same token stream is validated and compiled.
+    public static CompiledExpression compile(String expr, int choice) {
+        if (choice < 1 || choice > 3) throw new IllegalArgumentException("Invalid choice");
+        return ExpressionCache.shared().get(expr, NOTATIONS[choice], e -> {
+            TokenStream tokens = Lexer.ARITHMETIC.tokenize(e);
+            validateTokens(tokens, choice);
+            return ExpressionOptimizer.optimize(CompiledExpression.compile(tokens, choice));
+        });
     }
 
-    public static int evaluatePrefix(String expr, Map<Character, Integer> vars) {
-        Stack<Integer> stack = new Stack<>();
-        for (int i = expr.length() - 1; i >= 0; i--) {
-            char c = expr.charAt(i);
-            if (Character.isLetter(c)) {
-                stack.push(vars.get(c));
-            } else {
-                if (stack.size() < 2) throw new IllegalArgumentException("Insufficient operands.");
-                int a = stack.pop();
-                int b = stack.pop();
-                stack.push(applyOp(c, a, b));
-            }
+    // Compile for exact arithmetic (cached). The program is not optimized, because the
+    // optimizer folds constants in int arithmetic.
+    public static AdaptiveEvaluator compileExact(String expr, int choice) {
+        if (choice < 1 || choice > 3) throw new IllegalArgumentException("Invalid choice");
+        return ExpressionCache.shared().get(expr, "exact:" + NOTATIONS[choice], e -> {
+            TokenStream tokens = Lexer.ARITHMETIC.tokenize(e);
+            validateTokens(tokens, choice);
+            return new AdaptiveEvaluator(CompiledExpression.compile(tokens, choice));
+        });
+    }
+
+    // Evaluate against a variable map (compiled once and cached); choice 1 = infix, 2 = prefix, 3 = postfix
+    public static int evaluate(String expr, int choice, Map<Character, Integer> vars) {
+        Telemetry.Span span = Telemetry.start(Telemetry.Operation.EVALUATE, notation(choice), expr);
+        try {
+            CompiledExpression program = compile(expr, choice);
+            int result = program.evaluate(program.bind(vars));
+            span.finish();
+            return result;
+        } catch (RuntimeException e) {
+            span.fail(e);
+            throw e;
         }
-        return stack.pop();
     }
 
-    public static int evaluateInfix(String expr, Map<Character, Integer> vars) {
-        Stack<Integer> values = new Stack<>();
-        Stack<Character> ops = new Stack<>();
+    // Exact value (Long, or BigInteger when it does not fit) instead of a wrapped int
+    public static Number evaluateExact(String expr, int choice, Map<Character, ? extends Number> vars) {
+        return Telemetry.time(Telemetry.Operation.EVALUATE, "exact:" + notation(choice), expr, () -> {
+            AdaptiveEvaluator evaluator = compileExact(expr, choice);
+            return evaluator.evaluate(evaluator.bind(vars));
+        });
+    }
 
-        for (char c : expr.toCharArray()) {
-            if (Character.isWhitespace(c))
-                continue;
+    // Evaluate one expression across column arrays (one int[] per variable slot of the
+    // compiled program). Rows that divide by zero are flagged in errors; returns how many failed.
+    public static int evaluateColumns(String expr, int choice, int[][] columns, int[] result, long[] errors) {
+        return Telemetry.time(Telemetry.Operation.EVALUATE, "columns:" + notation(choice), expr,
+                () -> ColumnEvaluator.evaluate(compile(expr, choice), columns, result, errors));
+    }
 
-            if (Character.isLetter(c)) {
-                values.push(vars.get(c));
-            } else if (c == '(') {
-                ops.push(c);
-            } else if (c == ')') {
-                while (!ops.isEmpty() && ops.peek() != '(') {
-                    int b = values.pop();
-                    int a = values.pop();
-                    values.push(applyOp(ops.pop(), a, b));
-                }
-                if (ops.isEmpty()) throw new IllegalArgumentException("Mismatched parentheses.");
-                ops.pop(); // pop '('
-            } else {
-                while (!ops.isEmpty() && precedence(c) <= precedence(ops.peek())) {
-                    int b = values.pop();
-                    int a = values.pop();
-                    values.push(applyOp(ops.pop(), a, b));
-                }
-                ops.push(c);
-            }
-        }
+    // Evaluate a very large expression with fork/join. The tree is compiled without the
+    // optimizer so every instruction is a node whose subtree can be handed to another worker.
+    public static int evaluateParallel(String expr, int choice, Map<Character, Integer> vars) {
+        return Telemetry.time(Telemetry.Operation.EVALUATE, "parallel:" + notation(choice), expr, () -> {
+            CompiledExpression tree = compileTree(expr, choice);
+            return new ParallelTreeEvaluator(tree).evaluate(tree.bind(vars));
+        });
+    }
 
-        while (!ops.isEmpty()) {
-            int b = values.pop();
-            int a = values.pop();
-            values.push(applyOp(ops.pop(), a, b));
-        }
+    // Evaluate once and keep every subtree's value, so that changing one variable with
+    // IncrementalEvaluator.set only recomputes the paths from its occurrences to the root
+    public static IncrementalEvaluator evaluateIncremental(String expr, int choice, Map<Character, Integer> vars) {
+        return Telemetry.time(Telemetry.Operation.EVALUATE, "incremental:" + notation(choice), expr, () -> {
+            CompiledExpression tree = compileTree(expr, choice);
+            return new IncrementalEvaluator(tree, tree.bind(vars));
+        });
+    }
 
-        return values.pop();
+    public static int evaluatePostfix(String expr, Map<Character, Integer> vars) {
+        return evaluate(expr, 3, vars);
     }
 
-    private static int precedence(char op) {
-        return switch (op) {
-            case '+', '-' -> 1;
-            case '*', '/' -> 2;
-            default -> -1;
-        };
+    public static int evaluatePrefix(String expr, Map<Character, Integer> vars) {
+        return evaluate(expr, 2, vars);
     }
 
-    private static int applyOp(char op, int a, int b) {
-        return switch (op) {
-            case '+' -> a + b;
-            case '-' -> a - b;
-            case '*' -> a * b;
-            case '/' -> {
-                if (b == 0) throw new ArithmeticException("Division by zero");
-                yield a / b;
-            }
-            default -> throw new IllegalArgumentException("Unsupported operator: " + op);
-        };
+    public static int evaluateInfix(String expr, Map<Character, Integer> vars) {
+        return evaluate(expr, 1, vars);
+    }
+
+    // Unoptimized (uncached) program, in which every instruction is a node of the tree
+    private static CompiledExpression compileTree(String expr, int choice) {
+        return Telemetry.time(Telemetry.Operation.PARSE, notation(choice), expr, () -> {
+            TokenStream tokens = Lexer.ARITHMETIC.tokenize(expr);
+            validateTokens(tokens, choice);
+            return CompiledExpression.compile(tokens, choice);
+        });
+    }
+
+    private static String notation(int choice) {
+        if (choice < 1 || choice > 3) throw new IllegalArgumentException("Invalid choice");
+        return NOTATIONS[choice];
     }
 }
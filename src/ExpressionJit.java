@@ -0,0 +1,238 @@
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.util.*;
+
+// Second tier for CompiledExpression: once a program has been interpreted
+// often enough it is translated into a class whose evaluate method is the
+// straight-line JVM bytecode for the expression (iload/iaload/iadd/imul/iand/
+// ishl/...), so the JIT sees plain arithmetic instead of an opcode switch.
+//
+// Each class is defined as a hidden class. Hidden classes are not registered
+// with their class loader, so once the program (and its cache entry) is gone
+// the class can be unloaded and its metaspace reclaimed.
+public final class ExpressionJit {
+
+    // Interpreted runs before a program is compiled; a negative value disables compilation
+    private static volatile int threshold = Integer.getInteger("dsa.jit.threshold", 10_000);
+
+    // Largest program we try to translate; keeps the method well under the 64KB code limit
+    private static final int MAX_INSTRUCTIONS = 8_000;
+
+    // Whether a compilation failure has been reported on stderr
+    private static boolean reported;
+
+    private static final String CLASS_NAME = "CompiledExpressionKernel";
+    private static final String KERNEL_NAME = "CompiledExpression$Kernel";
+    private static final String HOST_NAME = "CompiledExpression";
+
+    private ExpressionJit() {
+    }
+
+    public static int threshold() {
+        return threshold;
+    }
+
+    public static void setThreshold(int invocations) {
+        threshold = invocations;
+    }
+
+    // Translate program into a hidden class, or return null if it cannot be compiled
+    static CompiledExpression.Kernel compile(CompiledExpression program) {
+        if (program.size() > MAX_INSTRUCTIONS)
+            return null;
+        try {
+            byte[] bytes = generate(program);
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (CompiledExpression.Kernel) lookup.lookupClass().getDeclaredConstructor().newInstance();
+        } catch (IOException | ReflectiveOperationException | LinkageError e) {
+            // Fall back to the interpreter; a program that cannot be compiled still evaluates
+            // correctly, but a class the JVM rejects is a bug in generate, so say so once
+            reportFailure(e);
+            return null;
+        }
+    }
+
+    private static void reportFailure(Throwable e) {
+        synchronized (ExpressionJit.class) {
+            if (reported)
+                return;
+            reported = true;
+        }
+        System.err.println("Expression compilation failed, interpreting instead: " + e);
+    }
+
+    // Class file for: final class CompiledExpressionKernel implements CompiledExpression.Kernel
+    static byte[] generate(CompiledExpression program) throws IOException {
+        ConstantPool pool = new ConstantPool();
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int kernelClass = pool.classRef(KERNEL_NAME);
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int divide = pool.methodRef(HOST_NAME, "divide", "(II)I");
+        int initName = pool.utf8("<init>");
+        int initType = pool.utf8("()V");
+        int evalName = pool.utf8("evaluate");
+        int evalType = pool.utf8("([I)I");
+        int code = pool.utf8("Code");
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        for (int pc = 0; pc < program.size(); pc++) {
+            int operand = program.operand(pc);
+            switch (program.opcode(pc)) {
+                case CompiledExpression.LOAD -> {
+                    out.writeByte(0x2b); // aload_1
+                    pushInt(out, pool, operand);
+                    out.writeByte(0x2e); // iaload
+                }
+                case CompiledExpression.CONST -> pushInt(out, pool, operand);
+                case CompiledExpression.ADD -> out.writeByte(0x60);
+                case CompiledExpression.SUB -> out.writeByte(0x64);
+                case CompiledExpression.MUL -> out.writeByte(0x68);
+                case CompiledExpression.DIV -> {
+                    out.writeByte(0xb8); // invokestatic CompiledExpression.divide, keeps the error message
+                    out.writeShort(divide);
+                }
+                case CompiledExpression.AND -> out.writeByte(0x7e);
+                case CompiledExpression.OR -> out.writeByte(0x80);
+                case CompiledExpression.XOR -> out.writeByte(0x82);
+                case CompiledExpression.SHL -> out.writeByte(0x78);
+                case CompiledExpression.SHR -> out.writeByte(0x7a);
+                case CompiledExpression.NOT -> {
+                    out.writeByte(0x02); // iconst_m1
+                    out.writeByte(0x82); // ixor
+                }
+                case CompiledExpression.TEE -> {
+                    out.writeByte(0x59); // dup
+                    local(out, 0x36, 2 + operand); // istore
+                }
+                case CompiledExpression.LOADT -> local(out, 0x15, 2 + operand); // iload
+                default -> throw new IllegalStateException("Unknown opcode: " + program.opcode(pc));
+            }
+        }
+        out.writeByte(0xac); // ireturn
+        byte[] evalCode = body.toByteArray();
+
+        ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+        DataOutputStream cf = new DataOutputStream(classFile);
+        cf.writeInt(0xCAFEBABE);
+        cf.writeShort(0);   // minor
+        cf.writeShort(52);  // major: no branches, so no stack map frames are required
+        pool.writeTo(cf);
+        cf.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+        cf.writeShort(thisClass);
+        cf.writeShort(superClass);
+        cf.writeShort(1);
+        cf.writeShort(kernelClass);
+        cf.writeShort(0); // fields
+
+        cf.writeShort(2); // methods
+        byte[] initCode = { 0x2a, (byte) 0xb7, (byte) (objectInit >> 8), (byte) objectInit, (byte) 0xb1 };
+        writeMethod(cf, initName, initType, code, 1, 1, initCode);
+        writeMethod(cf, evalName, evalType, code, program.maxStackDepth() + 2, 2 + program.temporaryCount(), evalCode);
+
+        cf.writeShort(0); // attributes
+        return classFile.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream cf, int name, int type, int codeAttr, int maxStack,
+            int maxLocals, byte[] code) throws IOException {
+        cf.writeShort(0x0001); // public
+        cf.writeShort(name);
+        cf.writeShort(type);
+        cf.writeShort(1);
+        cf.writeShort(codeAttr);
+        cf.writeInt(12 + code.length);
+        cf.writeShort(maxStack);
+        cf.writeShort(maxLocals);
+        cf.writeInt(code.length);
+        cf.write(code);
+        cf.writeShort(0); // exception table
+        cf.writeShort(0); // attributes
+    }
+
+    // Temporaries live in local variables after this and the bindings array
+    private static void local(DataOutputStream out, int opcode, int index) throws IOException {
+        if (index <= 0xFF) {
+            out.writeByte(opcode);
+            out.writeByte(index);
+        } else {
+            out.writeByte(0xc4); // wide
+            out.writeByte(opcode);
+            out.writeShort(index);
+        }
+    }
+
+    private static void pushInt(DataOutputStream out, ConstantPool pool, int value) throws IOException {
+        if (value >= -1 && value <= 5) {
+            out.writeByte(0x03 + value); // iconst_<n>
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            out.writeByte(0x10); // bipush
+            out.writeByte(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            out.writeByte(0x11); // sipush
+            out.writeShort(value);
+        } else {
+            out.writeByte(0x13); // ldc_w
+            out.writeShort(pool.integer(value));
+        }
+    }
+
+    // Minimal constant pool writer with de-duplication
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) throws IOException {
+            Integer index = entries.get("U" + value);
+            if (index != null) return index;
+            out.writeByte(1);
+            out.writeUTF(value);
+            return add("U" + value);
+        }
+
+        int integer(int value) throws IOException {
+            Integer index = entries.get("I" + value);
+            if (index != null) return index;
+            out.writeByte(3);
+            out.writeInt(value);
+            return add("I" + value);
+        }
+
+        int classRef(String name) throws IOException {
+            Integer index = entries.get("C" + name);
+            if (index != null) return index;
+            int nameIndex = utf8(name);
+            out.writeByte(7);
+            out.writeShort(nameIndex);
+            return add("C" + name);
+        }
+
+        int methodRef(String owner, String name, String descriptor) throws IOException {
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int typeIndex = utf8(descriptor);
+            out.writeByte(12); // NameAndType
+            out.writeShort(nameIndex);
+            out.writeShort(typeIndex);
+            int nameAndType = add("N" + name + descriptor + count);
+            out.writeByte(10); // Methodref
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+            return add("M" + owner + "." + name + descriptor);
+        }
+
+        private int add(String key) {
+            if (count >= 0xFFFF) throw new IllegalStateException("Constant pool overflow.");
+            entries.put(key, count);
+            return count++;
+        }
+
+        void writeTo(DataOutputStream cf) throws IOException {
+            cf.writeShort(count);
+            cf.write(bytes.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.util.*;
+
+// Optimizer pass that runs between parsing and evaluation.
+//
+// The postfix program is turned into a DAG by hash-consing: every node is
+// looked up by (opcode, operand/left, right) before it is created, so
+// identical subtrees such as the two sides of (a*b)+(a*b) collapse into one
+// node. Commutative operators order their children first, so a*b and b*a
+// share a node as well. Subtrees made only of literals are folded into a
+// single constant while the DAG is built.
+//
+// The DAG is emitted back as a postfix program. The first use of a shared
+// node computes it and keeps a copy in a temporary (TEE); every later use
+// just reloads it (LOADT), so each shared subexpression is evaluated once
+// per binding.
+public final class ExpressionOptimizer {
+
+    private ExpressionOptimizer() {
+    }
+
+    public static CompiledExpression optimize(CompiledExpression program) {
+        if (program.temporaryCount() > 0)
+            return program; // already optimized
+
+        int n = program.size();
+        byte[] op = new byte[n];
+        int[] left = new int[n];   // LOAD/CONST: slot or value; otherwise left child
+        int[] right = new int[n];  // right child, -1 for leaves and unary operators
+        int nodes = 0;
+        Map<NodeKey, Integer> unique = new HashMap<>();
+
+        int[] stack = new int[Math.max(program.maxStackDepth(), 1)];
+        int sp = 0;
+        for (int pc = 0; pc < n; pc++) {
+            byte opcode = program.opcode(pc);
+            int a, b = -1;
+            switch (opcode) {
+                case CompiledExpression.LOAD, CompiledExpression.CONST -> a = program.operand(pc);
+                case CompiledExpression.NOT -> {
+                    a = stack[--sp];
+                    if (op[a] == CompiledExpression.CONST) {
+                        opcode = CompiledExpression.CONST;
+                        a = ~left[a];
+                    }
+                }
+                default -> {
+                    b = stack[--sp];
+                    a = stack[--sp];
+                    if (op[a] == CompiledExpression.CONST && op[b] == CompiledExpression.CONST
+                            && !(opcode == CompiledExpression.DIV && left[b] == 0)) {
+                        a = CompiledExpression.apply(opcode, left[a], left[b]);
+                        b = -1;
+                        opcode = CompiledExpression.CONST;
+                    } else if (isCommutative(opcode) && a > b) {
+                        int t = a;
+                        a = b;
+                        b = t;
+                    }
+                }
+            }
+
+            NodeKey key = new NodeKey(opcode, a, b);
+            Integer id = unique.get(key);
+            if (id == null) {
+                id = nodes++;
+                op[id] = opcode;
+                left[id] = a;
+                right[id] = b;
+                unique.put(key, id);
+            }
+            stack[sp++] = id;
+        }
+        int root = stack[0];
+
+        // A non-leaf node referenced more than once gets a temporary
+        int[] uses = new int[nodes];
+        for (int id = 0; id < nodes; id++) {
+            if (isInterior(op[id])) {
+                uses[left[id]]++;
+                if (right[id] >= 0) uses[right[id]]++;
+            }
+        }
+        int[] temporary = new int[nodes];
+        Arrays.fill(temporary, -1);
+        int temporaries = 0;
+        for (int id = 0; id < nodes; id++) {
+            if (isInterior(op[id]) && uses[id] > 1) temporary[id] = temporaries++;
+        }
+
+        if (temporaries == 0 && nodes == n)
+            return program; // nothing shared and nothing folded
+
+        return emit(program, op, left, right, temporary, root, nodes);
+    }
+
+    // Post-order walk of the DAG with an explicit stack, so deep expressions cannot overflow
+    private static CompiledExpression emit(CompiledExpression template, byte[] op, int[] left, int[] right,
+            int[] temporary, int root, int nodes) {
+        CompiledExpression.Builder builder = new CompiledExpression.Builder(template);
+        boolean[] emitted = new boolean[nodes];
+        int[] work = new int[nodes * 2 + 2];
+        boolean[] expanded = new boolean[work.length];
+        int top = 0;
+        work[top] = root;
+        expanded[top++] = false;
+
+        while (top > 0) {
+            int id = work[--top];
+            boolean childrenDone = expanded[top];
+
+            if (!childrenDone) {
+                if (temporary[id] >= 0 && emitted[id]) {
+                    builder.loadTemporary(temporary[id]);
+                    continue;
+                }
+                if (op[id] == CompiledExpression.LOAD) {
+                    builder.load(left[id]);
+                    continue;
+                }
+                if (op[id] == CompiledExpression.CONST) {
+                    builder.constant(left[id]);
+                    continue;
+                }
+                work[top] = id;
+                expanded[top++] = true;
+                if (right[id] >= 0) {
+                    work[top] = right[id];
+                    expanded[top++] = false;
+                }
+                work[top] = left[id];
+                expanded[top++] = false;
+                continue;
+            }
+
+            if (op[id] == CompiledExpression.NOT) {
+                builder.unary(op[id]);
+            } else {
+                builder.operator(op[id]);
+            }
+            emitted[id] = true;
+            if (temporary[id] >= 0) builder.tee(temporary[id]);
+        }
+        return builder.build();
+    }
+
+    private static boolean isInterior(byte opcode) {
+        return opcode != CompiledExpression.LOAD && opcode != CompiledExpression.CONST;
+    }
+
+    private static boolean isCommutative(byte opcode) {
+        return switch (opcode) {
+            case CompiledExpression.ADD, CompiledExpression.MUL, CompiledExpression.AND,
+                    CompiledExpression.OR, CompiledExpression.XOR -> true;
+            default -> false;
+        };
+    }
+
+    private record NodeKey(byte op, int left, int right) {
+    }
+}
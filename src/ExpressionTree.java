@@ -0,0 +1,466 @@
+import java.util.*;
+
+// Immutable binary expression tree held in parallel primitive arrays instead of node
+// objects: a node is an index, and nothing but the source text is kept per operand.
+//
+// Nodes are numbered in post-order (left subtree, right subtree, node), so the root is
+// the last node, every subtree is a contiguous range ending at its root, and the right
+// child of an operator is always the node just before it. Per node there is
+//   kind     TokenStream.NAME, NUMBER or OPERATOR
+//   operand  the operator character, or the offset of the operand's text in the source
+//   left     the left child, or minus the text length for an operand
+// which is 9 bytes a node, about 90 MB for 10 million nodes plus the source string.
+// All three notations are turned into postfix token order as they are read, from a
+// window of tokens at a time, and built by one pass; every walk uses an explicit int
+// stack, so skewed trees of any depth never recurse.
+public final class ExpressionTree {
+
+    private final String source;
+    private final byte[] kind;
+    private final int[] operand;
+    private final int[] left;
+    private final int maxDepth;
+
+    private ExpressionTree(String source, byte[] kind, int[] operand, int[] left, int maxDepth) {
+        this.source = source;
+        this.kind = kind;
+        this.operand = operand;
+        this.left = left;
+        this.maxDepth = maxDepth;
+    }
+
+    // Parse an infix, prefix or postfix expression; operands are names or numbers and
+    // operators are + - * / ^
+    public static ExpressionTree parse(String expr, String type) {
+        String source = expr.trim();
+        return switch (type) {
+            case "postfix" -> fromPostfix(source);
+            case "prefix" -> fromPrefix(source);
+            case "infix" -> fromInfix(source);
+            default -> throw new IllegalArgumentException("Invalid expression type: " + type);
+        };
+    }
+
+    public int size() {
+        return kind.length;
+    }
+
+    public int root() {
+        return kind.length - 1;
+    }
+
+    public byte kind(int node) {
+        return kind[node];
+    }
+
+    public boolean isOperator(int node) {
+        return kind[node] == TokenStream.OPERATOR;
+    }
+
+    public int left(int node) {
+        if (!isOperator(node))
+            throw new IllegalArgumentException("Node " + node + " is an operand.");
+        return left[node];
+    }
+
+    public int right(int node) {
+        if (!isOperator(node))
+            throw new IllegalArgumentException("Node " + node + " is an operand.");
+        return node - 1;
+    }
+
+    public char operator(int node) {
+        return (char) operand[node];
+    }
+
+    // Length of the node's label: 1 for an operator, the operand's text length otherwise
+    public int labelLength(int node) {
+        return isOperator(node) ? 1 : -left[node];
+    }
+
+    // Offset of an operand's text in source(); its length is labelLength(node)
+    public int labelOffset(int node) {
+        if (isOperator(node))
+            throw new IllegalArgumentException("Node " + node + " is an operator.");
+        return operand[node];
+    }
+
+    public void appendLabel(StringBuilder out, int node) {
+        if (isOperator(node))
+            out.append((char) operand[node]);
+        else
+            out.append(source, operand[node], operand[node] - left[node]);
+    }
+
+    public String label(int node) {
+        StringBuilder out = new StringBuilder(labelLength(node));
+        appendLabel(out, node);
+        return out.toString();
+    }
+
+    // The most operands a post-order evaluation holds at once
+    public int maxDepth() {
+        return maxDepth;
+    }
+
+    // Nodes on the longest path from the root
+    public int height() {
+        int[] height = new int[kind.length];
+        for (int node = 0; node < kind.length; node++)
+            height[node] = isOperator(node) ? 1 + Math.max(height[left[node]], height[node - 1]) : 1;
+        return height[root()];
+    }
+
+    // Heap held by the node arrays (the source string is shared with the caller)
+    public long sizeInBytes() {
+        return 9L * kind.length;
+    }
+
+    public String source() {
+        return source;
+    }
+
+    // Labels in post-order, separated by spaces
+    public String postfix() {
+        StringBuilder out = new StringBuilder(source.length());
+        for (int node = 0; node < kind.length; node++) {
+            if (node > 0) out.append(' ');
+            appendLabel(out, node);
+        }
+        return out.toString();
+    }
+
+    // Labels in pre-order, separated by spaces
+    public String prefix() {
+        StringBuilder out = new StringBuilder(source.length());
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = root();
+        while (top > 0) {
+            int node = stack[--top];
+            if (out.length() > 0) out.append(' ');
+            appendLabel(out, node);
+            if (isOperator(node)) {
+                if (top + 2 > stack.length)
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                stack[top++] = node - 1;
+                stack[top++] = left[node];
+            }
+        }
+        return out.toString();
+    }
+
+    // Fully parenthesized infix, which parses back to the same tree. Stack entries are
+    // node << 2 | step, where step 0 opens the node, 1 follows its left side and 2 its right.
+    public String infix() {
+        StringBuilder out = new StringBuilder(source.length() * 2);
+        int[] stack = new int[16];
+        int top = 0;
+        stack[top++] = root() << 2;
+        while (top > 0) {
+            int entry = stack[--top];
+            int node = entry >>> 2;
+            if (!isOperator(node)) {
+                appendLabel(out, node);
+                continue;
+            }
+            if (top + 2 > stack.length)
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            switch (entry & 3) {
+                case 0 -> {
+                    out.append('(');
+                    stack[top++] = node << 2 | 1;
+                    stack[top++] = left[node] << 2;
+                }
+                case 1 -> {
+                    out.append(' ').append((char) operand[node]).append(' ');
+                    stack[top++] = node << 2 | 2;
+                    stack[top++] = (node - 1) << 2;
+                }
+                default -> out.append(')');
+            }
+        }
+        return out.toString();
+    }
+
+    // Value with + - * / and ^ (power) in double arithmetic, in one post-order pass
+    public double evaluate(Map<String, ? extends Number> vars) {
+        double[] stack = new double[maxDepth];
+        int sp = 0;
+        for (int node = 0; node < kind.length; node++) {
+            switch (kind[node]) {
+                case TokenStream.NUMBER -> stack[sp++] = number(node);
+                case TokenStream.NAME -> {
+                    String name = label(node);
+                    Number value = vars.get(name);
+                    if (value == null)
+                        throw new IllegalArgumentException("Undefined variable: '" + name + "'");
+                    stack[sp++] = value.doubleValue();
+                }
+                default -> {
+                    double b = stack[--sp];
+                    double a = stack[sp - 1];
+                    stack[sp - 1] = switch ((char) operand[node]) {
+                        case '+' -> a + b;
+                        case '-' -> a - b;
+                        case '*' -> a * b;
+                        case '/' -> a / b;
+                        default -> Math.pow(a, b);
+                    };
+                }
+            }
+        }
+        return stack[0];
+    }
+
+    private double number(int node) {
+        double value = 0;
+        for (int i = operand[node]; i < operand[node] - left[node]; i++)
+            value = value * 10 + (source.charAt(i) - '0');
+        return value;
+    }
+
+    // Builds the node arrays from tokens in postfix order, which is exactly post-order.
+    // Operators are taken by source offset, since all of them are one character long.
+    private static final class Builder {
+        private final String source;
+        private final String notation;
+        private final byte[] kind;
+        private final int[] operand;
+        private final int[] left;
+        private int[] stack = new int[16];
+        private int size;
+        private int top;
+        private int maxDepth;
+
+        Builder(String source, String notation, int nodes) {
+            this.source = source;
+            this.notation = notation;
+            kind = new byte[nodes];
+            operand = new int[nodes];
+            left = new int[nodes];
+        }
+
+        void add(TokenStream tokens, int token) {
+            if (tokens.kind(token) == TokenStream.OPERATOR) {
+                operator(tokens.offset(token));
+            } else if (tokens.isOperand(token)) {
+                int node = size++;
+                kind[node] = tokens.kind(token);
+                operand[node] = tokens.offset(token);
+                left[node] = -tokens.length(token);
+                push(node);
+            } else {
+                throw new IllegalArgumentException("Invalid " + notation + " expression: unexpected '"
+                        + tokens.text(token) + "' at position " + (tokens.offset(token) + 1));
+            }
+        }
+
+        void operator(int offset) {
+            if (top < 2)
+                throw new IllegalArgumentException("Invalid " + notation
+                        + " expression: insufficient operands for operator '" + source.charAt(offset) + "'");
+            int node = size++;
+            kind[node] = TokenStream.OPERATOR;
+            operand[node] = source.charAt(offset);
+            left[node] = stack[top - 2];
+            top -= 2;
+            push(node);
+        }
+
+        private void push(int node) {
+            stack = ExpressionTree.push(stack, top++, node);
+            maxDepth = Math.max(maxDepth, top);
+        }
+
+        ExpressionTree build() {
+            if (top != 1 || size != kind.length)
+                throw new IllegalArgumentException("Invalid " + notation + " expression: leftover operands or operators.");
+            return new ExpressionTree(source, kind, operand, left, maxDepth);
+        }
+    }
+
+    // Tokens of the source a window of about WINDOW characters at a time, so a long
+    // expression never has more than one window of tokens alive next to the tree. Windows
+    // are cut between two characters that cannot belong to the same token, which in the
+    // tree dialect is anywhere except between two letters or digits. A source that fits
+    // in one window is lexed once and shared by every pass.
+    private static final int WINDOW = 1 << 16;
+
+    private static final class Tokens {
+        private final String source;
+        private final TokenStream whole;
+        private final boolean reverse;
+        private int next;
+        TokenStream window;
+        int token;
+
+        Tokens(String source, TokenStream whole, boolean reverse) {
+            this.source = source;
+            this.whole = whole;
+            this.reverse = reverse;
+            next = reverse ? source.length() : 0;
+            token = -1;
+        }
+
+        static TokenStream whole(String source) {
+            return source.length() <= WINDOW ? Lexer.TREE.tokenize(source) : null;
+        }
+
+        // Move to the next token (back to front when reverse); false once there are none
+        boolean advance() {
+            while (true) {
+                if (window != null) {
+                    token += reverse ? -1 : 1;
+                    if (token >= 0 && token < window.size())
+                        return true;
+                }
+                if (reverse ? next == 0 : next == source.length())
+                    return false;
+                if (whole != null) {
+                    window = whole;
+                    next = reverse ? 0 : source.length();
+                } else if (reverse) {
+                    int from = boundary(Math.max(0, next - WINDOW), -1);
+                    window = Lexer.TREE.tokenize(source, from, next);
+                    next = from;
+                } else {
+                    int to = boundary(Math.min(source.length(), next + WINDOW), 1);
+                    window = Lexer.TREE.tokenize(source, next, to);
+                    next = to;
+                }
+                token = reverse ? window.size() : -1;
+            }
+        }
+
+        // Nearest place at or after (step 1) or before (step -1) cut where a window may end
+        private int boundary(int cut, int step) {
+            while (cut > 0 && cut < source.length() && Character.isLetterOrDigit(source.charAt(cut - 1))
+                    && Character.isLetterOrDigit(source.charAt(cut)))
+                cut += step;
+            return cut;
+        }
+    }
+
+    private static ExpressionTree fromPostfix(String source) {
+        TokenStream whole = Tokens.whole(source);
+        int nodes = 0;
+        for (Tokens tokens = new Tokens(source, whole, false); tokens.advance();)
+            nodes++;
+        Builder builder = new Builder(source, "postfix", nodes);
+        for (Tokens tokens = new Tokens(source, whole, false); tokens.advance();)
+            builder.add(tokens.window, tokens.token);
+        return builder.build();
+    }
+
+    // Pre-order to post-order: an operator waits on the stack until both its operands are
+    // complete, and each completed operand counts towards the operator below it. The
+    // expression is first checked back to front by counting operands, which reports the
+    // same error a right-to-left stack build would.
+    private static ExpressionTree fromPrefix(String source) {
+        TokenStream whole = Tokens.whole(source);
+        int nodes = 0;
+        for (Tokens tokens = new Tokens(source, whole, false); tokens.advance();)
+            nodes++;
+        int operandCount = 0;
+        for (Tokens tokens = new Tokens(source, whole, true); tokens.advance();) {
+            TokenStream window = tokens.window;
+            int i = tokens.token;
+            if (window.kind(i) == TokenStream.OPERATOR) {
+                if (operandCount < 2)
+                    throw new IllegalArgumentException("Invalid prefix expression: insufficient operands for operator '"
+                            + window.text(i) + "'");
+                operandCount--;
+            } else if (window.isOperand(i)) {
+                operandCount++;
+            } else {
+                throw new IllegalArgumentException("Invalid prefix expression: unexpected '" + window.text(i)
+                        + "' at position " + (window.offset(i) + 1));
+            }
+        }
+        if (operandCount != 1)
+            throw new IllegalArgumentException("Invalid prefix expression: leftover operands or operators.");
+
+        Builder builder = new Builder(source, "prefix", nodes);
+        // Offsets of waiting operators, complemented once their left operand is complete
+        int[] pending = new int[16];
+        int top = 0;
+        for (Tokens tokens = new Tokens(source, whole, false); tokens.advance();) {
+            TokenStream window = tokens.window;
+            int i = tokens.token;
+            if (window.kind(i) == TokenStream.OPERATOR) {
+                pending = push(pending, top++, window.offset(i));
+                continue;
+            }
+            builder.add(window, i);
+            while (top > 0 && pending[top - 1] < 0)
+                builder.operator(~pending[--top]);
+            if (top > 0)
+                pending[top - 1] = ~pending[top - 1];
+        }
+        return builder.build();
+    }
+
+    // Shunting Yard straight into the builder, with operators and '(' stacked by source
+    // offset. Parentheses are matched first, so a mismatch is reported before any operand
+    // error, as when converting to postfix first.
+    private static ExpressionTree fromInfix(String source) {
+        TokenStream whole = Tokens.whole(source);
+        int nodes = 0;
+        int open = 0;
+        for (Tokens tokens = new Tokens(source, whole, false); tokens.advance() && open >= 0;) {
+            byte kind = tokens.window.kind(tokens.token);
+            if (kind == TokenStream.LPAREN)
+                open++;
+            else if (kind == TokenStream.RPAREN)
+                open--;
+            else
+                nodes++;
+        }
+        if (open != 0)
+            throw new IllegalArgumentException("Mismatched parentheses in infix expression.");
+        if (nodes == 0)
+            throw new IllegalArgumentException("Invalid postfix expression: leftover operands or operators.");
+
+        Builder builder = new Builder(source, "postfix", nodes);
+        int[] ops = new int[16];
+        int top = 0;
+        for (Tokens tokens = new Tokens(source, whole, false); tokens.advance();) {
+            TokenStream window = tokens.window;
+            int i = tokens.token;
+            byte kind = window.kind(i);
+            if (window.isOperand(i)) {
+                builder.add(window, i);
+            } else if (kind == TokenStream.LPAREN) {
+                ops = push(ops, top++, window.offset(i));
+            } else if (kind == TokenStream.RPAREN) {
+                while (source.charAt(ops[top - 1]) != '(')
+                    builder.operator(ops[--top]);
+                top--; // remove '('
+            } else {
+                while (top > 0 && precedence(window.operator(i)) <= precedence(source.charAt(ops[top - 1])))
+                    builder.operator(ops[--top]);
+                ops = push(ops, top++, window.offset(i));
+            }
+        }
+        while (top > 0)
+            builder.operator(ops[--top]);
+        return builder.build();
+    }
+
+    private static int[] push(int[] stack, int top, int value) {
+        if (top == stack.length)
+            stack = Arrays.copyOf(stack, top * 2);
+        stack[top] = value;
+        return stack;
+    }
+
+    private static int precedence(char op) {
+        return switch (op) {
+            case '+', '-' -> 1;
+            case '*', '/' -> 2;
+            case '^' -> 3;
+            default -> -1;
+        };
+    }
+}
@@ -0,0 +1,209 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+
+// Writes an ExpressionTree for other tools, as Graphviz DOT, JSON or a compact binary
+// pre-order encoding.
+//
+// Each format is one pass over the node arrays, encoded straight into a 64 KiB buffer
+// that is written to the channel whenever it fills; nothing else is built. Node ids are
+// the tree's post-order node numbers, so the root is size - 1.
+//   dot     digraph expression { n0 [label="a"]; ... n2 -> n0; n2 -> n1; }, left edge first
+//   json    {"root":2,"nodes":[{"type":"name","value":"a"}, ...,
+//           {"type":"operator","value":"+","left":0,"right":1}]}; nodes[i] is node i. The
+//           list is flat so that trees millions of levels deep stay readable by parsers
+//           that limit nesting.
+//   binary  "DSAT", version byte 1, node count (4 bytes, big-endian), then every node in
+//           pre-order: 2 and the operator character for an operator, or 0 (name) or 1
+//           (number), the text length as an unsigned LEB128 varint, and the ASCII text.
+//           An operator's two subtrees follow it, left first, so no ids are stored.
+//
+// Usage: java Main --export dot|json|binary <infix|prefix|postfix> [input [output]]
+// (expression from standard input and the export to standard output by default)
+public final class ExpressionTreeExporter {
+
+    private static final int BUFFER = 1 << 16;
+    private static final byte[] MAGIC = { 'D', 'S', 'A', 'T' };
+    private static final byte VERSION = 1;
+
+    private ExpressionTreeExporter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java Main --export dot|json|binary <infix|prefix|postfix> [input [output]]");
+            return;
+        }
+        String expr = args.length > 2 ? Files.readString(Path.of(args[2]))
+                : new String(System.in.readAllBytes(), StandardCharsets.ISO_8859_1);
+        try (WritableByteChannel out = args.length > 3
+                ? FileChannel.open(Path.of(args[3]), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)
+                : new FileOutputStream(FileDescriptor.out).getChannel()) {
+            export(ExpressionTree.parse(expr, args[1]), args[0], out);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    // Export in the named format: "dot", "json" or "binary"
+    public static void export(ExpressionTree tree, String format, WritableByteChannel out) throws IOException {
+        switch (format) {
+            case "dot" -> writeDot(tree, out);
+            case "json" -> writeJson(tree, out);
+            case "binary" -> writePreorder(tree, out);
+            default -> throw new IllegalArgumentException("Unknown export format: " + format);
+        }
+    }
+
+    public static void writeDot(ExpressionTree tree, WritableByteChannel channel) throws IOException {
+        Telemetry.Span span = Telemetry.start(Telemetry.Operation.TREE_LAYOUT, "dot", null);
+        try {
+            Output out = new Output(channel);
+            out.ascii("digraph expression {\n  node [shape=circle];\n");
+            for (int node = 0; node < tree.size(); node++) {
+                out.ascii("  n").number(node).ascii(" [label=\"").label(tree, node).ascii("\"];\n");
+                if (tree.isOperator(node)) {
+                    out.ascii("  n").number(node).ascii(" -> n").number(tree.left(node)).ascii(";\n");
+                    out.ascii("  n").number(node).ascii(" -> n").number(node - 1).ascii(";\n");
+                }
+            }
+            out.ascii("}\n").flush();
+            span.finish();
+        } catch (IOException | RuntimeException e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    public static void writeJson(ExpressionTree tree, WritableByteChannel channel) throws IOException {
+        Telemetry.Span span = Telemetry.start(Telemetry.Operation.TREE_LAYOUT, "json", null);
+        try {
+            Output out = new Output(channel);
+            out.ascii("{\"root\":").number(tree.root()).ascii(",\"nodes\":[\n");
+            for (int node = 0; node < tree.size(); node++) {
+                if (node > 0)
+                    out.ascii(",\n");
+                out.ascii(switch (tree.kind(node)) {
+                    case TokenStream.OPERATOR -> "{\"type\":\"operator\",\"value\":\"";
+                    case TokenStream.NUMBER -> "{\"type\":\"number\",\"value\":\"";
+                    default -> "{\"type\":\"name\",\"value\":\"";
+                }).label(tree, node).put('"');
+                if (tree.isOperator(node))
+                    out.ascii(",\"left\":").number(tree.left(node)).ascii(",\"right\":").number(node - 1);
+                out.put('}');
+            }
+            out.ascii("\n]}\n").flush();
+            span.finish();
+        } catch (IOException | RuntimeException e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    public static void writePreorder(ExpressionTree tree, WritableByteChannel channel) throws IOException {
+        Telemetry.Span span = Telemetry.start(Telemetry.Operation.TREE_LAYOUT, "binary", null);
+        try {
+            Output out = new Output(channel);
+            for (byte b : MAGIC)
+                out.put(b);
+            out.put(VERSION);
+            int size = tree.size();
+            out.put((byte) (size >>> 24)).put((byte) (size >>> 16)).put((byte) (size >>> 8)).put((byte) size);
+
+            int[] stack = new int[16];
+            int top = 0;
+            stack[top++] = tree.root();
+            while (top > 0) {
+                int node = stack[--top];
+                out.put(tree.kind(node));
+                if (tree.isOperator(node)) {
+                    out.put((byte) tree.operator(node));
+                    if (top + 2 > stack.length)
+                        stack = Arrays.copyOf(stack, stack.length * 2);
+                    stack[top++] = node - 1;
+                    stack[top++] = tree.left(node);
+                } else {
+                    int length = tree.labelLength(node);
+                    while (length >= 0x80) {
+                        out.put((byte) (length | 0x80));
+                        length >>>= 7;
+                    }
+                    out.put((byte) length).label(tree, node);
+                }
+            }
+            out.flush();
+            span.finish();
+        } catch (IOException | RuntimeException e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    // Buffered ASCII output to a channel
+    private static final class Output {
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+        private final byte[] bytes = buffer.array();
+        private int position;
+
+        Output(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        Output put(byte b) throws IOException {
+            if (position == bytes.length)
+                drain();
+            bytes[position++] = b;
+            return this;
+        }
+
+        Output put(char c) throws IOException {
+            return put((byte) c);
+        }
+
+        Output ascii(String text) throws IOException {
+            for (int i = 0; i < text.length(); i++)
+                put((byte) text.charAt(i));
+            return this;
+        }
+
+        Output number(int value) throws IOException {
+            if (position + 11 > bytes.length)
+                drain();
+            int digits = 1;
+            for (int rest = value; rest >= 10; rest /= 10)
+                digits++;
+            int end = position + digits;
+            position = end;
+            for (int i = end - 1; i >= end - digits; i--, value /= 10)
+                bytes[i] = (byte) ('0' + value % 10);
+            return this;
+        }
+
+        Output label(ExpressionTree tree, int node) throws IOException {
+            if (tree.isOperator(node))
+                return put(tree.operator(node));
+            String source = tree.source();
+            int from = tree.labelOffset(node);
+            int to = from + tree.labelLength(node);
+            for (int i = from; i < to; i++)
+                put((byte) source.charAt(i));
+            return this;
+        }
+
+        void flush() throws IOException {
+            drain();
+        }
+
+        private void drain() throws IOException {
+            buffer.clear().limit(position);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            position = 0;
+        }
+    }
+}
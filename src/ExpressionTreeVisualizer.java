@@ -3,21 +3,17 @@ import java.text.SimpleDateFormat;
 import java.util.*;
 
 public class ExpressionTreeVisualizer {
-    private static class Node {
-        String value;
-        Node left, right;
 
-        Node(String value) {
-            this.value = value;
-        }
-    }
+    // Largest drawing render returns, in characters; a skewed tree's drawing grows with the
+    // square of its size, so longer ones are refused before anything is drawn
+    private static final long MAX_CHARS = Long.getLong("dsa.tree.maxChars", 1 << 22);
 
     public static void handle() {
         Scanner sc = new Scanner(System.in);
         String timestamp = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
 
-        try (BufferedWriter inputWriter = new BufferedWriter(new FileWriter("input.txt", true));
-                BufferedWriter outputWriter = new BufferedWriter(new FileWriter("output.txt", true))) {
+        try (Writer inputWriter = SessionJournal.shared().writer("input.txt");
+                Writer outputWriter = SessionJournal.shared().writer("output.txt")) {
 
             // Session header
             inputWriter.write("\n====== Session Started at " + timestamp + " ======\n");
@@ -30,12 +26,10 @@ public class ExpressionTreeVisualizer {
 
             inputWriter.write("Expression: " + expr + " (" + type + ")\n");
 
-            Node root = null;
+            ExpressionTree root = null;
             try {
                 switch (type) {
-                    case "postfix" -> root = buildFromPostfix(expr.trim().split("\\s+"));
-                    case "prefix" -> root = buildFromPrefix(expr.trim().split("\\s+"));
-                    case "infix" -> root = buildFromInfix(expr.trim());
+                    case "postfix", "prefix", "infix" -> root = buildTree(expr, type);
                     default -> {
                         System.out.println(" Invalid expression type. Must be infix, prefix, or postfix.");
                         inputWriter.write(" Invalid expression type.\n");
@@ -50,8 +44,12 @@ public class ExpressionTreeVisualizer {
                 System.out.println("Tree Structure (Visual Representation):");
                 outputWriter.write("Tree for: " + expr + " (" + type + ")\n");
 
-                // Print the tree in a visual format
-                printVisualTree(root, outputWriter);
+                // Print the tree in a visual format to the console and output.txt
+                Writer console = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+                printVisualTree(expr, type, root, new TeeWriter(console, outputWriter), Long.MAX_VALUE);
+
+                // The drawing is not stored; replaying the session renders it again
+                HistoryStore.record("tree", type, expr, "", "");
             }
 
             // Session footer
@@ -63,191 +61,166 @@ public class ExpressionTreeVisualizer {
         }
     }
 
-    // Build from Postfix
-    private static Node buildFromPostfix(String[] tokens) {
-        Stack<Node> stack = new Stack<>();
-        for (String token : tokens) {
-            if (isOperator(token)) {
-                if (stack.size() < 2)
-                    throw new IllegalArgumentException("Invalid postfix expression: insufficient operands for operator '" + token + "'");
-                Node right = stack.pop();
-                Node left = stack.pop();
-                Node node = new Node(token);
-                node.left = left;
-                node.right = right;
-                stack.push(node);
-            } else {
-                stack.push(new Node(token));
-            }
-        }
-        if (stack.size() != 1)
-            throw new IllegalArgumentException("Invalid postfix expression: leftover operands or operators.");
-        return stack.peek();
-    }    
-
-    // Build from Prefix
-    private static Node buildFromPrefix(String[] tokens) {
-        Stack<Node> stack = new Stack<>();
-        for (int i = tokens.length - 1; i >= 0; i--) {
-            String token = tokens[i];
-            if (isOperator(token)) {
-                if (stack.size() < 2)
-                    throw new IllegalArgumentException("Invalid prefix expression: insufficient operands for operator '" + token + "'");
-                Node node = new Node(token);
-                node.left = stack.pop();
-                node.right = stack.pop();
-                stack.push(node);
-            } else {
-                stack.push(new Node(token));
-            }
-        }
-        if (stack.size() != 1)
-            throw new IllegalArgumentException("Invalid prefix expression: leftover operands or operators.");
-        return stack.peek();
-    }    
-
-    // Build from Infix using Shunting Yard
-    private static Node buildFromInfix(String expr) {
-        String[] postfix = infixToPostfix(expr);
-        return buildFromPostfix(postfix);
+    // Drawing of the tree for an expression, at most MAX_CHARS characters; used by Calculator.tree
+    static String render(String expr, String type) throws IOException {
+        StringWriter drawing = new StringWriter();
+        printVisualTree(expr, type, buildTree(expr, type), drawing, MAX_CHARS);
+        return drawing.toString();
     }
 
-    private static String[] infixToPostfix(String expr) {
-        List<String> output = new ArrayList<>();
-        Stack<String> ops = new Stack<>();
-        StringTokenizer st = new StringTokenizer(expr, "+-*/^() ", true);
-        while (st.hasMoreTokens()) {
-            String token = st.nextToken().trim();
-            if (token.isEmpty())
-                continue;
-            if (isOperand(token)) {
-                output.add(token);
-            } else if (token.equals("(")) {
-                ops.push(token);
-            } else if (token.equals(")")) {
-                while (!ops.isEmpty() && !ops.peek().equals("(")) {
-                    output.add(ops.pop());
-                }
-                if (ops.isEmpty() || !ops.peek().equals("(")) {
-                    throw new IllegalArgumentException("Mismatched parentheses in infix expression.");
-                }
-                ops.pop(); // remove '('                
-            } else {
-                while (!ops.isEmpty() && precedence(token) <= precedence(ops.peek())) {
-                    output.add(ops.pop());
-                }
-                ops.push(token);
-            }
-        }
-        while (!ops.isEmpty())
-            output.add(ops.pop());
-        return output.toArray(new String[0]);
+    // Drawing of the tree for an expression, written to out a row at a time with no size
+    // limit; used to replay stored sessions
+    static void render(String expr, String type, Writer out) throws IOException {
+        printVisualTree(expr, type, buildTree(expr, type), out, Long.MAX_VALUE);
     }
 
-    // Calculate tree height for traversal
-    private static int getHeight(Node node) {
-        if (node == null)
-            return 0;
-        return 1 + Math.max(getHeight(node.left), getHeight(node.right));
+    // Build (or fetch from the shared cache) the tree for an infix, prefix or postfix expression.
+    // Trees are never modified after construction, so cached trees can be shared.
+    static ExpressionTree buildTree(String expr, String type) {
+        return ExpressionCache.shared().get(expr.trim(), "tree:" + type, e -> ExpressionTree.parse(e, type));
     }
 
-    // Print a visual representation of the tree as a traditional ASCII tree
-    private static void printVisualTree(Node root, BufferedWriter writer) throws IOException {
-        if (root == null)
-            return;
-
-        // Get the height of the tree
-        int height = getHeight(root);
-
-        // Calculate the width of the tree display
-        int width = (int) Math.pow(2, height) * 2 - 1;
-
-        // Create a character grid for the tree
-        char[][] grid = new char[height * 2][width];
-        for (char[] row : grid) {
-            Arrays.fill(row, ' ');
+    // Drawing of the tree for expr, timed as a tree layout (see Telemetry)
+    private static void printVisualTree(String expr, String type, ExpressionTree tree, Writer writer,
+            long maxChars) throws IOException {
+        Telemetry.Span span = Telemetry.start(Telemetry.Operation.TREE_LAYOUT, type, expr);
+        try {
+            printVisualTree(tree, writer, maxChars);
+            span.finish();
+        } catch (IOException | RuntimeException e) {
+            span.fail(e);
+            throw e;
         }
+    }
 
-        // Fill the grid with the tree structure
-        fillGrid(grid, root, 0, 0, width - 1);
-
-        // Print the tree
-        for (char[] row : grid) {
-            // Find the last non-space character to trim trailing spaces
-            int lastNonSpace = row.length - 1;
-            while (lastNonSpace >= 0 && row[lastNonSpace] == ' ') {
-                lastNonSpace--;
+    // Print a visual representation of the tree as a traditional ASCII tree.
+    // Nodes are laid out left to right in in-order, so each node gets its own columns
+    // and the width grows with the number of nodes rather than 2^height. Rows are
+    // written one at a time; only the per-node layout and one row are held in memory.
+    // A drawing that could exceed maxChars characters is refused before the first row.
+    private static void printVisualTree(ExpressionTree tree, Writer writer, long maxChars) throws IOException {
+        int n = tree.size();
+
+        // In-order walk with an explicit stack: depth of every node, and each node starts
+        // one column after the previous one in in-order
+        int[] inOrder = new int[n];
+        int[] depth = new int[n];
+        int[] start = new int[n];
+        int[] stack = new int[16];
+        int[] stackDepth = new int[16];
+        int top = 0;
+        int height = 0;
+        int column = 0;
+        int k = 0;
+        int node = tree.root();
+        int d = 0;
+        while (node >= 0 || top > 0) {
+            while (node >= 0) {
+                if (top == stack.length) {
+                    stack = Arrays.copyOf(stack, top * 2);
+                    stackDepth = Arrays.copyOf(stackDepth, top * 2);
+                }
+                stack[top] = node;
+                stackDepth[top++] = d++;
+                node = tree.isOperator(node) ? tree.left(node) : -1;
             }
-
-            // Build the line
-            String line = new String(row, 0, lastNonSpace + 1);
-            System.out.println(line);
-            writer.write(line + "\n");
+            node = stack[--top];
+            d = stackDepth[top];
+            inOrder[k++] = node;
+            depth[node] = d;
+            start[node] = column;
+            column += tree.labelLength(node) + 1;
+            height = Math.max(height, d + 1);
+            node = tree.isOperator(node) ? tree.right(node) : -1;
+            d++;
         }
-    }
-
-    // Recursively fill the grid with the tree structure
-    private static void fillGrid(char[][] grid, Node node, int depth, int left, int right) {
-        if (node == null)
-            return;
-
-        int mid = (left + right) / 2;
 
-        // Place node value at the center of its space
-        char[] nodeChars = node.value.toCharArray();
-        int startPos = mid - nodeChars.length / 2;
-        for (int i = 0; i < nodeChars.length; i++) {
-            grid[depth][startPos + i] = nodeChars[i];
+        // Bucket nodes by depth, keeping them in left-to-right order within a level
+        int[] levelStart = new int[height + 1];
+        for (node = 0; node < n; node++)
+            levelStart[depth[node] + 1]++;
+        for (int level = 0; level < height; level++)
+            levelStart[level + 1] += levelStart[level];
+        int[] levels = new int[n];
+        int[] fill = Arrays.copyOf(levelStart, height);
+        for (int p = 0; p < n; p++)
+            levels[fill[depth[inOrder[p]]]++] = inOrder[p];
+
+        // A label row ends with the level's last node, and the branches under it end
+        // before the next level's last node does
+        long chars = 0;
+        for (int level = height - 1, below = 1; level >= 0; level--) {
+            int last = levels[levelStart[level + 1] - 1];
+            int width = start[last] + tree.labelLength(last) + 1;
+            chars += width + below;
+            below = width;
         }
-
-        // If there are children, draw branches
-        if (node.left != null) {
-            // Calculate left child's position
-            int leftMid = (left + mid - 1) / 2;
-
-            // Draw left branch: '/'
-            grid[depth + 1][leftMid + 1] = '/';
-
-            // Draw horizontal connector: '_'
-            for (int i = leftMid + 2; i < mid; i++) {
-                grid[depth + 1][i] = '_';
+        if (chars > maxChars)
+            throw new IllegalArgumentException("Tree too large to draw: more than " + maxChars + " characters.");
+
+        // Emit a label row and a branch row per level
+        StringBuilder line = new StringBuilder();
+        for (int level = 0; level < height; level++) {
+            line.setLength(0);
+            for (int m = levelStart[level]; m < levelStart[level + 1]; m++) {
+                int current = levels[m];
+                pad(line, start[current], ' ');
+                tree.appendLabel(line, current);
             }
-
-            // Recursively fill left subtree
-            fillGrid(grid, node.left, depth + 2, left, mid - 1);
+            writer.write(line.append('\n').toString());
+
+            line.setLength(0);
+            for (int m = levelStart[level]; m < levelStart[level + 1]; m++) {
+                int current = levels[m];
+                if (!tree.isOperator(current))
+                    continue;
+                int center = start[current] + tree.labelLength(current) / 2;
+                // Draw left branch: '/' followed by '_' up to the parent
+                int left = tree.left(current);
+                pad(line, start[left] + tree.labelLength(left) / 2 + 1, ' ');
+                line.append('/');
+                pad(line, center, '_');
+                // Draw '_' from the parent to the right branch: '\'
+                int right = tree.right(current);
+                pad(line, center + 1, ' ');
+                pad(line, start[right] + tree.labelLength(right) / 2 - 1, '_');
+                line.append('\\');
+            }
+            writer.write(line.append('\n').toString());
         }
+        writer.flush();
+    }
 
-        if (node.right != null) {
-            // Calculate right child's position
-            int rightMid = (mid + 1 + right) / 2;
-
-            // Draw right branch: '\'
-            grid[depth + 1][rightMid - 1] = '\\';
+    private static void pad(StringBuilder line, int column, char c) {
+        while (line.length() < column)
+            line.append(c);
+    }
 
-            // Draw horizontal connector: '_'
-            for (int i = mid + 1; i < rightMid - 1; i++) {
-                grid[depth + 1][i] = '_';
-            }
+    // Writes everything to the console and the session output file at once
+    private static final class TeeWriter extends Writer {
+        private final Writer first;
+        private final Writer second;
 
-            // Recursively fill right subtree
-            fillGrid(grid, node.right, depth + 2, mid + 1, right);
+        TeeWriter(Writer first, Writer second) {
+            this.first = first;
+            this.second = second;
         }
-    }
 
-    private static boolean isOperator(String s) {
-        return "+-*/^".contains(s);
-    }
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            first.write(buffer, offset, length);
+            second.write(buffer, offset, length);
+        }
 
-    private static boolean isOperand(String s) {
-        return s.matches("[a-zA-Z0-9]+");
-    }
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
 
-    private static int precedence(String op) {
-        return switch (op) {
-            case "+", "-" -> 1;
-            case "*", "/" -> 2;
-            case "^" -> 3;
-            default -> -1;
-        };
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,311 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+// Append-only session history.
+//
+// Every session is one length-prefixed binary record in a segmented log of
+// memory-mapped files (history/segment-000000.log, ...). A sidecar index
+// (history/history.idx) holds a fixed-size entry per session: timestamp,
+// segment, offset and length. Sequence number n is entry n - 1, so a lookup is
+// one positional read; timestamps never decrease, so a time range is found by
+// binary search over the index. Records whose index entry was never written
+// (a crash mid-append) are ignored and overwritten.
+//
+// Record layout: int length | long sequence | long timestamp | module | notation
+// | expression | bindings | result, each string as int length + UTF-8 bytes.
+public final class HistoryStore implements Closeable {
+
+    private static final int INDEX_ENTRY = 20; // long timestamp, int segment, int offset, int length
+    private static final int SEGMENT_SIZE = Integer.getInteger("dsa.history.segment.size", 16 << 20);
+    private static final String DIRECTORY = System.getProperty("dsa.history.dir", "history");
+
+    // One stored session; bindings look like a=1,b=2 and errors are kept as "Error: ..."
+    public record Session(long sequence, long timestamp, String module, String notation, String expression,
+            String bindings, String result) {
+    }
+
+    private final Path directory;
+    private final FileChannel index;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long count;
+    private long lastTimestamp;
+    private int segment;
+    private int position;
+
+    public HistoryStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        index = FileChannel.open(directory.resolve("history.idx"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        // A torn trailing entry is dropped; the write position follows the last complete record
+        count = index.size() / INDEX_ENTRY;
+        index.truncate(count * INDEX_ENTRY);
+        if (count > 0) {
+            ByteBuffer last = readEntry(count);
+            lastTimestamp = last.getLong(0);
+            segment = last.getInt(8);
+            position = last.getInt(12) + last.getInt(16);
+        }
+    }
+
+    // The shared store is opened on first use. If that fails the failure is kept and
+    // history is disabled for the rest of the run instead of retrying on every session.
+    private static HistoryStore shared;
+    private static IOException unavailable;
+    private static boolean reported;
+
+    public static synchronized HistoryStore shared() throws IOException {
+        if (shared == null && unavailable == null) {
+            try {
+                HistoryStore store = new HistoryStore(Paths.get(DIRECTORY));
+                Runtime.getRuntime().addShutdownHook(new Thread(store::close, "history-shutdown"));
+                shared = store;
+            } catch (IOException e) {
+                unavailable = e;
+            }
+        }
+        if (unavailable != null)
+            throw unavailable;
+        return shared;
+    }
+
+    // Record a session in the shared store; history problems never fail the session itself
+    public static void record(String module, String notation, String expression, String bindings, String result) {
+        HistoryStore store;
+        try {
+            store = shared();
+        } catch (IOException e) {
+            reportUnavailable(e);
+            return;
+        }
+        Telemetry.Span span = Telemetry.start(Telemetry.Operation.LOG_IO, "history", DIRECTORY);
+        try {
+            store.append(module, notation, expression, bindings, result);
+            span.finish();
+        } catch (IOException | UncheckedIOException e) {
+            span.fail(e);
+            System.err.println("Error writing history: " + e.getMessage());
+        }
+    }
+
+    // Said once per run, not once per session
+    private static synchronized void reportUnavailable(IOException e) {
+        if (!reported)
+            System.err.println("History is disabled, " + DIRECTORY + " could not be opened: " + e);
+        reported = true;
+    }
+
+    // Format a variable map the way sessions store it: a=1,b=2 in variable order
+    public static String bindings(Map<Character, ? extends Number> vars) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<Character, ? extends Number> entry : new TreeMap<>(vars).entrySet()) {
+            if (text.length() > 0) text.append(',');
+            text.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return text.toString();
+    }
+
+    // Append a session and return its sequence number (starting at 1)
+    public synchronized long append(String module, String notation, String expression, String bindings,
+            String result) throws IOException {
+        long sequence = count + 1;
+        long timestamp = Math.max(System.currentTimeMillis(), lastTimestamp);
+        byte[][] fields = { utf8(module), utf8(notation), utf8(expression), utf8(bindings), utf8(result) };
+        int length = 4 + 8 + 8;
+        for (byte[] field : fields) length += 4 + field.length;
+        if (length > SEGMENT_SIZE)
+            throw new IOException("Session too large for a history segment: " + length + " bytes.");
+
+        if (position + length > SEGMENT_SIZE) {
+            segment++;
+            position = 0;
+        }
+        ByteBuffer target = segment(segment, true).duplicate();
+        target.position(position);
+        target.putInt(length).putLong(sequence).putLong(timestamp);
+        for (byte[] field : fields) target.putInt(field.length).put(field);
+
+        // The index entry is written last; until then the record does not exist
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY);
+        entry.putLong(timestamp).putInt(segment).putInt(position).putInt(length).flip();
+        while (entry.hasRemaining()) index.write(entry, count * INDEX_ENTRY + entry.position());
+
+        position += length;
+        lastTimestamp = timestamp;
+        count = sequence;
+        return sequence;
+    }
+
+    public synchronized long size() {
+        return count;
+    }
+
+    // Session by sequence number: one index read and one record decode
+    public synchronized Session get(long sequence) throws IOException {
+        if (sequence < 1 || sequence > count)
+            throw new IllegalArgumentException("No session #" + sequence + ".");
+        ByteBuffer entry = readEntry(sequence);
+        ByteBuffer record = segment(entry.getInt(8), false).duplicate();
+        record.position(entry.getInt(12));
+        record.getInt(); // length
+        long seq = record.getLong();
+        long timestamp = record.getLong();
+        return new Session(seq, timestamp, string(record), string(record), string(record), string(record),
+                string(record));
+    }
+
+    // Sessions with from <= timestamp <= to (epoch millis), oldest first
+    public synchronized List<Session> range(long from, long to) throws IOException {
+        long low = 1, high = count + 1;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (readEntry(mid).getLong(0) < from) low = mid + 1;
+            else high = mid;
+        }
+        List<Session> sessions = new ArrayList<>();
+        for (long sequence = low; sequence <= count; sequence++) {
+            Session session = get(sequence);
+            if (session.timestamp() > to) break;
+            sessions.add(session);
+        }
+        return sessions;
+    }
+
+    // Run a stored session again through the module that produced it and write the new
+    // result to out. Tree drawings are streamed row by row, as the tree menu prints them.
+    public static void replay(Session session, Writer out) throws IOException {
+        String result;
+        try {
+            if (session.module().equals("tree")) {
+                ExpressionTreeVisualizer.render(session.expression(), session.notation(), out);
+                return;
+            }
+            result = switch (session.module()) {
+                case "evaluator", "bitwise", "converter" ->
+                        BatchRunner.evaluate(session.notation(), session.expression(), session.bindings());
+                case "numeric" -> StepByStepEvaluatorNumeric.result(session.notation(), session.expression());
+                case "string" -> StepByStepEvaluatorString.convert(session.expression(), session.notation());
+                default -> throw new IllegalArgumentException("Unknown module: " + session.module());
+            };
+        } catch (RuntimeException e) {
+            result = "Error: " + e.getMessage();
+        }
+        out.write(result + "\n");
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            index.force(false);
+            for (MappedByteBuffer buffer : segments) {
+                if (buffer != null) buffer.force();
+            }
+            index.close();
+        } catch (IOException e) {
+            System.err.println("Error closing history: " + e.getMessage());
+        }
+    }
+
+    private ByteBuffer readEntry(long sequence) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY);
+        long offset = (sequence - 1) * INDEX_ENTRY;
+        while (entry.hasRemaining()) {
+            if (index.read(entry, offset + entry.position()) < 0)
+                throw new EOFException("History index is truncated.");
+        }
+        return entry;
+    }
+
+    // Mapped segment n; segments are mapped once and kept for the life of the store
+    private MappedByteBuffer segment(int n, boolean create) throws IOException {
+        while (segments.size() <= n) segments.add(null);
+        MappedByteBuffer buffer = segments.get(n);
+        if (buffer == null) {
+            Path file = directory.resolve(String.format("segment-%06d.log", n));
+            if (!create && !Files.exists(file))
+                throw new FileNotFoundException("Missing history segment: " + file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+            }
+            segments.set(n, buffer);
+        }
+        return buffer;
+    }
+
+    private static byte[] utf8(String text) {
+        return (text == null ? "" : text).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String string(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Menu entry from Main
+    public static void handle() {
+        Scanner sc = new Scanner(System.in);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        HistoryStore store;
+        try {
+            store = shared();
+        } catch (IOException e) {
+            System.out.println("History is unavailable: " + e);
+            return;
+        }
+        try {
+            System.out.println("Sessions recorded: " + store.size());
+            System.out.println("1. Show session by number");
+            System.out.println("2. Sessions in a time range");
+            System.out.println("3. Replay session");
+            int choice = sc.nextInt();
+            sc.nextLine(); // consume newline
+
+            switch (choice) {
+                case 1 -> {
+                    System.out.print("Session number: ");
+                    print(store.get(sc.nextLong()), format);
+                }
+                case 2 -> {
+                    System.out.print("From (yyyy-MM-dd HH:mm:ss): ");
+                    long from = format.parse(sc.nextLine().trim()).getTime();
+                    System.out.print("To (yyyy-MM-dd HH:mm:ss): ");
+                    long to = format.parse(sc.nextLine().trim()).getTime();
+                    List<Session> sessions = store.range(from, to);
+                    for (Session session : sessions) print(session, format);
+                    System.out.println(sessions.size() + " session(s).");
+                }
+                case 3 -> {
+                    System.out.print("Session number: ");
+                    Session session = store.get(sc.nextLong());
+                    print(session, format);
+                    System.out.println("Replayed result:");
+                    replay(session, new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+                }
+                default -> System.out.println("Invalid choice.");
+            }
+        } catch (IllegalArgumentException | UncheckedIOException e) {
+            System.out.println("Error: " + e.getMessage());
+        } catch (IOException | java.text.ParseException e) {
+            System.out.println("History error: " + e.getMessage());
+        }
+    }
+
+    private static void print(Session session, SimpleDateFormat format) {
+        System.out.println("#" + session.sequence() + " " + format.format(new Date(session.timestamp())) + " "
+                + session.module() + " (" + session.notation() + ")");
+        System.out.println("  Expression: " + session.expression());
+        if (!session.bindings().isEmpty())
+            System.out.println("  Bindings: " + session.bindings());
+        System.out.println("  Result: " + session.result());
+    }
+}
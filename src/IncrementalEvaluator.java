@@ -0,0 +1,189 @@
+import java.util.*;
+
+// Re-evaluation of one expression as its variables change one at a time, for
+// sensitivity sweeps and what-if questions.
+//
+// The tree is the unoptimized postfix program of the expression, as for
+// ParallelTreeEvaluator: instruction i is a node, its right child is i - 1 and its
+// left child ends just before the right child's subtree. The value of every node
+// is kept, together with its parent and, for each variable slot, the LOAD nodes
+// that read it. Setting a variable recomputes only those leaves and their
+// ancestors, in program order so children come before parents, and a node whose
+// children all kept their values is skipped. One occurrence of a variable costs
+// O(depth) instead of a pass over the whole program; a variable whose ancestors make
+// up much of the tree is cheaper to handle with that one pass, which is used instead.
+//
+// An update that divides by zero is rolled back: the exception is thrown and the
+// evaluator keeps the previous bindings and values. Not thread-safe.
+public final class IncrementalEvaluator {
+
+    // Updates touching more than 1/FULL_PASS of the nodes recompute the whole tree instead
+    private static final int FULL_PASS = 8;
+
+    private final CompiledExpression program;
+    private final int[] bindings;
+    private final int[] size;
+    private final int[] values;
+    private final int[] parent;
+    // LOAD nodes of slot s are leaves[firstLeaf[s] .. firstLeaf[s + 1])
+    private final int[] firstLeaf;
+    private final int[] leaves;
+
+    // Nodes to recompute for the current update, and their values before it
+    private int[] dirty = new int[16];
+    private int[] saved = new int[16];
+    // Node i was queued (changed) during the update numbered queued[i] (changed[i])
+    private final int[] queued;
+    private final int[] changed;
+    private int generation;
+
+    public IncrementalEvaluator(CompiledExpression program, int[] bindings) {
+        if (bindings.length != program.variableCount())
+            throw new IllegalArgumentException("Expected " + program.variableCount() + " bindings, got "
+                    + bindings.length);
+        int n = program.size();
+        this.program = program;
+        this.size = program.subtreeSizes();
+        this.bindings = bindings.clone();
+        this.values = new int[n];
+        this.parent = new int[n];
+        this.queued = new int[n];
+        this.changed = new int[n];
+
+        int slots = program.variableCount();
+        firstLeaf = new int[slots + 1];
+        parent[n - 1] = -1;
+        for (int node = 0; node < n; node++) {
+            byte opcode = program.opcode(node);
+            int arity = CompiledExpression.arity(opcode);
+            if (opcode == CompiledExpression.LOAD)
+                firstLeaf[program.operand(node) + 1]++;
+            if (arity >= 1)
+                parent[node - 1] = node;
+            if (arity == 2)
+                parent[leftOf(node)] = node;
+            values[node] = compute(node);
+        }
+        for (int slot = 0; slot < slots; slot++)
+            firstLeaf[slot + 1] += firstLeaf[slot];
+        leaves = new int[firstLeaf[slots]];
+        int[] next = Arrays.copyOf(firstLeaf, slots);
+        for (int node = 0; node < n; node++) {
+            if (program.opcode(node) == CompiledExpression.LOAD)
+                leaves[next[program.operand(node)]++] = node;
+        }
+    }
+
+    // Value of the whole expression under the current bindings
+    public int value() {
+        return values[values.length - 1];
+    }
+
+    public int get(int slot) {
+        return bindings[slot];
+    }
+
+    public int set(String variable, int value) {
+        int slot = program.slotOf(variable);
+        if (slot < 0)
+            throw new IllegalArgumentException("Undefined variable: '" + variable + "'");
+        return set(slot, value);
+    }
+
+    // Bind slot to value and return the new value of the expression
+    public int set(int slot, int value) {
+        int old = bindings[slot];
+        if (old == value)
+            return value();
+        int count = collect(slot);
+        bindings[slot] = value;
+        if (count < 0) {
+            try {
+                recomputeAll();
+            } catch (ArithmeticException e) {
+                bindings[slot] = old;
+                recomputeAll();
+                throw e;
+            }
+            return value();
+        }
+        int done = 0;
+        try {
+            for (; done < count; done++) {
+                int node = dirty[done];
+                saved[done] = values[node];
+                if (needsUpdate(node)) {
+                    int result = compute(node);
+                    if (result != values[node]) {
+                        values[node] = result;
+                        changed[node] = generation;
+                    }
+                }
+            }
+        } catch (ArithmeticException e) {
+            bindings[slot] = old;
+            for (int i = 0; i < done; i++)
+                values[dirty[i]] = saved[i];
+            throw e;
+        }
+        return value();
+    }
+
+    public CompiledExpression program() {
+        return program;
+    }
+
+    // Queue the leaves of slot and all their ancestors in dirty, sorted so children come
+    // first; -1 when they are more than 1/FULL_PASS of the tree, which one pass recomputes faster
+    private int collect(int slot) {
+        if (++generation == 0) {
+            Arrays.fill(queued, 0);
+            Arrays.fill(changed, 0);
+            generation = 1;
+        }
+        int count = 0;
+        for (int i = firstLeaf[slot]; i < firstLeaf[slot + 1]; i++) {
+            for (int node = leaves[i]; node >= 0 && queued[node] != generation; node = parent[node]) {
+                queued[node] = generation;
+                if (count == dirty.length) {
+                    dirty = Arrays.copyOf(dirty, count * 2);
+                    saved = new int[count * 2];
+                }
+                dirty[count++] = node;
+            }
+            if (count > values.length / FULL_PASS)
+                return -1;
+        }
+        // A single occurrence climbs in program order already
+        if (firstLeaf[slot + 1] - firstLeaf[slot] > 1)
+            Arrays.sort(dirty, 0, count);
+        return count;
+    }
+
+    private void recomputeAll() {
+        for (int node = 0; node < values.length; node++)
+            values[node] = compute(node);
+    }
+
+    private boolean needsUpdate(int node) {
+        return switch (CompiledExpression.arity(program.opcode(node))) {
+            case 0 -> true;
+            case 1 -> changed[node - 1] == generation;
+            default -> changed[node - 1] == generation || changed[leftOf(node)] == generation;
+        };
+    }
+
+    private int leftOf(int node) {
+        return node - 1 - size[node - 1];
+    }
+
+    private int compute(int node) {
+        byte opcode = program.opcode(node);
+        return switch (opcode) {
+            case CompiledExpression.LOAD -> bindings[program.operand(node)];
+            case CompiledExpression.CONST -> program.operand(node);
+            case CompiledExpression.NOT -> ~values[node - 1];
+            default -> CompiledExpression.apply(opcode, values[leftOf(node)], values[node - 1]);
+        };
+    }
+}
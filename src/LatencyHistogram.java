@@ -0,0 +1,112 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free histogram of durations in nanoseconds.
+//
+// Buckets are log-linear: values below 32 get a bucket each, and every power of two
+// above that is split into 16 buckets, so a reported percentile is never more than
+// 1/16 (6.25%) above the true value, and 960 buckets cover the whole long range.
+// Recording is one atomic increment; the counts are striped by thread, so threads
+// recording the same latency at the same time usually hit different cache lines.
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int LINEAR = 2 << SUB_BITS;
+    private static final int BUCKETS = LINEAR + (63 - SUB_BITS - 1) * (1 << SUB_BITS);
+
+    private final AtomicLongArray[] stripes;
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram() {
+        int stripes = Integer.highestOneBit(Math.min(64, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        this.stripes = new AtomicLongArray[stripes];
+        for (int i = 0; i < stripes; i++)
+            this.stripes[i] = new AtomicLongArray(BUCKETS);
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        int stripe = (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 58) & (stripes.length - 1);
+        stripes[stripe].getAndIncrement(bucket(nanos));
+        total.add(nanos);
+        if (nanos > max.get())
+            max.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long count() {
+        long count = 0;
+        for (long bucket : snapshot())
+            count += bucket;
+        return count;
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long count = count();
+        return count == 0 ? 0 : (double) total.sum() / count;
+    }
+
+    // Smallest recorded value v such that a fraction q of all values are <= v (to bucket
+    // precision); 0 when nothing has been recorded
+    public long percentile(double q) {
+        if (q < 0 || q > 1)
+            throw new IllegalArgumentException("Percentile must be between 0 and 1.");
+        long[] counts = snapshot();
+        long count = 0;
+        for (long bucket : counts)
+            count += bucket;
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highest(i), max.get());
+        }
+        return max.get();
+    }
+
+    // Not atomic with respect to concurrent records, which may land on either side
+    public void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++)
+                stripe.set(i, 0);
+        }
+        total.reset();
+        max.set(0);
+    }
+
+    private long[] snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++)
+                counts[i] += stripe.get(i);
+        }
+        return counts;
+    }
+
+    private static int bucket(long value) {
+        if (value < LINEAR)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        return LINEAR + ((exponent - SUB_BITS - 1) << SUB_BITS)
+                + (int) ((value >>> (exponent - SUB_BITS)) & ((1 << SUB_BITS) - 1));
+    }
+
+    // Largest value that falls in bucket
+    private static long highest(int bucket) {
+        if (bucket < LINEAR)
+            return bucket;
+        int exponent = ((bucket - LINEAR) >>> SUB_BITS) + SUB_BITS + 1;
+        long width = 1L << (exponent - SUB_BITS);
+        long lowest = ((1L << SUB_BITS) + ((bucket - LINEAR) & ((1 << SUB_BITS) - 1))) * width;
+        return lowest + width - 1;
+    }
+}
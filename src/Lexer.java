@@ -0,0 +1,199 @@
+import java.nio.ByteBuffer;
+
+// Single-pass lexer shared by every evaluator and converter. It reads a
+// CharSequence (or an ASCII ByteBuffer, without copying it) once, records each
+// token's kind, offset, length and value into a TokenStream, and rejects bad
+// input with the position of the offending character in the same pass.
+//
+// Each module has its own dialect: which operator characters are legal and
+// whether operands are single characters (compact forms like "ab+") or runs of
+// letters and digits separated by spaces or operators ("12 x1 +").
+public final class Lexer {
+
+    // ExpressionEvaluator: single-letter variables, single-digit literals, + - * /
+    public static final Lexer ARITHMETIC = new Lexer("+-*/", false, true, true, false, false);
+    // Converter and StepByStepEvaluatorString: like ARITHMETIC plus ^
+    public static final Lexer CONVERSION = new Lexer("+-*/^", false, true, true, false, false);
+    // BitwiseEvaluator: single-letter variables, multi-digit literals, ~ & | ^ << >>
+    public static final Lexer BITWISE = new Lexer("~&|^", true, true, false, false, false);
+    // ExpressionTreeVisualizer: multi-character operands; numbers are kept as text, so
+    // literals of any size are accepted
+    public static final Lexer TREE = new Lexer("+-*/^", false, false, false, false, false, false);
+    // StepByStepEvaluatorNumeric: multi-digit, signed and decimal numbers
+    public static final Lexer NUMERIC = new Lexer("+-*/", false, false, false, true, true);
+
+    private final String operators;
+    private final boolean shifts;
+    private final boolean singleLetterNames;
+    private final boolean singleDigitNumbers;
+    private final boolean decimals;
+    private final boolean signedNumbers;
+    // Whether integer literals must fit in an int; off where only their text is used
+    private final boolean intValues;
+
+    public Lexer(String operators, boolean shifts, boolean singleLetterNames, boolean singleDigitNumbers,
+            boolean decimals, boolean signedNumbers) {
+        this(operators, shifts, singleLetterNames, singleDigitNumbers, decimals, signedNumbers, !decimals);
+    }
+
+    public Lexer(String operators, boolean shifts, boolean singleLetterNames, boolean singleDigitNumbers,
+            boolean decimals, boolean signedNumbers, boolean intValues) {
+        this.operators = operators;
+        this.shifts = shifts;
+        this.singleLetterNames = singleLetterNames;
+        this.singleDigitNumbers = singleDigitNumbers;
+        this.decimals = decimals;
+        this.signedNumbers = signedNumbers;
+        this.intValues = intValues;
+    }
+
+    public TokenStream tokenize(CharSequence input) {
+        if (input == null)
+            throw new IllegalArgumentException("Expression is empty.");
+        return tokenize(input, 0, input.length());
+    }
+
+    // Tokenize input[from, to) only, for reading a long input a window at a time. Offsets
+    // and error positions stay relative to the whole input, and no token looks past to,
+    // so the caller must cut between tokens.
+    public TokenStream tokenize(CharSequence input, int from, int to) {
+        Telemetry.Span span = Telemetry.start(Telemetry.Operation.LEX, null, input);
+        try {
+            TokenStream tokens = lex(input, from, to);
+            span.finish();
+            return tokens;
+        } catch (RuntimeException e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    private TokenStream lex(CharSequence input, int from, int n) {
+        TokenStream tokens = new TokenStream(input, (n - from) / 2 + 1);
+
+        int i = from;
+        while (i < n) {
+            char c = input.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (isLetter(c)) {
+                int end = i + 1;
+                if (!singleLetterNames) {
+                    while (end < n && isLetterOrDigit(input.charAt(end))) end++;
+                }
+                tokens.add(TokenStream.NAME, i, end - i, 0);
+                i = end;
+            } else if (isDigit(c)
+                    || (signedNumbers && c == '-' && i + 1 < n && isDigit(input.charAt(i + 1))
+                            && (i == from || Character.isWhitespace(input.charAt(i - 1))))) {
+                i = number(input, i, n, tokens);
+            } else if (c == '(') {
+                tokens.add(TokenStream.LPAREN, i, 1, c);
+                i++;
+            } else if (c == ')') {
+                tokens.add(TokenStream.RPAREN, i, 1, c);
+                i++;
+            } else if (shifts && (c == '<' || c == '>') && i + 1 < n && input.charAt(i + 1) == c) {
+                tokens.add(TokenStream.OPERATOR, i, 2, c);
+                i += 2;
+            } else if (operators.indexOf(c) >= 0) {
+                tokens.add(TokenStream.OPERATOR, i, 1, c);
+                i++;
+            } else {
+                throw new IllegalArgumentException("Invalid character '" + c + "' at position " + (i + 1) + ".");
+            }
+        }
+        return tokens;
+    }
+
+    // Tokenize the remaining bytes of an ASCII buffer without copying them
+    public TokenStream tokenize(ByteBuffer input) {
+        return tokenize(new AsciiSequence(input.slice()));
+    }
+
+    private int number(CharSequence input, int start, int n, TokenStream tokens) {
+        int i = start;
+        boolean negative = input.charAt(i) == '-';
+        if (negative) i++;
+
+        long value = 0;
+        boolean fraction = false;
+        do {
+            char c = input.charAt(i);
+            if (c == '.') {
+                fraction = true;
+            } else if (!fraction && value <= (long) Integer.MAX_VALUE + 1) {
+                value = value * 10 + (c - '0');
+                if (value > (long) Integer.MAX_VALUE + 1 && intValues)
+                    throw new IllegalArgumentException("Number too large at position " + (start + 1) + ".");
+            }
+            i++;
+        } while (!singleDigitNumbers && i < n
+                && (isDigit(input.charAt(i)) || (decimals && !fraction && input.charAt(i) == '.'
+                        && i + 1 < n && isDigit(input.charAt(i + 1)))));
+
+        if (!singleDigitNumbers && i < n && isLetter(input.charAt(i))) {
+            // operands such as "2x" in the tree dialect are names
+            if (!singleLetterNames) {
+                while (i < n && isLetterOrDigit(input.charAt(i))) i++;
+                tokens.add(TokenStream.NAME, start, i - start, 0);
+                return i;
+            }
+        }
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+            // Decimal numbers are read as doubles (TokenStream.doubleValue parses the text),
+            // and tree operands are only ever read as text
+            if (intValues)
+                throw new IllegalArgumentException("Number too large at position " + (start + 1) + ".");
+            value = 0;
+        }
+        tokens.add(TokenStream.NUMBER, start, i - start, (int) value);
+        return i;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetterOrDigit(char c) {
+        return isLetter(c) || isDigit(c);
+    }
+
+    // CharSequence view over ASCII bytes
+    private static final class AsciiSequence implements CharSequence {
+        private final ByteBuffer bytes;
+
+        AsciiSequence(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (bytes.get(index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            char[] chars = new char[end - start];
+            for (int i = start; i < end; i++) {
+                chars[i - start] = charAt(i);
+            }
+            return new String(chars);
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
@@ -3,6 +3,27 @@ import java.util.Scanner;
 
 public class Main {
     public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchRunner.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--convert")) {
+            Converter.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--export")) {
+            ExpressionTreeExporter.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--serve")) {
+            try {
+                CalculatorServer.main(java.util.Arrays.copyOfRange(args, 1, args.length));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
         Scanner sc = new Scanner(System.in);
         System.out.println("======== DSA Calculator ========");
         System.out.println("Select operation:");
@@ -10,10 +31,10 @@ public class Main {
         System.out.println("2. Conversions");
         System.out.println("3. Tree Traversing");
         System.out.println("4. Bitwise Operation");
-        // System.out.println("5. History");
         System.out.println("5. Step By Step Evaluation of numeric equations");
         System.out.println("6. Step By Step Evaluation of string equations");
-        System.out.println("7. Exit");
+        System.out.println("7. History");
+        System.out.println("8. Exit");
         System.out.print("Choice of Action: ");
         int choice = sc.nextInt();
         sc.nextLine(); // consume newline
@@ -25,7 +46,8 @@ public class Main {
             case 4 -> BitwiseEvaluator.handle();
             case 5 -> StepByStepEvaluatorNumeric.handle();
             case 6 -> StepByStepEvaluatorString.handle(); 
-            case 7 ->{
+            case 7 -> HistoryStore.handle();
+            case 8 ->{
                 System.out.println("Exiting... Goodbye!");
                 System.exit(0);
             }
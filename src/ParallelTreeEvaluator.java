@@ -0,0 +1,129 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Fork/join evaluation of very large expression trees.
+//
+// The tree is the unoptimized postfix program of the expression: instruction i
+// is a node and its subtree is the contiguous range [i - size[i] + 1, i]. A task
+// for a subtree first walks down from its root looking for nodes whose two
+// children are both at least the cutoff; the left child of such a node is forked
+// as its own task and the walk continues into the right child. Everything else in
+// the range is then evaluated in one linear pass with an explicit operand stack,
+// splicing in the results of the forked subtrees as they are reached.
+//
+// Balanced trees split into independent halves at every level, while deep skewed
+// trees are walked iteratively, so neither recursion nor the thread stack grows
+// with the depth of the expression.
+public final class ParallelTreeEvaluator {
+
+    // Subtrees smaller than this are evaluated sequentially
+    public static final int DEFAULT_CUTOFF = 1 << 14;
+
+    private final CompiledExpression program;
+    private final int[] size;
+    private final int cutoff;
+
+    public ParallelTreeEvaluator(CompiledExpression program) {
+        this(program, DEFAULT_CUTOFF);
+    }
+
+    public ParallelTreeEvaluator(CompiledExpression program, int cutoff) {
+        if (cutoff < 2)
+            throw new IllegalArgumentException("Cutoff must be at least 2.");
+        this.program = program;
+        this.size = program.subtreeSizes();
+        this.cutoff = cutoff;
+    }
+
+    public int evaluate(int[] bindings) {
+        return evaluate(bindings, ForkJoinPool.commonPool());
+    }
+
+    public int evaluate(int[] bindings, ForkJoinPool pool) {
+        SubtreeTask root = new SubtreeTask(bindings, program.size() - 1);
+        if (program.size() < cutoff)
+            return root.compute();
+        return pool.invoke(root);
+    }
+
+    private final class SubtreeTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] bindings;
+        private final int root;
+
+        SubtreeTask(int[] bindings, int root) {
+            this.bindings = bindings;
+            this.root = root;
+        }
+
+        @Override
+        protected Integer compute() {
+            List<SubtreeTask> forks = forkIndependentSubtrees();
+            return evaluateRange(forks);
+        }
+
+        // Walk down from root and fork the left side of every split where both sides are large
+        private List<SubtreeTask> forkIndependentSubtrees() {
+            List<SubtreeTask> forks = new ArrayList<>();
+            if (size[root] < cutoff)
+                return forks;
+
+            int[] pending = new int[16];
+            int top = 0;
+            pending[top++] = root;
+            while (top > 0) {
+                int node = pending[--top];
+                int arity = CompiledExpression.arity(program.opcode(node));
+                if (size[node] < cutoff || arity == 0)
+                    continue;
+                if (top + 2 > pending.length)
+                    pending = Arrays.copyOf(pending, pending.length * 2);
+
+                int right = node - 1;
+                if (arity == 1) {
+                    pending[top++] = right;
+                    continue;
+                }
+                int left = right - size[right];
+                if (size[left] >= cutoff && size[right] >= cutoff) {
+                    SubtreeTask task = new SubtreeTask(bindings, left);
+                    task.fork();
+                    forks.add(task);
+                } else {
+                    pending[top++] = left;
+                }
+                pending[top++] = right;
+            }
+            forks.sort(Comparator.comparingInt(task -> task.root - size[task.root]));
+            return forks;
+        }
+
+        // Linear pass over [root - size + 1, root]; forked ranges are skipped and joined instead
+        private int evaluateRange(List<SubtreeTask> forks) {
+            int[] stack = new int[Math.max(program.maxStackDepth(), 1)];
+            int sp = 0;
+            int next = 0;
+            int nextStart = forks.isEmpty() ? Integer.MAX_VALUE : forks.get(0).start();
+
+            int pc = root - size[root] + 1;
+            while (pc <= root) {
+                int end = Math.min(nextStart, root + 1);
+                sp = program.execute(pc, end, bindings, stack, sp);
+                pc = end;
+                if (pc == nextStart) {
+                    SubtreeTask task = forks.get(next++);
+                    stack[sp++] = task.join();
+                    pc = task.root + 1;
+                    nextStart = next < forks.size() ? forks.get(next).start() : Integer.MAX_VALUE;
+                }
+            }
+            return stack[0];
+        }
+
+        private int start() {
+            return root - size[root] + 1;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+// Group-commit journal for the session logs (input.txt, output.txt).
+//
+// Callers only enqueue: append() puts the text on a lock-free queue and returns.
+// A single daemon appender thread drains the queue, gathers the records per file
+// and writes each file's batch with one channel write once enough text has built
+// up or the oldest record has waited long enough. Files stay open for the life
+// of the journal, and every record is written whole, so concurrent sessions
+// never interleave their lines. A writer() session that grows past the flush size
+// is queued a batch at a time instead (see JournalWriter), so only such long
+// sessions can interleave with others.
+//
+// Tuning (system properties):
+//   dsa.journal.flush.bytes   write once this many characters are pending (default 64K)
+//   dsa.journal.flush.millis  longest a record waits before it is written (default 20)
+//   dsa.journal.sync          none | batch | interval: when to fsync (default none)
+//   dsa.journal.sync.millis   fsync period for the interval policy (default 1000)
+public final class SessionJournal implements Closeable {
+
+    public enum SyncPolicy {
+        NONE,     // leave it to the operating system
+        BATCH,    // fsync after every group commit
+        INTERVAL  // fsync at most once per sync period
+    }
+
+    private static final SessionJournal SHARED = new SessionJournal(
+            Integer.getInteger("dsa.journal.flush.bytes", 64 << 10),
+            Integer.getInteger("dsa.journal.flush.millis", 20),
+            SyncPolicy.valueOf(System.getProperty("dsa.journal.sync", "none").toUpperCase()),
+            Integer.getInteger("dsa.journal.sync.millis", 1000));
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(SHARED::close, "session-journal-shutdown"));
+    }
+
+    private final int flushChars;
+    private final long flushNanos;
+    private final SyncPolicy syncPolicy;
+    private final long syncNanos;
+    private final Charset charset = Charset.defaultCharset();
+
+    private final ConcurrentLinkedQueue<Record> queue = new ConcurrentLinkedQueue<>();
+    private final Thread appender;
+    private volatile boolean idle;
+    private volatile boolean closed;
+
+    // Appender thread state
+    private final Map<String, FileChannel> channels = new HashMap<>();
+    private final Map<String, StringBuilder> pending = new LinkedHashMap<>();
+    private final List<CountDownLatch> waiters = new ArrayList<>();
+    private int pendingChars;
+    private long oldestPending;
+    private long lastSync;
+
+    public SessionJournal(int flushChars, int flushMillis, SyncPolicy syncPolicy, int syncMillis) {
+        this.flushChars = flushChars;
+        this.flushNanos = flushMillis * 1_000_000L;
+        this.syncPolicy = syncPolicy;
+        this.syncNanos = syncMillis * 1_000_000L;
+        this.appender = new Thread(this::run, "session-journal");
+        this.appender.setDaemon(true);
+        this.appender.start();
+    }
+
+    public static SessionJournal shared() {
+        return SHARED;
+    }
+
+    // Queue text to be appended to file; never blocks on I/O
+    public void append(String file, String text) {
+        if (closed)
+            throw new IllegalStateException("Journal is closed.");
+        queue.offer(new Record(file, text, null));
+        if (idle)
+            LockSupport.unpark(appender);
+    }
+
+    // Writer that collects a session's text and queues it as one record when closed, or
+    // in pieces of about the flush size if it grows longer than that
+    public Writer writer(String file) {
+        return new JournalWriter(file);
+    }
+
+    // Block until everything queued before this call has been written
+    public void flush() {
+        if (closed || Thread.currentThread() == appender)
+            return;
+        CountDownLatch done = new CountDownLatch(1);
+        queue.offer(new Record(null, null, done));
+        LockSupport.unpark(appender);
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Write everything still queued and release the files
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        LockSupport.unpark(appender);
+        try {
+            appender.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            boolean stopping = closed;
+            drain();
+            long now = System.nanoTime();
+            if (pendingChars > 0 && (stopping || !waiters.isEmpty() || pendingChars >= flushChars
+                    || now - oldestPending >= flushNanos)) {
+                commit(now);
+            }
+            for (CountDownLatch waiter : waiters)
+                waiter.countDown();
+            waiters.clear();
+
+            if (stopping && queue.isEmpty())
+                break;
+            if (pendingChars > 0) {
+                LockSupport.parkNanos(this, flushNanos - (now - oldestPending));
+            } else {
+                idle = true;
+                if (queue.isEmpty() && !closed)
+                    LockSupport.park(this);
+                idle = false;
+            }
+        }
+        for (FileChannel channel : channels.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing session log: " + e.getMessage());
+            }
+        }
+    }
+
+    // Take records until a batch is full, so a busy queue still gets written regularly
+    private void drain() {
+        Record record;
+        while (pendingChars < flushChars && (record = queue.poll()) != null) {
+            if (record.done != null) {
+                waiters.add(record.done);
+                continue;
+            }
+            if (pendingChars == 0)
+                oldestPending = System.nanoTime();
+            pending.computeIfAbsent(record.file, f -> new StringBuilder()).append(record.text);
+            pendingChars += record.text.length();
+        }
+    }
+
+    // One write per file for everything pending, then fsync according to the policy
+    private void commit(long now) {
+        boolean sync = syncPolicy == SyncPolicy.BATCH
+                || (syncPolicy == SyncPolicy.INTERVAL && now - lastSync >= syncNanos);
+        for (Map.Entry<String, StringBuilder> entry : pending.entrySet()) {
+            StringBuilder text = entry.getValue();
+            if (text.length() == 0)
+                continue;
+            Telemetry.Span span = Telemetry.start(Telemetry.Operation.LOG_IO, "journal", entry.getKey());
+            try {
+                FileChannel channel = channel(entry.getKey());
+                ByteBuffer bytes = charset.encode(text.toString());
+                while (bytes.hasRemaining())
+                    channel.write(bytes);
+                if (sync)
+                    channel.force(false);
+                span.finish();
+            } catch (IOException e) {
+                span.fail(e);
+                System.err.println("Error writing to " + entry.getKey() + ": " + e.getMessage());
+            }
+            text.setLength(0);
+        }
+        if (sync)
+            lastSync = now;
+        pendingChars = 0;
+    }
+
+    private FileChannel channel(String file) throws IOException {
+        FileChannel channel = channels.get(file);
+        if (channel == null) {
+            channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            channels.put(file, channel);
+        }
+        return channel;
+    }
+
+    private static final class Record {
+        final String file;
+        final String text;
+        final CountDownLatch done; // set for flush markers only
+
+        Record(String file, String text, CountDownLatch done) {
+            this.file = file;
+            this.text = text;
+            this.done = done;
+        }
+    }
+
+    // Buffers in memory; flush() keeps buffering so a short session stays one record until
+    // close(). Once flushChars characters have built up they are queued as a record and the
+    // writer waits until they are written, so a session as large as a skewed tree's drawing
+    // never holds more than about flushChars characters in memory.
+    private final class JournalWriter extends Writer {
+        private final String file;
+        private StringBuilder buffer = new StringBuilder();
+
+        JournalWriter(String file) {
+            this.file = file;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            buffer.append(chars, offset, length);
+            if (buffer.length() >= flushChars)
+                spill();
+        }
+
+        @Override
+        public void write(String text, int offset, int length) {
+            buffer.append(text, offset, offset + length);
+            if (buffer.length() >= flushChars)
+                spill();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+            if (buffer.length() > 0) {
+                SessionJournal.this.append(file, buffer.toString());
+                buffer = new StringBuilder();
+            }
+        }
+
+        // A fresh buffer, so one very long write does not stay allocated
+        private void spill() {
+            String text = buffer.toString();
+            buffer = new StringBuilder();
+            SessionJournal.this.append(file, text);
+            SessionJournal.this.flush();
+        }
+    }
+}
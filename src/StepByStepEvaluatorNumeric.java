@@ -6,8 +6,8 @@ public class StepByStepEvaluatorNumeric {
     public static void handle() {
         Scanner scanner = new Scanner(System.in);
         
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("output.txt", true));
-             BufferedWriter inputWriter = new BufferedWriter(new FileWriter("input.txt", true))) {
+        try (BufferedWriter writer = new BufferedWriter(SessionJournal.shared().writer("output.txt"));
+             BufferedWriter inputWriter = new BufferedWriter(SessionJournal.shared().writer("input.txt"))) {
             
             // Get the current timestamp for session start
             String startTime = new Date().toString();
@@ -31,35 +31,99 @@ public class StepByStepEvaluatorNumeric {
             writer.write("Expression Type: " + expressionType + "\n");
             writer.write("Expression: " + expression + "\n");
     
+            Evaluation evaluation;
+            try {
+                evaluation = evaluate(expressionType, expression, StepTrace.LEVEL);
+            } catch (RuntimeException e) {
+                HistoryStore.record("numeric", expressionType, expression, "", error(e));
+                throw e;
+            }
+            writer.write(evaluation.steps());
+            HistoryStore.record("numeric", expressionType, expression, "", evaluation.result());
+    
+            // Output final results to console
+            printOutput(expressionType, expression);
+            writer.write("---------------------------\n\n");
+    
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+
+    // Final value of one expression without the steps; used to replay stored sessions
+    static String result(String expressionType, String expression) {
+        try {
+            return String.valueOf(switch (expressionType) {
+                case "postfix" -> evaluatePostfix(expression);
+                case "prefix" -> evaluatePostfix(convertPrefixToPostfix(expression));
+                case "infix" -> evaluateInfix(expression);
+                default -> throw new IllegalArgumentException("Invalid expression type: " + expressionType);
+            });
+        } catch (RuntimeException e) {
+            return error(e);
+        }
+    }
+
+    // History form of a failed evaluation
+    private static String error(RuntimeException e) {
+        return "Error: " + (e.getMessage() != null ? e.getMessage() : "Invalid expression.");
+    }
+
+    // Steps for one expression, as written to output.txt, and its final value as stored
+    // in the history
+    record Evaluation(String steps, String result) {
+    }
+
+    // Steps for one expression, as written to output.txt
+    static String run(String expressionType, String expression) throws IOException {
+        return run(expressionType, expression, StepTrace.LEVEL);
+    }
+
+    static String run(String expressionType, String expression, StepTrace.Level level) throws IOException {
+        return evaluate(expressionType, expression, level).steps();
+    }
+
+    static Evaluation evaluate(String expressionType, String expression, StepTrace.Level level) throws IOException {
+        Telemetry.Span span = Telemetry.start(Telemetry.Operation.EVALUATE, "steps:" + expressionType, expression);
+        try {
+            Evaluation evaluation = runSteps(expressionType, expression, level);
+            span.finish();
+            return evaluation;
+        } catch (IOException | RuntimeException e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    private static Evaluation runSteps(String expressionType, String expression, StepTrace.Level level)
+            throws IOException {
+        StringWriter steps = new StringWriter();
+        String result;
+        try (BufferedWriter writer = new BufferedWriter(steps)) {
             switch (expressionType) {
                 case "postfix":
-                    postfixToInfix(expression, writer);
-                    evaluatePostfix(expression, writer);
+                    postfixToInfix(expression, writer, level);
+                    result = String.valueOf(evaluatePostfix(expression, writer, level));
                     break;
                 case "prefix":
-                    prefixToInfix(expression, writer);
+                    prefixToInfix(expression, writer, level);
                     String postfix = convertPrefixToPostfix(expression);
                     writer.write("Converted to Postfix: " + postfix + "\n");
-                    evaluatePostfix(postfix, writer);
+                    result = String.valueOf(evaluatePostfix(postfix, writer, level));
                     break;
                 case "infix":
-                    evaluateInfix(expression, writer);
+                    result = String.valueOf(evaluateInfix(expression, writer, level));
                     break;
                 default:
                     writer.write("Invalid expression type. Please use postfix, prefix, or infix.\n");
                     System.out.println("Invalid expression type. Please use postfix, prefix, or infix.");
+                    result = "Error: Invalid expression type: " + expressionType;
                     break;
             }
-    
-            // Output final results to console
-            printOutput(expressionType, expression);
-            writer.write("---------------------------\n\n");
-    
-        } catch (IOException e) {
-            e.printStackTrace();
         }
+        return new Evaluation(steps.toString(), result);
     }
-    
 
     private static void printOutput(String expressionType, String expression) {
         switch (expressionType) {
@@ -80,29 +144,31 @@ public class StepByStepEvaluatorNumeric {
 
     // === Conversion and Evaluation Helpers ===
 
+    // Each helper records its steps as StepTrace events and renders them once it is
+    // done (or has failed), so tracing costs O(1) per token however deep the stack grows.
+    // At Level.OFF the evaluations skip the trace entirely and run on primitive stacks.
+
+    private static final StepTrace.Format CONVERSION_STEPS = steps(" -> Push ", "Stack", "Infix Expression");
+    private static final StepTrace.Format POSTFIX_STEPS = steps(" -> Result: ", "Stack", "Final Result");
+    private static final StepTrace.Format INFIX_STEPS = steps(" -> Result: ", "Values", "Final Result");
+
     public static void postfixToInfix(String postfix, BufferedWriter writer) {
-        Stack<String> stack = new Stack<>();
+        postfixToInfix(postfix, writer, StepTrace.LEVEL);
+    }
 
+    public static void postfixToInfix(String postfix, BufferedWriter writer, StepTrace.Level level) {
         try {
             writer.write("Postfix to Infix Conversion:\n");
-
-            for (char c : postfix.toCharArray()) {
-                if (Character.isDigit(c)) {
-                    stack.push(String.valueOf(c));
-                    writer.write("Push " + c + " -> Stack: " + stack + "\n");
-                } else if (c == ' ' || c == '\t') {
-                    continue;
-                } else {
-                    String b = stack.pop();
-                    String a = stack.pop();
-                    String result = "(" + a + c + b + ")";
-                    stack.push(result);
-                    writer.write(
-                            "Apply " + c + " to " + a + ", " + b + " -> Push " + result + " -> Stack: " + stack + "\n");
-                }
+            StepTrace.Log trace = StepTrace.log(level);
+            Object infix;
+            try {
+                infix = toInfix(Lexer.NUMERIC.tokenize(postfix), false, trace);
+            } finally {
+                trace.render(CONVERSION_STEPS, writer);
             }
-
-            writer.write("Infix Expression: " + stack.pop() + "\n");
+            // Without a trace there is no result event to render it
+            if (level == StepTrace.Level.OFF)
+                writer.write("Infix Expression: " + infix + "\n");
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -110,64 +176,49 @@ public class StepByStepEvaluatorNumeric {
     }
 
     public static void evaluatePostfix(String postfix, BufferedWriter writer) {
-        Stack<Double> stack = new Stack<>();
+        evaluatePostfix(postfix, writer, StepTrace.LEVEL);
+    }
 
+    // Returns the value, or NaN if the steps could not be written
+    public static double evaluatePostfix(String postfix, BufferedWriter writer, StepTrace.Level level) {
+        double result = Double.NaN;
         try {
             writer.write("\nPostfix Evaluation Steps:\n");
-
-            for (String token : postfix.trim().split("\\s+")) {
-                if (token.matches("-?\\d+(\\.\\d+)?")) {
-                    double num = Double.parseDouble(token);
-                    stack.push(num);
-                    writer.write("Push " + num + " -> Stack: " + stack + "\n");
-                } else {
-                    double b = stack.pop();
-                    double a = stack.pop();
-                    double result = switch (token) {
-                        case "+" -> a + b;
-                        case "-" -> a - b;
-                        case "*" -> a * b;
-                        case "/" -> a / b;
-                        default -> throw new IllegalArgumentException("Invalid operator: " + token);
-                    };
-                    stack.push(result);
-                    writer.write("Apply " + token + " to " + a + ", " + b + " -> Result: " + result + " -> Stack: "
-                            + stack + "\n");
+            if (level == StepTrace.Level.OFF) {
+                result = evaluatePostfix(postfix);
+                writer.write("Final Result: " + result + "\n");
+            } else {
+                StepTrace.Log trace = StepTrace.log(level);
+                try {
+                    result = evaluatePostfix(Lexer.NUMERIC.tokenize(postfix), trace);
+                } finally {
+                    trace.render(POSTFIX_STEPS, writer);
                 }
             }
 
-            String finalResult = String.valueOf(stack.pop());
-            writer.write("Final Result: " + finalResult + "\n");
-
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return result;
     }
 
     public static void prefixToInfix(String prefix, BufferedWriter writer) {
-        Stack<String> stack = new Stack<>();
+        prefixToInfix(prefix, writer, StepTrace.LEVEL);
+    }
 
+    public static void prefixToInfix(String prefix, BufferedWriter writer, StepTrace.Level level) {
         try {
             writer.write("Prefix to Infix Conversion:\n");
-
-            for (int i = prefix.length() - 1; i >= 0; i--) {
-                char c = prefix.charAt(i);
-                if (Character.isDigit(c)) {
-                    stack.push(String.valueOf(c));
-                    writer.write("Push " + c + " -> Stack: " + stack + "\n");
-                } else if (c == ' ' || c == '\t') {
-                    continue;
-                } else {
-                    String a = stack.pop();
-                    String b = stack.pop();
-                    String result = "(" + a + c + b + ")";
-                    stack.push(result);
-                    writer.write(
-                            "Apply " + c + " to " + a + ", " + b + " -> Push " + result + " -> Stack: " + stack + "\n");
-                }
+            StepTrace.Log trace = StepTrace.log(level);
+            Object infix;
+            try {
+                infix = toInfix(Lexer.NUMERIC.tokenize(prefix), true, trace);
+            } finally {
+                trace.render(CONVERSION_STEPS, writer);
             }
-
-            writer.write("Infix Expression: " + stack.pop() + "\n");
+            // Without a trace there is no result event to render it
+            if (level == StepTrace.Level.OFF)
+                writer.write("Infix Expression: " + infix + "\n");
 
         } catch (IOException e) {
             e.printStackTrace();
@@ -176,78 +227,253 @@ public class StepByStepEvaluatorNumeric {
 
     public static String convertPrefixToPostfix(String prefix) {
         Stack<String> stack = new Stack<>();
-        for (int i = prefix.length() - 1; i >= 0; i--) {
-            char c = prefix.charAt(i);
-            if (Character.isDigit(c)) {
-                stack.push(String.valueOf(c));
-            } else if (c == ' ' || c == '\t') {
-                continue;
+        TokenStream tokens = Lexer.NUMERIC.tokenize(prefix);
+        for (int i = tokens.size() - 1; i >= 0; i--) {
+            if (tokens.kind(i) == TokenStream.NUMBER) {
+                stack.push(tokens.text(i));
             } else {
                 String a = stack.pop();
                 String b = stack.pop();
-                stack.push(a + " " + b + " " + c);
+                stack.push(a + " " + b + " " + tokens.firstChar(i));
             }
         }
         return stack.pop();
     }
 
     public static void evaluateInfix(String infix, BufferedWriter writer) {
-        Stack<Double> values = new Stack<>();
-        Stack<Character> ops = new Stack<>();
+        evaluateInfix(infix, writer, StepTrace.LEVEL);
+    }
 
+    // Returns the value, or NaN if the steps could not be written
+    public static double evaluateInfix(String infix, BufferedWriter writer, StepTrace.Level level) {
+        double result = Double.NaN;
         try {
             writer.write("\nInfix Evaluation Steps:\n");
+            if (level == StepTrace.Level.OFF) {
+                result = evaluateInfix(infix);
+                writer.write("Final Result: " + result + "\n");
+            } else {
+                StepTrace.Log trace = StepTrace.log(level);
+                try {
+                    result = evaluateInfix(Lexer.NUMERIC.tokenize(infix), trace);
+                } finally {
+                    trace.render(INFIX_STEPS, writer);
+                }
+            }
 
-            for (int i = 0; i < infix.length(); i++) {
-                char c = infix.charAt(i);
-                if (Character.isDigit(c)) {
-                    double val = Character.getNumericValue(c);
-                    values.push(val);
-                    writer.write("Push " + val + " -> Values: " + values + "\n");
-                } else if (c == '(') {
-                    ops.push(c);
-                } else if (c == ')') {
-                    while (!ops.isEmpty() && ops.peek() != '(') {
-                        double b = values.pop();
-                        double a = values.pop();
-                        char op = ops.pop();
-                        double result = applyOperator(op, b, a);
-                        values.push(result);
-                        writer.write("Apply " + op + " to " + a + ", " + b + " -> Result: " + result + " -> Values: "
-                                + values + "\n");
-                    }
-                    ops.pop(); // remove '('
-                } else if (isOperator(c)) {
-                    while (!ops.isEmpty() && precedence(ops.peek()) >= precedence(c)) {
-                        double b = values.pop();
-                        double a = values.pop();
-                        char op = ops.pop();
-                        double result = applyOperator(op, b, a);
-                        values.push(result);
-                        writer.write("Apply " + op + " to " + a + ", " + b + " -> Result: " + result + " -> Values: "
-                                + values + "\n");
-                    }
-                    ops.push(c);
-                    writer.write("Push operator " + c + " -> Ops: " + ops + "\n");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    // Postfix (or, read back to front, prefix) to fully parenthesized infix
+    private static Object toInfix(TokenStream tokens, boolean prefix, StepTrace.Sink trace) {
+        StepTrace.Frame stack = StepTrace.Frame.EMPTY;
+        for (int k = 0; k < tokens.size(); k++) {
+            int i = prefix ? tokens.size() - 1 - k : k;
+            if (tokens.kind(i) == TokenStream.NUMBER) {
+                String c = tokens.text(i);
+                stack = stack.push(c);
+                trace.accept(StepTrace.Step.push(c, stack));
+            } else {
+                char c = tokens.firstChar(i);
+                Object first = stack.peek();
+                stack = stack.pop();
+                Object second = stack.peek();
+                stack = stack.pop();
+                Object a = prefix ? first : second;
+                Object b = prefix ? second : first;
+                StepTrace.Term result = new StepTrace.Term(StepTrace.INFIX_TIGHT, c, a, b);
+                stack = stack.push(result);
+                trace.accept(StepTrace.Step.apply(c, a, b, result, stack));
+            }
+        }
+
+        Object infix = stack.peek();
+        trace.accept(StepTrace.Step.result(infix));
+        return infix;
+    }
+
+    private static double evaluatePostfix(TokenStream tokens, StepTrace.Sink trace) {
+        StepTrace.Frame stack = StepTrace.Frame.EMPTY;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.kind(i) == TokenStream.NUMBER) {
+                Double num = tokens.doubleValue(i);
+                stack = stack.push(num);
+                trace.accept(StepTrace.Step.push(num, stack));
+            } else {
+                Object b = stack.peek();
+                stack = stack.pop();
+                Object a = stack.peek();
+                stack = stack.pop();
+                String token = tokens.text(i);
+                Double result = switch (token) {
+                    case "+" -> (Double) a + (Double) b;
+                    case "-" -> (Double) a - (Double) b;
+                    case "*" -> (Double) a * (Double) b;
+                    case "/" -> (Double) a / (Double) b;
+                    default -> throw new IllegalArgumentException("Invalid operator: " + token);
+                };
+                stack = stack.push(result);
+                trace.accept(StepTrace.Step.apply(token.charAt(0), a, b, result, stack));
+            }
+        }
+
+        Double finalResult = (Double) stack.peek();
+        trace.accept(StepTrace.Step.result(finalResult));
+        return finalResult;
+    }
+
+    private static double evaluateInfix(TokenStream tokens, StepTrace.Sink trace) {
+        StepTrace.Frame values = StepTrace.Frame.EMPTY;
+        StepTrace.Frame ops = StepTrace.Frame.EMPTY;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            char c = tokens.firstChar(i);
+            if (tokens.kind(i) == TokenStream.NUMBER) {
+                Double val = tokens.doubleValue(i);
+                values = values.push(val);
+                trace.accept(StepTrace.Step.push(val, values));
+            } else if (c == '(') {
+                ops = ops.push(c);
+                trace.accept(StepTrace.Step.pushOperator(c, ops));
+            } else if (c == ')') {
+                while (!ops.isEmpty() && (char) ops.peek() != '(') {
+                    char op = (char) ops.peek();
+                    ops = ops.pop();
+                    values = apply(op, values, trace);
+                }
+                Object paren = ops.peek(); // remove '('
+                ops = ops.pop();
+                trace.accept(StepTrace.Step.pop(paren, ops));
+            } else if (isOperator(c)) {
+                while (!ops.isEmpty() && precedence((char) ops.peek()) >= precedence(c)) {
+                    char op = (char) ops.peek();
+                    ops = ops.pop();
+                    values = apply(op, values, trace);
                 }
+                ops = ops.push(c);
+                trace.accept(StepTrace.Step.pushOperator(c, ops));
             }
+        }
+
+        while (!ops.isEmpty()) {
+            char op = (char) ops.peek();
+            ops = ops.pop();
+            values = apply(op, values, trace);
+        }
 
-            while (!ops.isEmpty()) {
-                double b = values.pop();
-                double a = values.pop();
-                char op = ops.pop();
-                double result = applyOperator(op, b, a);
-                values.push(result);
-                writer.write("Apply " + op + " to " + a + ", " + b + " -> Result: " + result + " -> Values: " + values
-                        + "\n");
+        Double finalResult = (Double) values.peek();
+        trace.accept(StepTrace.Step.result(finalResult));
+        return finalResult;
+    }
+
+    // Untraced evaluation for Level.OFF: the same steps and errors as the traced
+    // loops, on primitive stacks sized by the token count
+    static double evaluatePostfix(String postfix) {
+        TokenStream tokens = Lexer.NUMERIC.tokenize(postfix);
+        double[] stack = new double[tokens.size()];
+        int sp = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.kind(i) == TokenStream.NUMBER) {
+                stack[sp++] = tokens.doubleValue(i);
+            } else {
+                if (sp < 2) throw new EmptyStackException();
+                double b = stack[--sp];
+                double a = stack[--sp];
+                if (tokens.kind(i) != TokenStream.OPERATOR)
+                    throw new IllegalArgumentException("Invalid operator: " + tokens.text(i));
+                stack[sp++] = applyOperator(tokens.firstChar(i), b, a);
             }
+        }
 
-            String finalResult = String.valueOf(values.pop());
-            writer.write("Final Result: " + finalResult + "\n");
+        if (sp == 0) throw new EmptyStackException();
+        return stack[sp - 1];
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    static double evaluateInfix(String infix) {
+        TokenStream tokens = Lexer.NUMERIC.tokenize(infix);
+        double[] values = new double[tokens.size()];
+        char[] ops = new char[tokens.size()];
+        int vp = 0;
+        int op = 0;
+
+        for (int i = 0; i < tokens.size(); i++) {
+            char c = tokens.firstChar(i);
+            if (tokens.kind(i) == TokenStream.NUMBER) {
+                values[vp++] = tokens.doubleValue(i);
+            } else if (c == '(') {
+                ops[op++] = c;
+            } else if (c == ')') {
+                while (op > 0 && ops[op - 1] != '(') {
+                    vp = apply(ops[--op], values, vp);
+                }
+                if (op == 0) throw new EmptyStackException();
+                op--; // remove '('
+            } else if (isOperator(c)) {
+                while (op > 0 && precedence(ops[op - 1]) >= precedence(c)) {
+                    vp = apply(ops[--op], values, vp);
+                }
+                ops[op++] = c;
+            }
+        }
+
+        while (op > 0) {
+            vp = apply(ops[--op], values, vp);
         }
+
+        if (vp == 0) throw new EmptyStackException();
+        return values[vp - 1];
+    }
+
+    // Replaces the top two values with a op b; returns the new stack size
+    private static int apply(char op, double[] values, int vp) {
+        if (vp < 2) throw new EmptyStackException();
+        double b = values[--vp];
+        double a = values[--vp];
+        values[vp++] = applyOperator(op, b, a);
+        return vp;
+    }
+
+    // Pops b and a, pushes a op b and reports the step; returns the new value stack
+    private static StepTrace.Frame apply(char op, StepTrace.Frame values, StepTrace.Sink trace) {
+        Object b = values.peek();
+        values = values.pop();
+        Object a = values.peek();
+        values = values.pop();
+        Double result = applyOperator(op, (Double) b, (Double) a);
+        values = values.push(result);
+        trace.accept(StepTrace.Step.apply(op, a, b, result, values));
+        return values;
+    }
+
+    // The step lines of one helper: pushes and applications with the stack after
+    // them, then the final value. Pops and '(' are not shown.
+    private static StepTrace.Format steps(String applied, String stackName, String resultName) {
+        return (step, out) -> {
+            switch (step.kind) {
+                case StepTrace.PUSH -> {
+                    if (step.operator == 0) {
+                        StepTrace.append(out.append("Push "), step.value).append(" -> ").append(stackName).append(": ");
+                        StepTrace.appendStack(out, step.stack).append('\n');
+                    } else if (step.operator != '(') {
+                        out.append("Push operator ").append(step.operator).append(" -> Ops: ");
+                        StepTrace.appendStack(out, step.stack).append('\n');
+                    }
+                }
+                case StepTrace.APPLY -> {
+                    out.append("Apply ").append(step.operator).append(" to ");
+                    StepTrace.append(out, step.left).append(", ");
+                    StepTrace.append(out, step.right).append(applied);
+                    StepTrace.append(out, step.value).append(" -> ").append(stackName).append(": ");
+                    StepTrace.appendStack(out, step.stack).append('\n');
+                }
+                case StepTrace.RESULT -> StepTrace.append(out.append(resultName).append(": "), step.value).append('\n');
+                default -> {
+                }
+            }
+        };
     }
 
     private static boolean isOperator(char c) {
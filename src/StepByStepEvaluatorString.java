@@ -26,51 +26,117 @@ public class StepByStepEvaluatorString {
         String conversionType = scanner.nextLine();
 
         // File setup for input and output
-        BufferedWriter inputWriter = new BufferedWriter(new FileWriter("input.txt"));
-        BufferedWriter outputWriter = new BufferedWriter(new FileWriter("output.txt", true));
+        BufferedWriter inputWriter = new BufferedWriter(SessionJournal.shared().writer("input.txt"));
+        BufferedWriter outputWriter = new BufferedWriter(SessionJournal.shared().writer("output.txt"));
 
         // Writing the input expression to input.txt
         inputWriter.write("Expression: " + expression + "\n");
         inputWriter.write("Conversion Type: " + conversionType + "\n");
         inputWriter.write("--------------------------------------------------\n");
 
-        // Perform conversion based on the type
+        // Perform conversion based on the type, tracing it at the configured level
+        Conversion conversion = convert(expression, conversionType, StepTrace.LEVEL);
+        HistoryStore.record("string", conversionType, expression, "", conversion.result());
+
+        // The steps are rendered once, for the console and for output.txt
+        System.out.print(conversion.steps());
+
+        // Log the conversion result and steps to output.txt
+        logToFiles(expression, conversionType, conversion.result(), inputWriter, outputWriter, conversion.steps());
+
+        // Close the writers
+        inputWriter.close();
+        outputWriter.close();
+    }
+
+    // Converted expression and its rendered step log
+    record Conversion(String result, String steps) {
+    }
+
+    // Converted expression without the step log; used to replay stored sessions
+    static String convert(String expression, String conversionType) {
+        return convert(expression, conversionType, StepTrace.DISCARD);
+    }
+
+    // Conversion traced at level; at Level.OFF no events are built and the steps are empty
+    static Conversion convert(String expression, String conversionType, StepTrace.Level level) {
+        StepTrace.Log trace = StepTrace.log(level);
+        String result = convert(expression, conversionType, trace);
+        return new Conversion(result, level == StepTrace.Level.OFF ? "" : steps(conversionType, trace));
+    }
+
+    private static String convert(String expression, String conversionType, StepTrace.Sink trace) {
+        return Telemetry.time(Telemetry.Operation.CONVERT, conversionType, expression,
+                () -> traceConversion(expression, conversionType, trace));
+    }
+
+    private static String traceConversion(String expression, String conversionType, StepTrace.Sink trace) {
         String result = "";
-        StringBuilder steps = new StringBuilder();
         switch (conversionType) {
             case "Postfix to Infix":
-                result = postfixToInfix(expression, steps, outputWriter);
+                result = postfixToInfix(expression, trace);
                 break;
             case "Prefix to Postfix":
-                result = prefixToPostfix(expression, steps, outputWriter);
+                result = prefixToPostfix(expression, trace);
                 break;
             case "Postfix to Prefix":
-                result = postfixToPrefix(expression, steps, outputWriter);
+                result = postfixToPrefix(expression, trace);
                 break;
             case "Infix to Postfix":
-                result = infixToPostfix(expression, steps, outputWriter);
+                result = infixToPostfix(expression, trace);
                 break;
             case "Infix to Prefix":
-                result = infixToPrefix(expression, steps, outputWriter);
+                result = infixToPrefix(expression, trace);
                 break;
             case "Prefix to Infix":
-                result = prefixToInfix(expression, steps, outputWriter);
+                result = prefixToInfix(expression, trace);
                 break;
             default:
                 System.out.println("Invalid conversion type.");
         }
+        return result;
+    }
 
-        // Log the conversion result and steps to output.txt
-        logToFiles(expression, conversionType, result, inputWriter, outputWriter, steps);
+    // Step log of one conversion: its heading, then a line per operator applied (or
+    // at SUMMARY the totals)
+    private static String steps(String conversionType, StepTrace.Log trace) {
+        StringBuilder steps = new StringBuilder();
+        switch (conversionType) {
+            case "Postfix to Infix", "Prefix to Postfix", "Postfix to Prefix", "Infix to Postfix", "Prefix to Infix":
+                steps.append(conversionType).append(" Conversion Steps:\n");
+                break;
+            case "Infix to Prefix":
+                steps.append("Infix to Prefix Conversion Steps (via reversed infix -> postfix):\n");
+                steps.append("Infix to Postfix Conversion Steps:\n");
+                break;
+            default:
+                return "";
+        }
 
-        // Close the writers
-        inputWriter.close();
-        outputWriter.close();
+        // Prefix input is read back to front, so its steps name the operator first
+        boolean operatorFirst = conversionType.startsWith("Prefix");
+        boolean finalPrefix = conversionType.equals("Infix to Prefix");
+        steps.append(trace.render((step, out) -> {
+            if (step.kind == StepTrace.APPLY) {
+                out.append("Step: ");
+                if (operatorFirst) {
+                    out.append(step.operator).append(" ");
+                    StepTrace.append(out, step.left).append(" ");
+                } else {
+                    StepTrace.append(out, step.left).append(" ").append(step.operator).append(" ");
+                }
+                StepTrace.append(out, step.right).append(" -> ");
+                StepTrace.append(out, step.value).append("\n");
+            } else if (step.kind == StepTrace.RESULT && finalPrefix) {
+                StepTrace.append(out.append("Final Prefix Expression: "), step.value).append("\n");
+            }
+        }));
+        return steps.toString();
     }
 
     // Method to log conversion steps to both console and output file
     private static void logToFiles(String expression, String conversionType, String result,
-            BufferedWriter inputWriter, BufferedWriter outputWriter, StringBuilder steps) throws IOException {
+            BufferedWriter inputWriter, BufferedWriter outputWriter, String steps) throws IOException {
         // Create formatter for full session timestamp format
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss z yyyy");
         String sessionHeader = "--- Session: " + ZonedDateTime.now(ZoneId.systemDefault()).format(formatter) + " ---";
@@ -86,196 +152,146 @@ public class StepByStepEvaluatorString {
         outputWriter.write("Input Expression: " + expression + "\n");
         outputWriter.write("Converted Expression: " + result + "\n");
         outputWriter.write("Steps:\n");
-        outputWriter.write(steps.toString());
+        outputWriter.write(steps);
         outputWriter.write("--------------------------------------------------\n");
     }
 
     // Postfix to Infix Conversion
-    private static String postfixToInfix(String expr, StringBuilder steps, BufferedWriter outputWriter)
-            throws IOException {
-        Stack<String> stack = new Stack<>();
-        steps.append("Postfix to Infix Conversion Steps:\n");
-
-        for (char c : expr.toCharArray()) {
-            if (Character.isLetterOrDigit(c)) {
-                stack.push(String.valueOf(c));
-            } else {
-                String b = stack.pop();
-                String a = stack.pop();
-                String res = "(" + a + " " + c + " " + b + ")";
-                stack.push(res);
-                steps.append("Step: ").append(a).append(" ").append(c).append(" ").append(b)
-                        .append(" -> ").append(res).append("\n");
-            }
-        }
-
-        // Print to console
-        System.out.print(steps);
-        // Log to output file
-        logStepsToFile(steps, outputWriter);
-        return stack.pop();
+    private static String postfixToInfix(String expr, StepTrace.Sink trace) {
+        return rewrite(Lexer.CONVERSION.tokenize(expr), false, StepTrace.INFIX, trace);
     }
 
     // Prefix to Postfix Conversion
-    private static String prefixToPostfix(String expr, StringBuilder steps, BufferedWriter outputWriter)
-            throws IOException {
-        Stack<String> stack = new Stack<>();
-        steps.append("Prefix to Postfix Conversion Steps:\n");
-
-        for (int i = expr.length() - 1; i >= 0; i--) {
-            char c = expr.charAt(i);
-            if (Character.isLetterOrDigit(c)) {
-                stack.push(String.valueOf(c));
-            } else {
-                String a = stack.pop();
-                String b = stack.pop();
-                String res = a + b + c;
-                stack.push(res);
-                steps.append("Step: ").append(c).append(" ").append(a).append(" ").append(b)
-                        .append(" -> ").append(res).append("\n");
-            }
-        }
-
-        // Print to console
-        System.out.print(steps);
-        // Log to output file
-        logStepsToFile(steps, outputWriter);
-        return stack.pop();
+    private static String prefixToPostfix(String expr, StepTrace.Sink trace) {
+        return rewrite(Lexer.CONVERSION.tokenize(expr), true, StepTrace.POSTFIX, trace);
     }
 
     // Postfix to Prefix Conversion
-    private static String postfixToPrefix(String expr, StringBuilder steps, BufferedWriter outputWriter)
-            throws IOException {
-        Stack<String> stack = new Stack<>();
-        steps.append("Postfix to Prefix Conversion Steps:\n");
-
-        for (char c : expr.toCharArray()) {
-            if (Character.isLetterOrDigit(c)) {
-                stack.push(String.valueOf(c));
+    private static String postfixToPrefix(String expr, StepTrace.Sink trace) {
+        return rewrite(Lexer.CONVERSION.tokenize(expr), false, StepTrace.PREFIX, trace);
+    }
+
+    // Prefix to Infix Conversion
+    private static String prefixToInfix(String expr, StepTrace.Sink trace) {
+        return rewrite(Lexer.CONVERSION.tokenize(expr), true, StepTrace.INFIX, trace);
+    }
+
+    // Postfix input (or prefix input, read back to front) rewritten in the given notation.
+    // Each operator combines the two operands on top of the stack into a Term, so a step
+    // costs O(1) no matter how long its operands have grown.
+    private static String rewrite(TokenStream tokens, boolean prefix, byte notation, StepTrace.Sink trace) {
+        StepTrace.Frame stack = StepTrace.Frame.EMPTY;
+        for (int k = 0; k < tokens.size(); k++) {
+            int i = prefix ? tokens.size() - 1 - k : k;
+            if (tokens.isOperand(i)) {
+                String operand = tokens.text(i);
+                stack = stack.push(operand);
+                if (trace != StepTrace.DISCARD)
+                    trace.accept(StepTrace.Step.push(operand, stack));
             } else {
-                String b = stack.pop();
-                String a = stack.pop();
-                String res = c + a + b;
-                stack.push(res);
-                steps.append("Step: ").append(a).append(" ").append(c).append(" ").append(b)
-                        .append(" -> ").append(res).append("\n");
+                char c = tokens.firstChar(i);
+                Object first = stack.peek();
+                stack = stack.pop();
+                Object second = stack.peek();
+                stack = stack.pop();
+                Object a = prefix ? first : second;
+                Object b = prefix ? second : first;
+                StepTrace.Term res = new StepTrace.Term(notation, c, a, b);
+                stack = stack.push(res);
+                if (trace != StepTrace.DISCARD)
+                    trace.accept(StepTrace.Step.apply(c, a, b, res, stack));
             }
         }
 
-        // Print to console
-        System.out.print(steps);
-        // Log to output file
-        logStepsToFile(steps, outputWriter);
-        return stack.pop();
+        String result = stack.peek().toString();
+        if (trace != StepTrace.DISCARD)
+            trace.accept(StepTrace.Step.result(result));
+        return result;
     }
 
     // Infix to Postfix Conversion
-    private static String infixToPostfix(String expr, StringBuilder steps, BufferedWriter outputWriter)
-            throws IOException {
-        Stack<Character> ops = new Stack<>();
-        Stack<String> vals = new Stack<>();
-        steps.append("Infix to Postfix Conversion Steps:\n");
-
-        for (char c : expr.toCharArray()) {
-            if (Character.isLetterOrDigit(c)) {
-                vals.push(String.valueOf(c));
+    private static String infixToPostfix(String expr, StepTrace.Sink trace) {
+        String postfix = infixToPostfix(Lexer.CONVERSION.tokenize(expr), false, trace);
+        if (trace != StepTrace.DISCARD)
+            trace.accept(StepTrace.Step.result(postfix));
+        return postfix;
+    }
+
+    // With reversed set the tokens are read back to front with '(' and ')' swapped (for infix to prefix)
+    private static String infixToPostfix(TokenStream tokens, boolean reversed, StepTrace.Sink trace) {
+        StepTrace.Frame ops = StepTrace.Frame.EMPTY;
+        StepTrace.Frame vals = StepTrace.Frame.EMPTY;
+
+        for (int k = 0; k < tokens.size(); k++) {
+            int i = reversed ? tokens.size() - 1 - k : k;
+            char c = tokens.firstChar(i);
+            if (reversed && c == '(') c = ')';
+            else if (reversed && c == ')') c = '(';
+
+            if (tokens.isOperand(i)) {
+                String operand = tokens.text(i);
+                vals = vals.push(operand);
+                if (trace != StepTrace.DISCARD)
+                    trace.accept(StepTrace.Step.push(operand, vals));
             } else if (c == '(') {
-                ops.push(c);
+                ops = ops.push(c);
+                if (trace != StepTrace.DISCARD)
+                    trace.accept(StepTrace.Step.pushOperator(c, ops));
             } else if (c == ')') {
-                while (!ops.isEmpty() && ops.peek() != '(') {
-                    vals.push(applyOperator(ops.pop(), vals, steps));
+                while (!ops.isEmpty() && (char) ops.peek() != '(') {
+                    char op = (char) ops.peek();
+                    ops = ops.pop();
+                    vals = applyOperator(op, vals, trace);
                 }
-                ops.pop();
+                Object paren = ops.peek();
+                ops = ops.pop();
+                if (trace != StepTrace.DISCARD)
+                    trace.accept(StepTrace.Step.pop(paren, ops));
             } else {
-                while (!ops.isEmpty() && precedence(c) <= precedence(ops.peek())) {
-                    vals.push(applyOperator(ops.pop(), vals, steps));
+                while (!ops.isEmpty() && precedence(c) <= precedence((char) ops.peek())) {
+                    char op = (char) ops.peek();
+                    ops = ops.pop();
+                    vals = applyOperator(op, vals, trace);
                 }
-                ops.push(c);
+                ops = ops.push(c);
+                if (trace != StepTrace.DISCARD)
+                    trace.accept(StepTrace.Step.pushOperator(c, ops));
             }
         }
 
         while (!ops.isEmpty()) {
-            vals.push(applyOperator(ops.pop(), vals, steps));
+            char op = (char) ops.peek();
+            ops = ops.pop();
+            vals = applyOperator(op, vals, trace);
         }
 
-        // Print to console
-        System.out.print(steps);
-        // Log to output file
-        logStepsToFile(steps, outputWriter);
-        return vals.pop();
+        return vals.peek().toString();
     }
 
     // Infix to Prefix Conversion
-    private static String infixToPrefix(String expr, StringBuilder steps, BufferedWriter outputWriter)
-            throws IOException {
-        // Reverse the expression and change parentheses
-        StringBuilder reversed = new StringBuilder(expr).reverse();
-        for (int i = 0; i < reversed.length(); i++) {
-            char c = reversed.charAt(i);
-            if (c == '(')
-                reversed.setCharAt(i, ')');
-            else if (c == ')')
-                reversed.setCharAt(i, '(');
-        }
-
-        // Generate the postfix expression from the reversed infix
-        StringBuilder postfixSteps = new StringBuilder();
-        String postfix = infixToPostfix(reversed.toString(), postfixSteps, outputWriter);
-
-        // Log the postfix steps generated from reversed infix
-        steps.append("Infix to Prefix Conversion Steps (via reversed infix -> postfix):\n");
-        steps.append(postfixSteps);
+    private static String infixToPrefix(String expr, StepTrace.Sink trace) {
+        // Generate the postfix expression from the reversed infix (tokens read back to front, parentheses swapped)
+        String postfix = infixToPostfix(Lexer.CONVERSION.tokenize(expr), true, trace);
 
         // Reverse the postfix expression to get the prefix result
         String prefix = new StringBuilder(postfix).reverse().toString();
-
-        // Log the final prefix
-        steps.append("Final Prefix Expression: ").append(prefix).append("\n");
+        if (trace != StepTrace.DISCARD)
+            trace.accept(StepTrace.Step.result(prefix));
 
         return prefix;
     }
 
-    // Prefix to Infix Conversion
-    private static String prefixToInfix(String expr, StringBuilder steps, BufferedWriter outputWriter)
-            throws IOException {
-        Stack<String> stack = new Stack<>();
-        steps.append("Prefix to Infix Conversion Steps:\n");
-
-        for (int i = expr.length() - 1; i >= 0; i--) {
-            char c = expr.charAt(i);
-            if (Character.isLetterOrDigit(c)) {
-                stack.push(String.valueOf(c));
-            } else {
-                String a = stack.pop();
-                String b = stack.pop();
-                String res = "(" + a + " " + c + " " + b + ")";
-                stack.push(res);
-                steps.append("Step: ").append(c).append(" ").append(a).append(" ").append(b)
-                        .append(" -> ").append(res).append("\n");
-            }
-        }
-
-        // Print to console
-        System.out.print(steps);
-        // Log to output file
-        logStepsToFile(steps, outputWriter);
-        return stack.pop();
-    }
-
-    // Helper method to log steps to file
-    private static void logStepsToFile(StringBuilder steps, BufferedWriter outputWriter) throws IOException {
-        outputWriter.write(steps.toString());
-    }
-
-    // Helper method to apply operator during infix to postfix conversion
-    private static String applyOperator(char operator, Stack<String> vals, StringBuilder steps) {
-        String b = vals.pop();
-        String a = vals.pop();
-        String result = a + b + operator;
-        vals.push(result);
-        steps.append("Step: ").append(a).append(" ").append(operator).append(" ").append(b)
-                .append(" -> ").append(result).append("\n");
-        return result;
+    // Helper method to apply operator during infix to postfix conversion; returns the new value stack
+    private static StepTrace.Frame applyOperator(char operator, StepTrace.Frame vals, StepTrace.Sink trace) {
+        Object b = vals.peek();
+        vals = vals.pop();
+        Object a = vals.peek();
+        vals = vals.pop();
+        StepTrace.Term result = new StepTrace.Term(StepTrace.POSTFIX, operator, a, b);
+        vals = vals.push(result);
+        if (trace != StepTrace.DISCARD)
+            trace.accept(StepTrace.Step.apply(operator, a, b, result, vals));
+        return vals;
     }
 
     // Helper method to determine precedence of operators
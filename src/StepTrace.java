@@ -0,0 +1,381 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+// Structured step traces for the step-by-step evaluators.
+//
+// An evaluator reports what it does as small typed events - push, pop, apply and
+// result - to a Sink instead of formatting text as it goes. Each event carries the
+// stack it changed. Stacks are persistent: a push makes one new frame on top of
+// the frames below, which are shared and never copied, so the evaluator works on
+// the same frames it reports and a snapshot is a single reference. Operands that
+// conversions build up are Terms pointing at their two parts, so combining them is
+// O(1) as well. Tracing n tokens therefore costs O(n) time and memory whatever the
+// depth of the stacks; text is only produced when a Recorder renders its events.
+//
+// A Recorder keeps every event, or only the last N in a ring buffer, and renders
+// them through a Format supplied by the evaluator. A full rendering repeats the
+// stack on every line, so its size grows with the square of the stack depth; the
+// ring buffer and a width limit keep it linear.
+//
+// Evaluators take a Level. FULL records every event; SUMMARY only counts them
+// (Summary) and writes the totals, the deepest stack and the result; OFF records
+// nothing: the numeric evaluator then runs an untraced loop on primitive stacks, and
+// the string evaluator builds no events for DISCARD.
+//
+// Tuning (system properties):
+//   dsa.trace.level  off | summary | full: level used when none is given (default full)
+//   dsa.trace.last   keep only the last N events (default 0: keep all)
+//   dsa.trace.width  cut operands, values and stacks in the rendered text to about
+//                    N characters (default: unlimited)
+final class StepTrace {
+
+    // Event kinds
+    static final byte PUSH = 0;
+    static final byte POP = 1;
+    static final byte APPLY = 2;
+    static final byte RESULT = 3;
+
+    // How a Term is written
+    static final byte INFIX = 0;        // (a + b)
+    static final byte INFIX_TIGHT = 1;  // (a+b)
+    static final byte POSTFIX = 2;      // ab+
+    static final byte PREFIX = 3;       // +ab
+
+    // Events kept by recorder(); 0 keeps all of them
+    private static final int LAST = Integer.getInteger("dsa.trace.last", 0);
+    // Longest operand, value or stack written per step, in characters
+    private static final int WIDTH = Integer.getInteger("dsa.trace.width", Integer.MAX_VALUE);
+
+    enum Level {
+        OFF,      // no events, no text
+        SUMMARY,  // event totals, deepest stack and the result
+        FULL      // every step
+    }
+
+    // Level used when none is given
+    static final Level LEVEL = Level.valueOf(System.getProperty("dsa.trace.level", "full").toUpperCase());
+
+    // Log that drops every event and renders nothing, for callers that only want the result
+    static final Log DISCARD = new Log() {
+        @Override
+        public void accept(Step step) {
+        }
+
+        @Override
+        public void render(Format format, Appendable out) {
+        }
+    };
+
+    private StepTrace() {
+    }
+
+    interface Sink {
+        void accept(Step step);
+    }
+
+    // A sink that can write out what it has received
+    interface Log extends Sink {
+        void render(Format format, Appendable out) throws IOException;
+
+        default String render(Format format) {
+            StringBuilder out = new StringBuilder();
+            try {
+                render(format, out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toString();
+        }
+    }
+
+    // Renders one event as zero or more complete lines
+    interface Format {
+        void render(Step step, StringBuilder out);
+    }
+
+    static Recorder recorder() {
+        return new Recorder(LAST);
+    }
+
+    static Log log(Level level) {
+        return switch (level) {
+            case OFF -> DISCARD;
+            case SUMMARY -> new Summary();
+            case FULL -> recorder();
+        };
+    }
+
+    // One node of a persistent stack; EMPTY is the bottom of every stack
+    static final class Frame {
+        static final Frame EMPTY = new Frame(null, null, 0);
+
+        final Object value;
+        final Frame below;
+        final int depth;
+
+        private Frame(Object value, Frame below, int depth) {
+            this.value = value;
+            this.below = below;
+            this.depth = depth;
+        }
+
+        Frame push(Object value) {
+            return new Frame(value, this, depth + 1);
+        }
+
+        Frame pop() {
+            if (this == EMPTY) throw new EmptyStackException();
+            return below;
+        }
+
+        Object peek() {
+            if (this == EMPTY) throw new EmptyStackException();
+            return value;
+        }
+
+        boolean isEmpty() {
+            return this == EMPTY;
+        }
+    }
+
+    // An operator applied to two operands (Strings or Terms), written out only when rendered
+    static final class Term {
+        final byte notation;
+        final char operator;
+        final Object left;
+        final Object right;
+        final int length;
+
+        Term(byte notation, char operator, Object left, Object right) {
+            this.notation = notation;
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+            int parts = length(left) + length(right) + 1;
+            this.length = switch (notation) {
+                case INFIX -> parts + 4;
+                case INFIX_TIGHT -> parts + 2;
+                default -> parts;
+            };
+        }
+
+        static int length(Object operand) {
+            return operand instanceof Term term ? term.length : operand.toString().length();
+        }
+
+        // Iterative, so a term nested 100k deep renders without deep recursion. Stops
+        // with "..." once limit characters are written.
+        void appendTo(StringBuilder out, int limit) {
+            int end = out.length() + Math.min(length, limit);
+            out.ensureCapacity(end);
+            ArrayDeque<Object> pending = new ArrayDeque<>();
+            pending.push(this);
+            while (!pending.isEmpty() && out.length() < end) {
+                Object next = pending.pop();
+                if (!(next instanceof Term term)) {
+                    out.append(next);
+                    continue;
+                }
+                switch (term.notation) {
+                    case INFIX -> {
+                        out.append('(');
+                        pending.push(')');
+                        pending.push(term.right);
+                        pending.push(' ');
+                        pending.push(term.operator);
+                        pending.push(' ');
+                        pending.push(term.left);
+                    }
+                    case INFIX_TIGHT -> {
+                        out.append('(');
+                        pending.push(')');
+                        pending.push(term.right);
+                        pending.push(term.operator);
+                        pending.push(term.left);
+                    }
+                    case POSTFIX -> {
+                        pending.push(term.operator);
+                        pending.push(term.right);
+                        pending.push(term.left);
+                    }
+                    default -> {
+                        out.append(term.operator);
+                        pending.push(term.right);
+                        pending.push(term.left);
+                    }
+                }
+            }
+            if (length > limit) {
+                out.setLength(end);
+                out.append("...");
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(length);
+            appendTo(out, Integer.MAX_VALUE);
+            return out.toString();
+        }
+    }
+
+    // One event. Operands and values are Doubles, Strings or Terms; stack is the
+    // stack the event changed, as it was right after the event.
+    static final class Step {
+        final byte kind;
+        final char operator;
+        final Object left;
+        final Object right;
+        final Object value;
+        final Frame stack;
+
+        private Step(byte kind, char operator, Object left, Object right, Object value, Frame stack) {
+            this.kind = kind;
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+            this.value = value;
+            this.stack = stack;
+        }
+
+        static Step push(Object value, Frame stack) {
+            return new Step(PUSH, (char) 0, null, null, value, stack);
+        }
+
+        // An operator pushed onto an operator stack
+        static Step pushOperator(char operator, Frame stack) {
+            return new Step(PUSH, operator, null, null, null, stack);
+        }
+
+        static Step pop(Object value, Frame stack) {
+            return new Step(POP, (char) 0, null, null, value, stack);
+        }
+
+        static Step apply(char operator, Object left, Object right, Object value, Frame stack) {
+            return new Step(APPLY, operator, left, right, value, stack);
+        }
+
+        static Step result(Object value) {
+            return new Step(RESULT, (char) 0, null, null, value, Frame.EMPTY);
+        }
+    }
+
+    // Appends an operand or value the way String.valueOf would, expanding Terms;
+    // anything longer than the trace width is cut short with "..."
+    static StringBuilder append(StringBuilder out, Object value) {
+        if (value instanceof Term term) {
+            term.appendTo(out, WIDTH);
+        } else {
+            String text = String.valueOf(value);
+            if (text.length() <= WIDTH) out.append(text);
+            else out.append(text, 0, WIDTH).append("...");
+        }
+        return out;
+    }
+
+    // Appends a stack bottom to top, formatted like java.util.Stack: [a, b, c]. Only
+    // as many values from the top as fit the trace width are shown: [..., b, c]
+    static StringBuilder appendStack(StringBuilder out, Frame stack) {
+        int shown = 0;
+        long width = 0;
+        Frame frame = stack;
+        for (; !frame.isEmpty() && (shown == 0 || width < WIDTH); frame = frame.below) {
+            width += Term.length(frame.value) + 2;
+            shown++;
+        }
+        out.append('[');
+        if (!frame.isEmpty()) out.append("..., ");
+        Object[] values = new Object[shown];
+        frame = stack;
+        for (int i = shown - 1; i >= 0; i--, frame = frame.below)
+            values[i] = frame.value;
+        for (int i = 0; i < shown; i++) {
+            if (i > 0) out.append(", ");
+            append(out, values[i]);
+        }
+        return out.append(']');
+    }
+
+    // Keeps events in arrival order, all of them or the last capacity in a ring
+    static final class Recorder implements Log {
+        // Characters rendered before they are handed to the output
+        private static final int RENDER_CHUNK = 8 << 10;
+
+        private final int capacity;
+        private Step[] steps;
+        private long count;
+
+        Recorder(int capacity) {
+            if (capacity < 0)
+                throw new IllegalArgumentException("Trace capacity must not be negative.");
+            this.capacity = capacity;
+            this.steps = new Step[capacity > 0 ? capacity : 64];
+        }
+
+        @Override
+        public void accept(Step step) {
+            if (capacity > 0) {
+                steps[(int) (count % capacity)] = step;
+            } else {
+                if (count == steps.length) steps = Arrays.copyOf(steps, steps.length * 2);
+                steps[(int) count] = step;
+            }
+            count++;
+        }
+
+        // Events received, including any the ring no longer holds
+        long count() {
+            return count;
+        }
+
+        int kept() {
+            return (int) Math.min(count, steps.length);
+        }
+
+        @Override
+        public void render(Format format, Appendable out) throws IOException {
+            long dropped = count - kept();
+            if (dropped > 0)
+                out.append("... ").append(Long.toString(dropped)).append(" earlier steps not kept\n");
+            StringBuilder text = new StringBuilder();
+            int first = capacity > 0 && dropped > 0 ? (int) (count % capacity) : 0;
+            for (int i = 0; i < kept(); i++) {
+                format.render(steps[(first + i) % steps.length], text);
+                if (text.length() >= RENDER_CHUNK) {
+                    out.append(text);
+                    text.setLength(0);
+                }
+            }
+            out.append(text);
+        }
+    }
+
+    // Counts events by kind and tracks the deepest stack; keeps only the result event
+    static final class Summary implements Log {
+        private final long[] counts = new long[RESULT + 1];
+        private int maxDepth;
+        private Step result;
+
+        @Override
+        public void accept(Step step) {
+            counts[step.kind]++;
+            if (step.stack.depth > maxDepth) maxDepth = step.stack.depth;
+            if (step.kind == RESULT) result = step;
+        }
+
+        @Override
+        public void render(Format format, Appendable out) throws IOException {
+            StringBuilder text = new StringBuilder();
+            text.append("Summary: ").append(counts[PUSH] + counts[POP] + counts[APPLY]).append(" steps (pushes ")
+                    .append(counts[PUSH]).append(", pops ")
+                    .append(counts[POP]).append(", operators applied ")
+                    .append(counts[APPLY]).append("), max stack depth ")
+                    .append(maxDepth).append('\n');
+            if (result != null) format.render(result, text);
+            out.append(text);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.*;
+
+// Evaluates an expression while reading it, for machine-generated input too large
+// to hold as a String (multi-gigabyte files, pipes, sockets).
+//
+// Input is read CHUNK characters at a time and never kept: memory grows with the
+// deepest nesting of the expression, not with its length. Every token of the
+// ExpressionEvaluator dialect is one character, so each notation is a single
+// forward pass:
+//   postfix  an operand stack
+//   prefix   operators wait on a pending stack until both of their operands are
+//            known (the same pending-operator scheme CompiledExpression.compilePrefix
+//            uses), so the input is never read backwards
+//   infix    Shunting Yard with an operator stack and an operand stack
+// Arithmetic, variables and errors are those of ExpressionEvaluator, except that
+// malformed input is reported where it is found, since the whole expression is never
+// seen at once; positions are counted in characters from 1 and may exceed int range.
+//
+//     try (FileChannel file = FileChannel.open(path)) {
+//         int result = StreamingEvaluator.evaluate(file, 3, vars);
+//     }
+public final class StreamingEvaluator {
+
+    private static final String[] NOTATIONS = { null, "infix", "prefix", "postfix" };
+    // Characters read per chunk
+    private static final int CHUNK = 1 << 16;
+
+    private final int choice;
+    private final int[] variables = new int[128];
+    private final boolean[] bound = new boolean[128];
+
+    private long position;
+    // Operand stack; in prefix, the left operands of pending operators
+    private int[] values = new int[64];
+    private int sp;
+    // Pending operators: opcodes in prefix, operator characters and '(' in infix
+    private byte[] operators = new byte[64];
+    private boolean[] leftDone = new boolean[64];
+    private int top;
+    private boolean complete;
+
+    private StreamingEvaluator(int choice, Map<Character, Integer> vars) {
+        if (choice < 1 || choice > 3) throw new IllegalArgumentException("Invalid choice");
+        this.choice = choice;
+        for (Map.Entry<Character, Integer> entry : vars.entrySet()) {
+            char name = entry.getKey();
+            if (name < 128) {
+                variables[name] = entry.getValue();
+                bound[name] = true;
+            }
+        }
+    }
+
+    // choice 1 = infix, 2 = prefix, 3 = postfix
+    public static int evaluate(Reader in, int choice, Map<Character, Integer> vars) throws IOException {
+        StreamingEvaluator evaluator = new StreamingEvaluator(choice, vars);
+        Telemetry.Span span = Telemetry.start(Telemetry.Operation.EVALUATE, "stream:" + NOTATIONS[choice], null);
+        try {
+            char[] chunk = new char[CHUNK];
+            int n;
+            while ((n = in.read(chunk)) >= 0)
+                evaluator.scan(chunk, n);
+            int result = evaluator.finish();
+            span.finish();
+            return result;
+        } catch (IOException | RuntimeException e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    // ASCII (or Latin-1) bytes; an InputStream is read without a charset decoder
+    public static int evaluate(InputStream in, int choice, Map<Character, Integer> vars) throws IOException {
+        StreamingEvaluator evaluator = new StreamingEvaluator(choice, vars);
+        Telemetry.Span span = Telemetry.start(Telemetry.Operation.EVALUATE, "stream:" + NOTATIONS[choice], null);
+        try {
+            byte[] bytes = new byte[CHUNK];
+            char[] chunk = new char[CHUNK];
+            int n;
+            while ((n = in.read(bytes)) >= 0)
+                evaluator.scan(chunk, latin1(bytes, 0, n, chunk));
+            int result = evaluator.finish();
+            span.finish();
+            return result;
+        } catch (IOException | RuntimeException e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    // ASCII bytes from a channel such as a FileChannel, read into one direct buffer
+    public static int evaluate(ReadableByteChannel in, int choice, Map<Character, Integer> vars)
+            throws IOException {
+        StreamingEvaluator evaluator = new StreamingEvaluator(choice, vars);
+        Telemetry.Span span = Telemetry.start(Telemetry.Operation.EVALUATE, "stream:" + NOTATIONS[choice], null);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK);
+            byte[] bytes = new byte[CHUNK];
+            char[] chunk = new char[CHUNK];
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                int n = buffer.remaining();
+                buffer.get(bytes, 0, n);
+                buffer.clear();
+                evaluator.scan(chunk, latin1(bytes, 0, n, chunk));
+            }
+            int result = evaluator.finish();
+            span.finish();
+            return result;
+        } catch (IOException | RuntimeException e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    private static int latin1(byte[] bytes, int from, int n, char[] chars) {
+        for (int i = 0; i < n; i++)
+            chars[i] = (char) (bytes[from + i] & 0xFF);
+        return n;
+    }
+
+    private void scan(char[] chunk, int n) {
+        for (int i = 0; i < n; i++) {
+            char c = chunk[i];
+            position++;
+            if (c == ' ' || Character.isWhitespace(c))
+                continue;
+            if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z') {
+                if (!bound[c])
+                    throw new IllegalArgumentException("Undefined variable: '" + c + "'");
+                operand(variables[c]);
+            } else if (c >= '0' && c <= '9') {
+                operand(c - '0');
+            } else if (c == '(' || c == ')') {
+                if (choice != 1)
+                    throw new IllegalArgumentException("Unsupported operator: " + c);
+                parenthesis(c);
+            } else if (c == '+' || c == '-' || c == '*' || c == '/') {
+                operator(c);
+            } else {
+                throw new IllegalArgumentException("Invalid character '" + c + "' at position " + position + ".");
+            }
+        }
+    }
+
+    private void operand(int value) {
+        if (choice != 2) {
+            push(value);
+            return;
+        }
+        if (complete)
+            throw new IllegalArgumentException("Invalid expression.");
+        // Each completed operand finishes every pending operator whose left side is already known
+        while (top > 0 && leftDone[top - 1]) {
+            top--;
+            value = CompiledExpression.apply(operators[top], values[--sp], value);
+        }
+        if (top == 0) {
+            complete = true;
+            push(value);
+        } else {
+            leftDone[top - 1] = true;
+            push(value);
+        }
+    }
+
+    private void operator(char c) {
+        byte opcode = CompiledExpression.opcodeOf(c);
+        switch (choice) {
+            case 3 -> reduce(opcode);
+            case 2 -> {
+                if (complete)
+                    throw new IllegalArgumentException("Invalid expression.");
+                pushOperator(opcode);
+            }
+            default -> {
+                while (top > 0 && operators[top - 1] != '(' && precedence(opcode) <= precedence(operators[top - 1]))
+                    reduce(operators[--top]);
+                pushOperator(opcode);
+            }
+        }
+    }
+
+    // Infix only
+    private void parenthesis(char c) {
+        if (c == '(') {
+            pushOperator((byte) '(');
+            return;
+        }
+        while (top > 0 && operators[top - 1] != '(')
+            reduce(operators[--top]);
+        if (top == 0) throw new IllegalArgumentException("Mismatched parentheses.");
+        top--; // pop '('
+    }
+
+    private int finish() {
+        if (position == 0 || choice != 1 && sp == 0 && top == 0)
+            throw new IllegalArgumentException("Expression is empty.");
+        if (choice == 1) {
+            while (top > 0) {
+                byte opcode = operators[--top];
+                if (opcode == '(') throw new IllegalArgumentException("Mismatched parentheses.");
+                reduce(opcode);
+            }
+            if (sp == 0) throw new IllegalArgumentException("Expression is empty.");
+        }
+        if (choice == 2 && top != 0)
+            throw new IllegalArgumentException("Insufficient operands.");
+        if (sp != 1)
+            throw new IllegalArgumentException("Invalid number of operands/operators.");
+        return values[0];
+    }
+
+    private void reduce(byte opcode) {
+        if (sp < 2) throw new IllegalArgumentException("Insufficient operands.");
+        sp--;
+        values[sp - 1] = CompiledExpression.apply(opcode, values[sp - 1], values[sp]);
+    }
+
+    private void push(int value) {
+        if (sp == values.length)
+            values = Arrays.copyOf(values, sp * 2);
+        values[sp++] = value;
+    }
+
+    private void pushOperator(byte opcode) {
+        if (top == operators.length) {
+            operators = Arrays.copyOf(operators, top * 2);
+            leftDone = Arrays.copyOf(leftDone, top * 2);
+        }
+        operators[top] = opcode;
+        leftDone[top] = false;
+        top++;
+    }
+
+    private static int precedence(byte opcode) {
+        return switch (opcode) {
+            case CompiledExpression.ADD, CompiledExpression.SUB -> 1;
+            case CompiledExpression.MUL, CompiledExpression.DIV -> 2;
+            default -> -1;
+        };
+    }
+}
@@ -0,0 +1,251 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Timing of every calculator operation, for profiling in production.
+//
+// Each operation (lexing, parsing, conversion, evaluation, tree layout, log I/O) is
+// timed as a Span, which is also a JDK Flight Recorder event (dsa.Lex, dsa.Parse, ...
+// in the "DSA Calculator" category). While no recording is running the event is never
+// written and its allocation is usually optimized away.
+//
+// Every span is counted, but reading the clock costs more than a cached evaluation, so
+// only one span in -Ddsa.telemetry.sample (default 16, 1 times them all) is timed into
+// the operation's LatencyHistogram; spans whose event is being recorded are always timed.
+// The histograms and counters are published over JMX as one MXBean per operation,
+// dsa.calculator:type=Operation,name=<operation>, with Count, Errors, and mean, p50, p99,
+// p999 and max sampled latency in microseconds, plus a reset operation. -Ddsa.jmx=false
+// skips the registration.
+//
+//     Telemetry.Span span = Telemetry.start(Telemetry.Operation.PARSE, "infix", expression);
+//     try {
+//         ... span.finish();
+//     } catch (RuntimeException e) {
+//         span.fail(e);
+//         throw e;
+//     }
+public final class Telemetry {
+
+    // Longest subject copied into a Flight Recorder event
+    private static final int SUBJECT_CHARS = 256;
+    // One span in SAMPLE is timed
+    private static final int SAMPLE = Math.max(1, Integer.getInteger("dsa.telemetry.sample", 16));
+
+    private Telemetry() {
+    }
+
+    // Per-operation statistics as seen over JMX; latencies in microseconds
+    public interface OperationMXBean {
+        long getCount();
+
+        long getErrors();
+
+        double getMeanMicros();
+
+        double getP50Micros();
+
+        double getP99Micros();
+
+        double getP999Micros();
+
+        double getMaxMicros();
+
+        void reset();
+    }
+
+    public enum Operation implements OperationMXBean {
+        LEX("Lex"), PARSE("Parse"), CONVERT("Convert"), EVALUATE("Evaluate"), TREE_LAYOUT("TreeLayout"),
+        LOG_IO("LogIO");
+
+        private final String label;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        public LatencyHistogram latency() {
+            return latency;
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+
+        @Override
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        @Override
+        public double getMeanMicros() {
+            return latency.mean() / 1e3;
+        }
+
+        @Override
+        public double getP50Micros() {
+            return latency.percentile(0.5) / 1e3;
+        }
+
+        @Override
+        public double getP99Micros() {
+            return latency.percentile(0.99) / 1e3;
+        }
+
+        @Override
+        public double getP999Micros() {
+            return latency.percentile(0.999) / 1e3;
+        }
+
+        @Override
+        public double getMaxMicros() {
+            return latency.max() / 1e3;
+        }
+
+        @Override
+        public void reset() {
+            latency.reset();
+            count.reset();
+            errors.reset();
+        }
+    }
+
+    static {
+        if (Boolean.parseBoolean(System.getProperty("dsa.jmx", "true"))) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                for (Operation operation : Operation.values()) {
+                    ObjectName name = new ObjectName("dsa.calculator:type=Operation,name=" + operation.label);
+                    if (!server.isRegistered(name))
+                        server.registerMBean(operation, name);
+                }
+            } catch (JMException | SecurityException e) {
+                System.err.println("Telemetry is not available over JMX: " + e.getMessage());
+            }
+        }
+    }
+
+    // Start timing operation on subject (an expression, file name, ...); notation may be null
+    public static Span start(Operation operation, String notation, CharSequence subject) {
+        Span span = switch (operation) {
+            case LEX -> new LexEvent();
+            case PARSE -> new ParseEvent();
+            case CONVERT -> new ConvertEvent();
+            case EVALUATE -> new EvaluateEvent();
+            case TREE_LAYOUT -> new TreeLayoutEvent();
+            case LOG_IO -> new LogIoEvent();
+        };
+        span.operation = operation;
+        span.notation = notation;
+        span.subject = subject;
+        span.begin();
+        if (span.isEnabled() || SAMPLE == 1 || ThreadLocalRandom.current().nextInt(SAMPLE) == 0) {
+            span.timed = true;
+            span.start = System.nanoTime();
+        }
+        return span;
+    }
+
+    // Run work as one span of operation
+    public static <T> T time(Operation operation, String notation, CharSequence subject, Supplier<T> work) {
+        Span span = start(operation, notation, subject);
+        try {
+            T result = work.get();
+            span.finish();
+            return result;
+        } catch (RuntimeException | Error e) {
+            span.fail(e);
+            throw e;
+        }
+    }
+
+    // One timed operation; finish or fail it exactly once
+    @Category("DSA Calculator")
+    @StackTrace(false)
+    public abstract static class Span extends Event {
+        @Label("Notation")
+        String notation;
+        @Label("Subject")
+        @Description("Expression or file the operation worked on, cut to 256 characters")
+        String detail;
+        @Label("Error")
+        String error;
+
+        // Not recorded by Flight Recorder
+        transient Operation operation;
+        transient CharSequence subject;
+        transient boolean timed;
+        transient long start;
+
+        public void finish() {
+            stop(null);
+        }
+
+        public void fail(Throwable failure) {
+            operation.errors.increment();
+            stop(failure);
+        }
+
+        private void stop(Throwable failure) {
+            operation.count.increment();
+            if (timed)
+                operation.latency.record(System.nanoTime() - start);
+            end();
+            if (shouldCommit()) {
+                if (subject != null)
+                    detail = subject.length() > SUBJECT_CHARS ? subject.subSequence(0, SUBJECT_CHARS) + "..."
+                            : subject.toString();
+                if (failure != null)
+                    error = failure.getClass().getSimpleName() + ": " + failure.getMessage();
+                commit();
+            }
+        }
+    }
+
+    @Name("dsa.Lex")
+    @Label("Lex")
+    static final class LexEvent extends Span {
+    }
+
+    @Name("dsa.Parse")
+    @Label("Parse")
+    @Description("Compiling a program or building a tree on a cache miss")
+    static final class ParseEvent extends Span {
+    }
+
+    @Name("dsa.Convert")
+    @Label("Convert")
+    @Description("Converting between notations on a cache miss")
+    static final class ConvertEvent extends Span {
+    }
+
+    @Name("dsa.Evaluate")
+    @Label("Evaluate")
+    static final class EvaluateEvent extends Span {
+    }
+
+    @Name("dsa.TreeLayout")
+    @Label("Tree Layout")
+    static final class TreeLayoutEvent extends Span {
+    }
+
+    @Name("dsa.LogIO")
+    @Label("Log I/O")
+    @Description("Writing session journal batches and history records")
+    static final class LogIoEvent extends Span {
+    }
+}
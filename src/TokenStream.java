@@ -0,0 +1,108 @@
+import java.util.*;
+
+// Compact token stream produced by Lexer. Tokens are not objects: the kind,
+// start offset, length and a pre-decoded value of each token are held in
+// parallel primitive arrays, and the text is only materialized on request.
+public final class TokenStream {
+
+    // Token kinds
+    public static final byte NAME = 0;     // variable / operand name
+    public static final byte NUMBER = 1;   // numeric literal; value(i) holds it when it is an integer
+    public static final byte OPERATOR = 2; // value(i) holds the operator character ('<' / '>' for << / >>)
+    public static final byte LPAREN = 3;
+    public static final byte RPAREN = 4;
+
+    private static final String[] SINGLE_CHARS = new String[128];
+
+    static {
+        for (char c = 0; c < SINGLE_CHARS.length; c++) {
+            SINGLE_CHARS[c] = String.valueOf(c).intern();
+        }
+    }
+
+    private final CharSequence source;
+    private byte[] kinds;
+    private int[] offsets;
+    private int[] lengths;
+    private int[] values;
+    private int count;
+
+    TokenStream(CharSequence source, int capacity) {
+        this.source = source;
+        int size = Math.max(capacity, 8);
+        kinds = new byte[size];
+        offsets = new int[size];
+        lengths = new int[size];
+        values = new int[size];
+    }
+
+    void add(byte kind, int offset, int length, int value) {
+        if (count == kinds.length) {
+            int size = count * 2;
+            kinds = Arrays.copyOf(kinds, size);
+            offsets = Arrays.copyOf(offsets, size);
+            lengths = Arrays.copyOf(lengths, size);
+            values = Arrays.copyOf(values, size);
+        }
+        kinds[count] = kind;
+        offsets[count] = offset;
+        lengths[count] = length;
+        values[count] = value;
+        count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public byte kind(int i) {
+        return kinds[i];
+    }
+
+    public int offset(int i) {
+        return offsets[i];
+    }
+
+    public int length(int i) {
+        return lengths[i];
+    }
+
+    public int value(int i) {
+        return values[i];
+    }
+
+    public boolean isOperand(int i) {
+        return kinds[i] == NAME || kinds[i] == NUMBER;
+    }
+
+    // Operator character of an OPERATOR token ('<' and '>' stand for << and >>)
+    public char operator(int i) {
+        return (char) values[i];
+    }
+
+    public char firstChar(int i) {
+        return source.charAt(offsets[i]);
+    }
+
+    // Token text; single ASCII characters come from a shared table and do not allocate
+    public String text(int i) {
+        if (lengths[i] == 1) {
+            char c = source.charAt(offsets[i]);
+            if (c < SINGLE_CHARS.length) return SINGLE_CHARS[c];
+        }
+        return source.subSequence(offsets[i], offsets[i] + lengths[i]).toString();
+    }
+
+    // Numeric value of a NUMBER token, including decimals and integers beyond int range
+    public double doubleValue(int i) {
+        if (lengths[i] >= 10) return Double.parseDouble(text(i));
+        for (int k = 0; k < lengths[i]; k++) {
+            if (source.charAt(offsets[i] + k) == '.') return Double.parseDouble(text(i));
+        }
+        return values[i];
+    }
+
+    public CharSequence source() {
+        return source;
+    }
+}
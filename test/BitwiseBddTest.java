@@ -0,0 +1,162 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+// BitwiseBdd against BitwiseEvaluator on random bindings. Random expressions are
+// paired with rewrites that keep their value (commuting, De Morgan, double negation,
+// XOR expanded) or that usually change it (a swapped operator); equivalent must agree
+// with evaluation, every counterexample and witness must be real, and minimize must
+// never change a value. The surefire configuration lowers dsa.bdd.nodes so that the
+// node limit is reached quickly.
+class BitwiseBddTest {
+
+    private static final String VARIABLES = "abc";
+    private static final int EXPRESSIONS = 500;
+    private static final int BINDINGS = 50;
+
+    @Test
+    void equivalentMatchesEvaluation() {
+        Random random = new Random(1);
+        for (int n = 0; n < EXPRESSIONS; n++) {
+            String a = expression(random, 1 + random.nextInt(4));
+            String b = random.nextInt(3) == 0 ? mutate(random, a) : rewrite(random, a);
+            Map<Character, Integer> counterexample = BitwiseBdd.counterexample(a, b);
+            if (counterexample == null) {
+                for (int k = 0; k < BINDINGS; k++) {
+                    Map<Character, Integer> vars = bindings(random);
+                    assertEquals(evaluate(a, vars), evaluate(b, vars), a + " vs " + b + " at " + vars);
+                }
+            } else {
+                Map<Character, Integer> vars = complete(counterexample);
+                assertNotEquals(evaluate(a, vars), evaluate(b, vars), a + " vs " + b + " at " + vars);
+            }
+        }
+    }
+
+    @Test
+    void rewritesAreEquivalent() {
+        Random random = new Random(2);
+        for (int n = 0; n < EXPRESSIONS; n++) {
+            String a = expression(random, 1 + random.nextInt(4));
+            String b = rewrite(random, a);
+            assertTrue(BitwiseBdd.equivalent(a, b), a + " vs " + b);
+        }
+    }
+
+    @Test
+    void witnessesMakeTheExpressionNonZero() {
+        Random random = new Random(3);
+        for (int n = 0; n < EXPRESSIONS; n++) {
+            String expr = expression(random, 1 + random.nextInt(4));
+            Map<Character, Integer> witness = BitwiseBdd.witness(expr);
+            if (witness != null) {
+                assertNotEquals(0, evaluate(expr, complete(witness)), expr + " at " + witness);
+            } else {
+                for (int k = 0; k < BINDINGS; k++)
+                    assertEquals(0, evaluate(expr, bindings(random)), expr);
+            }
+        }
+        assertFalse(BitwiseBdd.satisfiable("a & ~a"));
+        assertTrue(BitwiseBdd.satisfiable("a ^ b"));
+    }
+
+    @Test
+    void minimizeKeepsTheValue() {
+        Random random = new Random(4);
+        for (int n = 0; n < EXPRESSIONS; n++) {
+            String expr = expression(random, 1 + random.nextInt(4));
+            String minimized = BitwiseBdd.minimize(expr);
+            assertTrue(BitwiseEvaluator.compile(minimized).size() <= BitwiseEvaluator.compile(expr).size(),
+                    expr + " -> " + minimized);
+            for (int k = 0; k < BINDINGS; k++) {
+                Map<Character, Integer> vars = bindings(random);
+                assertEquals(evaluate(expr, vars), evaluate(minimized, vars), expr + " -> " + minimized);
+            }
+        }
+        assertEquals("a", BitwiseBdd.minimize("(a & b) | (a & ~b)"));
+    }
+
+    @Test
+    void minimizeReturnsTheInputPastTheNodeLimit() {
+        String expr = "(((c << (c >> b)) ^ (b ^ (d | 5))) & 0)";
+        assertEquals(expr, BitwiseBdd.minimize(expr));
+        assertThrows(IllegalArgumentException.class, () -> BitwiseBdd.equivalent(expr, "0"));
+    }
+
+    private static int evaluate(String expr, Map<Character, Integer> vars) {
+        return BitwiseEvaluator.evaluate(expr, vars);
+    }
+
+    // A counterexample or witness binds only the letters that matter; the others are 0
+    private static Map<Character, Integer> complete(Map<Character, Integer> binding) {
+        Map<Character, Integer> vars = new HashMap<>();
+        for (int i = 0; i < VARIABLES.length(); i++)
+            vars.put(VARIABLES.charAt(i), 0);
+        vars.putAll(binding);
+        return vars;
+    }
+
+    private static Map<Character, Integer> bindings(Random random) {
+        Map<Character, Integer> vars = new HashMap<>();
+        for (int i = 0; i < VARIABLES.length(); i++)
+            vars.put(VARIABLES.charAt(i), random.nextBoolean() ? random.nextInt() : random.nextInt(16));
+        return vars;
+    }
+
+    // Fully parenthesized &, |, ^, ~ and shifts by constants
+    private static String expression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0)
+            return random.nextInt(3) == 0 ? String.valueOf(random.nextInt(16))
+                    : String.valueOf(VARIABLES.charAt(random.nextInt(VARIABLES.length())));
+        String left = expression(random, depth - 1);
+        return switch (random.nextInt(6)) {
+            case 0 -> "~" + left;
+            case 1 -> "(" + left + (random.nextBoolean() ? " << " : " >> ") + random.nextInt(32) + ")";
+            default -> "(" + left + " " + "&|^".charAt(random.nextInt(3)) + " " + expression(random, depth - 1) + ")";
+        };
+    }
+
+    // An expression with the same value: the outermost operator is rewritten
+    private static String rewrite(Random random, String expr) {
+        String[] parts = split(expr);
+        if (parts == null)
+            return "~~" + expr;
+        String a = parts[0];
+        String b = parts[2];
+        return switch (parts[1]) {
+            case "&" -> random.nextBoolean() ? "(" + b + " & " + a + ")" : "~(~" + a + " | ~" + b + ")";
+            case "|" -> random.nextBoolean() ? "(" + b + " | " + a + ")" : "~(~" + a + " & ~" + b + ")";
+            case "^" -> "((" + a + " | " + b + ") & ~(" + a + " & " + b + "))";
+            default -> "~~" + expr;
+        };
+    }
+
+    // The outermost binary operator replaced by another one
+    private static String mutate(Random random, String expr) {
+        String[] parts = split(expr);
+        if (parts == null || parts[1].length() > 1)
+            return "(" + expr + " ^ " + random.nextInt(4) + ")";
+        String operators = "&|^".replace(parts[1], "");
+        return "(" + parts[0] + " " + operators.charAt(random.nextInt(2)) + " " + parts[2] + ")";
+    }
+
+    // Left operand, operator and right operand of "(left op right)", or null
+    private static String[] split(String expr) {
+        if (!expr.startsWith("(") || !expr.endsWith(")"))
+            return null;
+        int depth = 0;
+        for (int i = 1; i < expr.length() - 1; i++) {
+            char c = expr.charAt(i);
+            if (c == '(') depth++;
+            else if (c == ')') depth--;
+            else if (depth == 0 && c == ' ') {
+                int end = expr.indexOf(' ', i + 1);
+                return new String[] { expr.substring(1, i), expr.substring(i + 1, end),
+                        expr.substring(end + 1, expr.length() - 1) };
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,122 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+// CompressedBitmap against java.util.BitSet: random sets built with of, range and
+// fromWords, mixing sparse (array), dense (bitmap) and consecutive (run) chunks, must
+// hold the same values as the matching BitSets, alone and after every set operation.
+class CompressedBitmapTest {
+
+    // Values stay below 2^20, so sets span 16 chunks
+    private static final int UNIVERSE = 1 << 20;
+    private static final int CHUNK = 1 << 16;
+    private static final int SETS = 100;
+
+    @Test
+    void buildersHoldTheirValues() {
+        Random random = new Random(1);
+        for (int n = 0; n < SETS; n++) {
+            BitSet expected = randomBits(random);
+            assertHolds(expected, of(expected));
+            assertHolds(expected, fromWords(expected));
+        }
+    }
+
+    @Test
+    void rangesHoldTheirValues() {
+        Random random = new Random(2);
+        for (int n = 0; n < SETS; n++) {
+            int from = random.nextInt(UNIVERSE);
+            int to = from + random.nextInt(UNIVERSE - from + 1);
+            BitSet expected = new BitSet();
+            expected.set(from, to);
+            assertHolds(expected, CompressedBitmap.range(from, to));
+        }
+        assertThrows(IllegalArgumentException.class, () -> CompressedBitmap.range(5, 4));
+    }
+
+    @Test
+    void operationsMatchBitSet() {
+        Random random = new Random(3);
+        for (int n = 0; n < SETS; n++) {
+            BitSet a = randomBits(random);
+            BitSet b = random.nextInt(4) == 0 ? (BitSet) a.clone() : randomBits(random);
+            CompressedBitmap x = random.nextBoolean() ? of(a) : fromWords(a);
+            CompressedBitmap y = random.nextBoolean() ? of(b) : fromWords(b);
+
+            BitSet and = (BitSet) a.clone();
+            and.and(b);
+            assertHolds(and, x.and(y));
+            BitSet or = (BitSet) a.clone();
+            or.or(b);
+            assertHolds(or, x.or(y));
+            BitSet xor = (BitSet) a.clone();
+            xor.xor(b);
+            assertHolds(xor, x.xor(y));
+            BitSet andNot = (BitSet) a.clone();
+            andNot.andNot(b);
+            assertHolds(andNot, x.andNot(y));
+
+            assertEquals(a.equals(b), x.equals(y));
+            if (a.equals(b))
+                assertEquals(x.hashCode(), y.hashCode());
+        }
+    }
+
+    @Test
+    void valuesAboveSignedRangeSortUnsigned() {
+        CompressedBitmap bitmap = CompressedBitmap.of(-1, 0, Integer.MIN_VALUE, 7, 7);
+        assertArrayEquals(new int[] { 0, 7, Integer.MIN_VALUE, -1 }, bitmap.toArray());
+        assertTrue(bitmap.contains(-1));
+        assertFalse(bitmap.contains(-2));
+        assertTrue(CompressedBitmap.empty().isEmpty());
+    }
+
+    private static void assertHolds(BitSet expected, CompressedBitmap actual) {
+        assertArrayEquals(expected.stream().toArray(), actual.toArray());
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        for (int probe = 0; probe < UNIVERSE; probe += 997)
+            assertEquals(expected.get(probe), actual.contains(probe));
+    }
+
+    private static CompressedBitmap of(BitSet bits) {
+        return CompressedBitmap.of(bits.stream().toArray());
+    }
+
+    private static CompressedBitmap fromWords(BitSet bits) {
+        return CompressedBitmap.fromWords(bits.toLongArray());
+    }
+
+    // Each chunk is left empty, or filled sparsely, densely, or with a few long runs
+    private static BitSet randomBits(Random random) {
+        BitSet bits = new BitSet(UNIVERSE);
+        for (int base = 0; base < UNIVERSE; base += CHUNK) {
+            switch (random.nextInt(4)) {
+                case 0 -> {
+                }
+                case 1 -> {
+                    int count = random.nextInt(4097);
+                    for (int i = 0; i < count; i++)
+                        bits.set(base + random.nextInt(CHUNK));
+                }
+                case 2 -> {
+                    for (int i = 0; i < CHUNK; i++) {
+                        if (random.nextInt(3) != 0)
+                            bits.set(base + i);
+                    }
+                }
+                default -> {
+                    int runs = 1 + random.nextInt(8);
+                    for (int i = 0; i < runs; i++) {
+                        int from = random.nextInt(CHUNK);
+                        bits.set(base + from, base + from + random.nextInt(CHUNK - from + 1));
+                    }
+                }
+            }
+        }
+        return bits;
+    }
+}
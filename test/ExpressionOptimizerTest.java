@@ -0,0 +1,131 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+// ExpressionOptimizer and ExpressionJit against the plain interpreter: random
+// expressions, with repeated subtrees and constant parts so that sharing and folding
+// happen, must give the same value (or the same division by zero) on random bindings
+// whether they run unoptimized, optimized, or as a compiled kernel.
+class ExpressionOptimizerTest {
+
+    private static final String VARIABLES = "abcde";
+    private static final int EXPRESSIONS = 2_000;
+    private static final int BINDINGS = 20;
+
+    @Test
+    void optimizedProgramsEvaluateLikeTheOriginal() {
+        Random random = new Random(1);
+        for (int n = 0; n < EXPRESSIONS; n++) {
+            String expr = arithmetic(random, 1 + random.nextInt(6), new ArrayList<>());
+            CompiledExpression plain = CompiledExpression.compileInfix(expr);
+            CompiledExpression optimized = ExpressionOptimizer.optimize(plain);
+            assertTrue(optimized.size() <= plain.size(), expr);
+            for (int k = 0; k < BINDINGS; k++) {
+                Map<Character, Integer> vars = bindings(random);
+                assertEquals(outcome(plain, plain.bind(vars)), outcome(optimized, optimized.bind(vars)), expr);
+            }
+        }
+    }
+
+    @Test
+    void compiledKernelsEvaluateLikeTheInterpreter() {
+        Random random = new Random(2);
+        for (int n = 0; n < EXPRESSIONS / 4; n++) {
+            String expr = arithmetic(random, 1 + random.nextInt(6), new ArrayList<>());
+            CompiledExpression optimized = ExpressionOptimizer.optimize(CompiledExpression.compileInfix(expr));
+            CompiledExpression.Kernel kernel = ExpressionJit.compile(optimized);
+            assertNotNull(kernel, expr);
+            for (int k = 0; k < BINDINGS; k++) {
+                int[] bindings = optimized.bind(bindings(random));
+                assertEquals(outcome(optimized, bindings), outcome(kernel, bindings), expr);
+            }
+        }
+    }
+
+    @Test
+    void bitwiseKernelsEvaluateLikeTheInterpreter() {
+        Random random = new Random(3);
+        for (int n = 0; n < EXPRESSIONS / 4; n++) {
+            String expr = bitwise(random, 1 + random.nextInt(5));
+            CompiledExpression program = BitwiseEvaluator.compile(expr);
+            CompiledExpression.Kernel kernel = ExpressionJit.compile(program);
+            assertNotNull(kernel, expr);
+            for (int k = 0; k < BINDINGS; k++) {
+                int[] bindings = program.bind(bindings(random));
+                assertEquals(outcome(program, bindings), outcome(kernel, bindings), expr);
+            }
+        }
+    }
+
+    @Test
+    void sharedSubtreesAreComputedOnce() {
+        CompiledExpression plain = CompiledExpression.compileInfix("(a*b)+(a*b)");
+        CompiledExpression optimized = ExpressionOptimizer.optimize(plain);
+        assertEquals(1, optimized.temporaryCount());
+        assertTrue(optimized.size() < plain.size());
+        assertEquals(24, optimized.evaluate(optimized.bind(Map.of('a', 3, 'b', 4))));
+    }
+
+    @Test
+    void constantSubtreesAreFolded() {
+        CompiledExpression optimized = ExpressionOptimizer.optimize(CompiledExpression.compileInfix("(2*3)+(8/4)"));
+        assertEquals(1, optimized.size());
+        assertEquals(8, optimized.evaluate(new int[0]));
+    }
+
+    // Value, or the exception, as a comparable string
+    private static String outcome(CompiledExpression program, int[] bindings) {
+        try {
+            return String.valueOf(program.evaluate(bindings));
+        } catch (ArithmeticException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static String outcome(CompiledExpression.Kernel kernel, int[] bindings) {
+        try {
+            return String.valueOf(kernel.evaluate(bindings));
+        } catch (ArithmeticException e) {
+            return e.getMessage();
+        }
+    }
+
+    // Fully parenthesized +-*/ infix; earlier subtrees are sometimes reused
+    private static String arithmetic(Random random, int depth, List<String> seen) {
+        if (!seen.isEmpty() && random.nextInt(4) == 0)
+            return seen.get(random.nextInt(seen.size()));
+        String expr;
+        if (depth == 0 || random.nextInt(4) == 0) {
+            expr = random.nextBoolean() ? String.valueOf(VARIABLES.charAt(random.nextInt(VARIABLES.length())))
+                    : String.valueOf(random.nextInt(10));
+        } else {
+            String left = arithmetic(random, depth - 1, seen);
+            String right = arithmetic(random, depth - 1, seen);
+            expr = "(" + left + "+-*/".charAt(random.nextInt(4)) + right + ")";
+        }
+        seen.add(expr);
+        return expr;
+    }
+
+    private static String bitwise(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0)
+            return random.nextBoolean() ? String.valueOf(VARIABLES.charAt(random.nextInt(VARIABLES.length())))
+                    : String.valueOf(random.nextInt(256));
+        return switch (random.nextInt(6)) {
+            case 0 -> "~(" + bitwise(random, depth - 1) + ")";
+            case 1 -> "(" + bitwise(random, depth - 1) + " << " + bitwise(random, depth - 1) + ")";
+            case 2 -> "(" + bitwise(random, depth - 1) + " >> " + bitwise(random, depth - 1) + ")";
+            default -> "(" + bitwise(random, depth - 1) + " " + "&|^".charAt(random.nextInt(3)) + " "
+                    + bitwise(random, depth - 1) + ")";
+        };
+    }
+
+    private static Map<Character, Integer> bindings(Random random) {
+        Map<Character, Integer> vars = new HashMap<>();
+        for (int i = 0; i < VARIABLES.length(); i++)
+            vars.put(VARIABLES.charAt(i), random.nextInt(4) == 0 ? random.nextInt() : random.nextInt(21) - 10);
+        return vars;
+    }
+}